@@ -258,11 +258,13 @@ cat > dist/linux-bundled/share/systemd/alpidi-printer-agent.service << 'EOF'
 [Unit]
 Description=Alpidi Printer Agent (Self-Contained)
 Documentation=https://alpidi.com/docs/printer-agent
-After=network.target
+After=network.target alpidi-printer-agent.socket
 Wants=network.target
+Requires=alpidi-printer-agent.socket
 
 [Service]
 Type=simple
+StandardInput=socket
 User=alpidi-printer-agent
 Group=alpidi-printer-agent
 ExecStart=/opt/alpidi-printer-agent/bin/alpidi-printer-agent --headless
@@ -283,9 +285,26 @@ ReadWritePaths=/var/log/alpidi-printer-agent
 # Environment
 Environment=JAVA_OPTS=-Djava.awt.headless=true
 Environment=SERVER_PORT=9000
+#Environment=AGENT_IDLESHUTDOWNMINUTES=30
 
 [Install]
-WantedBy=multi-user.target
+Also=alpidi-printer-agent.socket
+EOF
+
+# Create systemd socket, so the agent starts on the first request
+cat > dist/linux-bundled/share/systemd/alpidi-printer-agent.socket << 'EOF'
+[Unit]
+Description=Alpidi Printer Agent socket (Self-Contained)
+Documentation=https://alpidi.com/docs/printer-agent
+
+[Socket]
+ListenStream=9000
+Accept=no
+NoDelay=true
+Backlog=128
+
+[Install]
+WantedBy=sockets.target
 EOF
 
 # Create installation script
@@ -314,8 +333,9 @@ fi
 # Copy desktop entry
 cp share/applications/alpidi-printer-agent.desktop /usr/share/applications/
 
-# Copy systemd service
+# Copy systemd service and socket
 cp share/systemd/alpidi-printer-agent.service /etc/systemd/system/
+cp share/systemd/alpidi-printer-agent.socket /etc/systemd/system/
 
 # Create symlink for global access
 ln -sf "$INSTALL_DIR/bin/alpidi-printer-agent" /usr/local/bin/alpidi-printer-agent
@@ -324,6 +344,7 @@ ln -sf "$INSTALL_DIR/bin/alpidi-printer-agent" /usr/local/bin/alpidi-printer-age
 chmod +x "$INSTALL_DIR/bin/alpidi-printer-agent"
 chmod 644 /usr/share/applications/alpidi-printer-agent.desktop
 chmod 644 /etc/systemd/system/alpidi-printer-agent.service
+chmod 644 /etc/systemd/system/alpidi-printer-agent.socket
 
 # Create user and group for service
 if ! getent group alpidi-printer-agent >/dev/null; then
@@ -349,7 +370,7 @@ chown -R alpidi-printer-agent:alpidi-printer-agent /var/lib/alpidi-printer-agent
 
 # Reload systemd
 systemctl daemon-reload
-systemctl enable alpidi-printer-agent.service
+systemctl enable alpidi-printer-agent.socket
 
 # Update desktop database
 if command -v update-desktop-database >/dev/null 2>&1; then
@@ -359,7 +380,7 @@ fi
 echo ""
 echo "✅ Installation completed!"
 echo ""
-echo "Start service: sudo systemctl start alpidi-printer-agent"
+echo "Start socket:  sudo systemctl start alpidi-printer-agent.socket"
 echo "Check status:  sudo systemctl status alpidi-printer-agent"
 echo "View logs:     sudo journalctl -u alpidi-printer-agent -f"
 echo "Web interface: http://localhost:9000"
@@ -79,6 +79,7 @@ create_generic_package() {
     cp src/linux/alpidi-printer-agent "$GENERIC_DIR/bin/"
     cp src/linux/alpidi-printer-agent.desktop "$GENERIC_DIR/share/applications/"
     cp src/linux/alpidi-printer-agent.service "$GENERIC_DIR/share/systemd/"
+    cp src/linux/alpidi-printer-agent.socket "$GENERIC_DIR/share/systemd/"
     
     # Create installation script
     cat > "$GENERIC_DIR/install.sh" << 'EOF'
@@ -99,18 +100,20 @@ cp lib/alpidi-printer-agent.jar /opt/alpidi-printer-agent/
 cp bin/alpidi-printer-agent /usr/bin/
 cp share/applications/alpidi-printer-agent.desktop /usr/share/applications/
 cp share/systemd/alpidi-printer-agent.service /etc/systemd/system/
+cp share/systemd/alpidi-printer-agent.socket /etc/systemd/system/
 
 # Set permissions
 chmod 755 /usr/bin/alpidi-printer-agent
 chmod 644 /usr/share/applications/alpidi-printer-agent.desktop
 chmod 644 /etc/systemd/system/alpidi-printer-agent.service
+chmod 644 /etc/systemd/system/alpidi-printer-agent.socket
 
 # Reload systemd and enable service
 systemctl daemon-reload
-systemctl enable alpidi-printer-agent.service
+systemctl enable alpidi-printer-agent.socket
 
 echo "Installation completed!"
-echo "Start service: sudo systemctl start alpidi-printer-agent"
+echo "Start socket: sudo systemctl start alpidi-printer-agent.socket"
 echo "Web interface: http://localhost:9000"
 EOF
     chmod +x "$GENERIC_DIR/install.sh"
@@ -0,0 +1,62 @@
+#!/bin/bash
+
+# Compares the standard (Tomcat) and lite (JDK HttpServer) launch modes on this machine:
+# time until /i-am-here first answers, resident memory when idle and after load, and
+# requests per second for /i-am-here. Build first with ./mvnw -DskipTests package.
+
+JAR=$(ls target/alpidiprinteragent-*-exec.jar 2>/dev/null | head -1)
+PORT=${PORT:-9090}
+REQUESTS=${REQUESTS:-5000}
+CONCURRENCY=${CONCURRENCY:-4}
+
+if [ -z "$JAR" ]; then
+    echo "❌ No executable jar in target/, run ./mvnw -DskipTests package first"
+    exit 1
+fi
+
+rss_kb() {
+    grep VmRSS "/proc/$1/status" | awk '{print $2}'
+}
+
+measure() {
+    local mode=$1
+    shift
+
+    local start_ms=$(date +%s%3N)
+    java -Djava.awt.headless=true \
+        -Dloader.main=com.alpidiprinteragent.alpidiprinteragent.service.PlatformServiceWrapper \
+        -cp "$JAR" org.springframework.boot.loader.launch.PropertiesLauncher \
+        --headless --server.port=$PORT "$@" >/dev/null 2>&1 &
+    local pid=$!
+
+    until curl -sf "http://127.0.0.1:$PORT/i-am-here" >/dev/null; do
+        if ! kill -0 $pid 2>/dev/null; then
+            echo "❌ $mode mode did not start"
+            return 1
+        fi
+        sleep 0.05
+    done
+    local ready_ms=$(( $(date +%s%3N) - start_ms ))
+
+    sleep 5
+    local idle_rss=$(rss_kb $pid)
+
+    local rps="n/a (install ab)"
+    if command -v ab >/dev/null 2>&1; then
+        rps=$(ab -q -n "$REQUESTS" -c "$CONCURRENCY" "http://127.0.0.1:$PORT/i-am-here" \
+            | awk '/Requests per second/ {print $4}')
+    fi
+    local loaded_rss=$(rss_kb $pid)
+
+    kill $pid
+    wait $pid 2>/dev/null
+
+    printf "%-10s %10s %14s %16s %12s\n" "$mode" "${ready_ms} ms" "$((idle_rss / 1024)) MB" \
+        "$((loaded_rss / 1024)) MB" "$rps"
+}
+
+echo "📏 Measuring $JAR on port $PORT ($REQUESTS requests, concurrency $CONCURRENCY)"
+echo ""
+printf "%-10s %10s %14s %16s %12s\n" "mode" "startup" "idle RSS" "RSS after load" "req/s"
+measure standard
+measure lite --lite
@@ -0,0 +1,21 @@
+package com.alpidiprinteragent.alpidiprinteragent;
+
+import com.fasterxml.jackson.databind.Module;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.NativeDetector;
+
+// Tunes the one ObjectMapper Spring Boot creates, which the controllers, the lite server and the
+// services all share
+@Configuration
+public class JsonConfig {
+
+  // Blackbird replaces reflective getter and constructor calls with generated lambdas; a native
+  // image cannot generate classes at run time, so it keeps plain reflection there
+  @Bean
+  public Module blackbirdModule() {
+    return NativeDetector.inNativeImage() ? new SimpleModule() : new BlackbirdModule();
+  }
+}
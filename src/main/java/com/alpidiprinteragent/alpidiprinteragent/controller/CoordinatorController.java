@@ -0,0 +1,113 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.AgentStatus;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintResponse;
+import com.alpidiprinteragent.alpidiprinteragent.service.CoordinatorService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintFailoverService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrinterPoolService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrinterService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.print.PrintService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@CrossOrigin(
+    origins = {
+      "http://localhost:4200",
+      "https://alpidi.com",
+      "https://app.alpidi.com",
+      "https://test.alpidi.com",
+      "https://stage.alpidi.com"
+    })
+@RestController
+public class CoordinatorController {
+  @Autowired private CoordinatorService coordinatorService;
+
+  @Autowired private PrinterService printerService;
+
+  @Autowired private PrinterPoolService printerPoolService;
+
+  @Autowired private PrintFailoverService printFailoverService;
+
+  @Autowired private ObjectMapper objectMapper;
+
+  // Polled by the coordinator's heartbeat; served by every agent
+  @GetMapping("/agent/status")
+  public AgentStatus getAgentStatus() {
+    // One lookup for all printers; the coordinator waits on this within its heartbeat timeout
+    PrintService[] installed = printerService.lookupPrintServices();
+    List<AgentStatus.PrinterStatus> printers = new ArrayList<>();
+    for (PrintService service : installed) {
+      String printerName = service.getName();
+      PrinterPoolService.MemberStatus status =
+          printerPoolService.getMemberStatus(printerName, installed);
+      printers.add(
+          new AgentStatus.PrinterStatus(
+              status.getPrinterName(),
+              status.isAvailable(),
+              printFailoverService.isCircuitOpen(printerName),
+              status.getLoad()));
+    }
+    return new AgentStatus(printers, System.currentTimeMillis());
+  }
+
+  @GetMapping("/coordinator/peers")
+  public List<CoordinatorService.Peer> getPeers() {
+    return coordinatorService.getPeers();
+  }
+
+  // The body is relayed to the peer as it came, so fields this agent does not know still arrive
+  @PostMapping("/coordinator/print")
+  public ResponseEntity<PrintResponse> print(@RequestBody Map<String, String> body) {
+    if (!coordinatorService.isEnabled()) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND)
+          .body(
+              PrintResponse.failure(
+                  404, "Coordinator mode is disabled on this agent", "COORDINATOR_DISABLED"));
+    }
+
+    String printerName = body.get("printerName");
+    if (printerName == null || printerName.trim().isEmpty()) {
+      return ResponseEntity.badRequest()
+          .body(
+              PrintResponse.failure(400, "Printer name cannot be empty", "PRINTER_NAME_REQUIRED"));
+    }
+
+    try {
+      CoordinatorService.ForwardResult result = coordinatorService.forward(printerName, body);
+
+      // Relay the peer's own response, noting which agent handled the job
+      PrintResponse peerResponse = objectMapper.readValue(result.getBody(), PrintResponse.class);
+      if (peerResponse.data() instanceof Map<?, ?>) {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> data = (Map<String, Object>) peerResponse.data();
+        data.put("agentUrl", result.getPeerUrl());
+        data.put("forwardAttempts", result.getAttempts());
+      }
+      return ResponseEntity.status(result.getStatusCode()).body(peerResponse);
+
+    } catch (CoordinatorService.CoordinatorException e) {
+      HttpStatus status =
+          e.getErrorCode().equals("PEER_TIMEOUT")
+              ? HttpStatus.GATEWAY_TIMEOUT
+              : HttpStatus.SERVICE_UNAVAILABLE;
+      return ResponseEntity.status(status)
+          .body(PrintResponse.failure(status.value(), e.getMessage(), e.getErrorCode()));
+
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+          .body(
+              PrintResponse.failure(
+                  502, "Invalid response from agent: " + e.getMessage(), "PEER_RESPONSE_INVALID"));
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.JobResponse;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintJobTracker;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+@CrossOrigin(
+    origins = {
+      "http://localhost:4200",
+      "https://alpidi.com",
+      "https://app.alpidi.com",
+      "https://test.alpidi.com",
+      "https://stage.alpidi.com"
+    })
+@RestController
+public class JobController {
+  @Autowired private PrintJobTracker printJobTracker;
+
+  @GetMapping("/jobs")
+  public List<PrintJobTracker.TrackedJob> getJobs() {
+    return printJobTracker.getJobs();
+  }
+
+  @GetMapping("/jobs/{jobId}")
+  public ResponseEntity<JobResponse> getJob(@PathVariable String jobId) {
+    PrintJobTracker.TrackedJob job = printJobTracker.getJob(jobId);
+
+    if (job == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND)
+          .body(JobResponse.failure("Print job not found: " + jobId, "JOB_NOT_FOUND"));
+    }
+
+    return ResponseEntity.ok(JobResponse.ok(null, job));
+  }
+
+  @DeleteMapping("/jobs/{jobId}")
+  public ResponseEntity<JobResponse> cancelJob(@PathVariable String jobId) {
+    try {
+      PrintJobTracker.TrackedJob job = printJobTracker.cancel(jobId);
+      return ResponseEntity.ok(
+          JobResponse.ok("Cancellation requested for print job: " + jobId, job));
+
+    } catch (PrintJobTracker.JobException e) {
+      JobResponse response = JobResponse.failure(e.getMessage(), e.getErrorCode());
+      return e.getErrorCode().equals("JOB_NOT_FOUND")
+          ? ResponseEntity.status(HttpStatus.NOT_FOUND).body(response)
+          : ResponseEntity.status(HttpStatus.CONFLICT).body(response);
+    }
+  }
+}
@@ -0,0 +1,332 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import com.alpidiprinteragent.alpidiprinteragent.AlpidiprinteragentApplication;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTimings;
+import com.alpidiprinteragent.alpidiprinteragent.service.SocketActivationService;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.ClassUtils;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+// Serves the controllers on the JDK's built-in HTTP server instead of Tomcat and Spring MVC, for
+// machines where memory is tight. Only what the controllers use is supported: path variables,
+// JSON request bodies, ResponseEntity and @CrossOrigin. The JDK server can only bind its own
+// socket, so lite mode cannot run under systemd socket activation.
+public class LiteHttpServer {
+
+  private static final Logger logger = LoggerFactory.getLogger(LiteHttpServer.class);
+
+  private final ObjectMapper objectMapper;
+  private final SocketActivationService socketActivationService;
+  private final List<Route> routes = new ArrayList<>();
+
+  LiteHttpServer(ConfigurableApplicationContext context) {
+    this(
+        context.getBean(ObjectMapper.class),
+        context.getBean(SocketActivationService.class),
+        context.getBeansWithAnnotation(RestController.class).values());
+  }
+
+  LiteHttpServer(
+      ObjectMapper objectMapper,
+      SocketActivationService socketActivationService,
+      Collection<Object> controllers) {
+    this.objectMapper = objectMapper;
+    this.socketActivationService = socketActivationService;
+    for (Object controller : controllers) {
+      addRoutes(controller);
+    }
+    // Literal paths win over templates, as in Spring MVC
+    routes.sort(Comparator.comparingInt(route -> route.variableCount));
+  }
+
+  public static ConfigurableApplicationContext start(String[] args) throws IOException {
+    if (SocketActivationService.inheritsServerSocket()) {
+      throw new IllegalStateException(
+          "Lite mode cannot adopt the listening socket passed by systemd");
+    }
+    SpringApplication application = new SpringApplication(AlpidiprinteragentApplication.class);
+    application.setWebApplicationType(WebApplicationType.NONE);
+    ConfigurableApplicationContext context = application.run(args);
+
+    int port = context.getEnvironment().getProperty("server.port", Integer.class, 9000);
+    int threads = context.getEnvironment().getProperty("agent.lite.threads", Integer.class, 4);
+    LiteHttpServer dispatcher = new LiteHttpServer(context);
+
+    HttpServer server;
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+    } catch (IOException e) {
+      context.close();
+      throw e;
+    }
+    AtomicInteger threadCount = new AtomicInteger();
+    server.setExecutor(
+        Executors.newFixedThreadPool(
+            threads, task -> new Thread(task, "lite-http-" + threadCount.incrementAndGet())));
+    server.createContext("/", dispatcher::handle);
+    server.start();
+    // Also on a restart from the tray, so that the next server can bind the port
+    context.addApplicationListener(
+        (ApplicationListener<ContextClosedEvent>) event -> server.stop(1));
+
+    logger.info(
+        "Lite server listening on port {} with {} threads, {} routes",
+        port,
+        threads,
+        dispatcher.routes.size());
+    return context;
+  }
+
+  private void addRoutes(Object controller) {
+    Class<?> type = ClassUtils.getUserClass(controller);
+    CrossOrigin crossOrigin = type.getAnnotation(CrossOrigin.class);
+    List<String> origins = crossOrigin != null ? List.of(crossOrigin.origins()) : List.of();
+
+    for (Method method : type.getMethods()) {
+      String httpMethod;
+      String[] paths;
+      if (method.isAnnotationPresent(GetMapping.class)) {
+        httpMethod = "GET";
+        paths = method.getAnnotation(GetMapping.class).value();
+      } else if (method.isAnnotationPresent(PostMapping.class)) {
+        httpMethod = "POST";
+        paths = method.getAnnotation(PostMapping.class).value();
+      } else if (method.isAnnotationPresent(PutMapping.class)) {
+        httpMethod = "PUT";
+        paths = method.getAnnotation(PutMapping.class).value();
+      } else if (method.isAnnotationPresent(DeleteMapping.class)) {
+        httpMethod = "DELETE";
+        paths = method.getAnnotation(DeleteMapping.class).value();
+      } else {
+        continue;
+      }
+      for (String path : paths) {
+        routes.add(new Route(httpMethod, path, controller, method, origins));
+      }
+    }
+  }
+
+  void handle(HttpExchange exchange) throws IOException {
+    PrintTimings.markRequestReceived();
+    socketActivationService.requestStarted();
+    try {
+      dispatch(exchange);
+    } catch (Exception e) {
+      logger.error("Request {} failed", exchange.getRequestURI(), e);
+      sendError(exchange, 500, "Internal Server Error");
+    } finally {
+      socketActivationService.requestFinished();
+      PrintTimings.clearRequestReceived();
+      exchange.close();
+    }
+  }
+
+  private void dispatch(HttpExchange exchange) throws Exception {
+    String rawPath = exchange.getRequestURI().getRawPath();
+    String requestMethod = exchange.getRequestMethod();
+    boolean preflight =
+        requestMethod.equals("OPTIONS")
+            && exchange.getRequestHeaders().containsKey("Access-Control-Request-Method");
+    String wantedMethod =
+        preflight
+            ? exchange.getRequestHeaders().getFirst("Access-Control-Request-Method")
+            : requestMethod;
+
+    Route route = null;
+    Matcher matcher = null;
+    boolean pathMatched = false;
+    for (Route candidate : routes) {
+      Matcher m = candidate.pattern.matcher(rawPath);
+      if (m.matches()) {
+        pathMatched = true;
+        if (candidate.httpMethod.equals(wantedMethod)) {
+          route = candidate;
+          matcher = m;
+          break;
+        }
+      }
+    }
+    if (route == null) {
+      if (pathMatched) {
+        sendError(exchange, 405, "Method Not Allowed");
+      } else {
+        sendError(exchange, 404, "Not Found");
+      }
+      return;
+    }
+
+    // Same rules as Spring's CORS processing for the origins listed in @CrossOrigin
+    String origin = exchange.getRequestHeaders().getFirst("Origin");
+    if (origin != null && !isSameOrigin(exchange, origin)) {
+      if (!route.origins.contains(origin)) {
+        sendText(exchange, 403, "Invalid CORS request");
+        return;
+      }
+      exchange.getResponseHeaders().add("Vary", "Origin");
+      exchange.getResponseHeaders().set("Access-Control-Allow-Origin", origin);
+    }
+    if (preflight) {
+      exchange.getResponseHeaders().set("Access-Control-Allow-Methods", route.httpMethod);
+      String requestedHeaders =
+          exchange.getRequestHeaders().getFirst("Access-Control-Request-Headers");
+      if (requestedHeaders != null) {
+        exchange.getResponseHeaders().set("Access-Control-Allow-Headers", requestedHeaders);
+      }
+      exchange.getResponseHeaders().set("Access-Control-Max-Age", "1800");
+      exchange.sendResponseHeaders(200, -1);
+      return;
+    }
+
+    Object[] arguments = new Object[route.method.getParameterCount()];
+    Parameter[] parameters = route.method.getParameters();
+    int pathIndex = 0;
+    for (int i = 0; i < parameters.length; i++) {
+      Parameter parameter = parameters[i];
+      if (parameter.isAnnotationPresent(PathVariable.class)) {
+        // Matched by position; each mapping has its variables in parameter order
+        String value = matcher.group(++pathIndex);
+        arguments[i] = URLDecoder.decode(value.replace("+", "%2B"), StandardCharsets.UTF_8);
+      } else if (parameter.isAnnotationPresent(RequestBody.class)) {
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        if (body.length == 0) {
+          if (!parameter.getAnnotation(RequestBody.class).required()) {
+            continue;
+          }
+          sendError(exchange, 400, "Bad Request");
+          return;
+        }
+        JavaType bodyType =
+            objectMapper.getTypeFactory().constructType(parameter.getParameterizedType());
+        try {
+          arguments[i] = objectMapper.readValue(body, bodyType);
+        } catch (JsonProcessingException e) {
+          sendError(exchange, 400, "Bad Request");
+          return;
+        }
+      }
+    }
+
+    Object result;
+    try {
+      result = route.method.invoke(route.controller, arguments);
+    } catch (InvocationTargetException e) {
+      throw e.getCause() instanceof Exception cause ? cause : e;
+    }
+
+    int status = 200;
+    Object body = result;
+    if (result instanceof ResponseEntity<?> entity) {
+      status = entity.getStatusCode().value();
+      entity.getHeaders().forEach(
+          (name, values) -> exchange.getResponseHeaders().put(name, new ArrayList<>(values)));
+      body = entity.getBody();
+    }
+    if (body == null) {
+      exchange.sendResponseHeaders(status, -1);
+      return;
+    }
+    sendJson(exchange, status, objectMapper.writeValueAsBytes(body));
+  }
+
+  private static boolean isSameOrigin(HttpExchange exchange, String origin) {
+    String host = exchange.getRequestHeaders().getFirst("Host");
+    return host != null && origin.equals("http://" + host);
+  }
+
+  // The JSON Spring Boot's error controller returns
+  private void sendError(HttpExchange exchange, int status, String error) throws IOException {
+    Map<String, Object> body = new LinkedHashMap<>();
+    body.put("timestamp", OffsetDateTime.now().toString());
+    body.put("status", status);
+    body.put("error", error);
+    body.put("path", exchange.getRequestURI().getPath());
+    sendJson(exchange, status, objectMapper.writeValueAsBytes(body));
+  }
+
+  private static void sendJson(HttpExchange exchange, int status, byte[] json) throws IOException {
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, json.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(json);
+    }
+  }
+
+  private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+    byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "text/plain;charset=UTF-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static class Route {
+    private static final Pattern VARIABLE = Pattern.compile("\\{[^/}]+}");
+
+    final String httpMethod;
+    final Pattern pattern;
+    final Object controller;
+    final Method method;
+    final List<String> origins;
+    final int variableCount;
+
+    Route(String httpMethod, String path, Object controller, Method method, List<String> origins) {
+      this.httpMethod = httpMethod;
+      this.controller = controller;
+      this.method = method;
+      this.origins = origins;
+
+      // "/jobs/{jobId}" becomes ^/jobs/([^/]+)$
+      Matcher variables = VARIABLE.matcher(path);
+      StringBuilder regex = new StringBuilder();
+      int last = 0;
+      int count = 0;
+      while (variables.find()) {
+        regex.append(Pattern.quote(path.substring(last, variables.start()))).append("([^/]+)");
+        last = variables.end();
+        count++;
+      }
+      regex.append(Pattern.quote(path.substring(last)));
+      this.pattern = Pattern.compile(regex.toString());
+      this.variableCount = count;
+    }
+  }
+}
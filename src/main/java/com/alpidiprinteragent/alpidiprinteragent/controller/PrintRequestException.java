@@ -0,0 +1,29 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import org.springframework.http.HttpStatus;
+
+// A print request that cannot be accepted; mapped to an error response by the controller
+public class PrintRequestException extends Exception {
+  private final HttpStatus httpStatus;
+  private final int statusCode;
+  private final Object data;
+
+  public PrintRequestException(HttpStatus httpStatus, int statusCode, String message, Object data) {
+    super(message);
+    this.httpStatus = httpStatus;
+    this.statusCode = statusCode;
+    this.data = data;
+  }
+
+  public HttpStatus getHttpStatus() {
+    return httpStatus;
+  }
+
+  public int getStatusCode() {
+    return statusCode;
+  }
+
+  public Object getData() {
+    return data;
+  }
+}
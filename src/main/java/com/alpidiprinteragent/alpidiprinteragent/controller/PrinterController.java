@@ -1,17 +1,60 @@
 package com.alpidiprinteragent.alpidiprinteragent.controller;
 
+import com.alpidiprinteragent.alpidiprinteragent.model.ActivePrinterResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.FallbackPrinterResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.IppPrinterResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.IppPrintersResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.PresenceResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintError;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintJobResult;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintPriority;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintRequest;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintSettingsResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTemplateRequest;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTimings;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterPoolRequest;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterPoolResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterRequest;
+import com.alpidiprinteragent.alpidiprinteragent.model.RawPrintersResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.StatusResponse;
+import com.alpidiprinteragent.alpidiprinteragent.service.AdmissionService;
+import com.alpidiprinteragent.alpidiprinteragent.service.ChunkedPrintService;
 import com.alpidiprinteragent.alpidiprinteragent.service.ConfigService;
+import com.alpidiprinteragent.alpidiprinteragent.service.DocumentBufferPool;
+import com.alpidiprinteragent.alpidiprinteragent.service.DocumentStore;
+import com.alpidiprinteragent.alpidiprinteragent.service.FileDocumentService;
+import com.alpidiprinteragent.alpidiprinteragent.service.MetricsService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintCoalescer;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintDispatcher;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintFailoverService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintJobTracker;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrinterCircuitBreaker;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrinterPoolService;
 import com.alpidiprinteragent.alpidiprinteragent.service.PrinterService;
+import com.alpidiprinteragent.alpidiprinteragent.service.SubmitWatchdog;
+import com.alpidiprinteragent.alpidiprinteragent.service.TemplateService;
+import com.alpidiprinteragent.alpidiprinteragent.service.TenantPrinterService;
+import com.alpidiprinteragent.alpidiprinteragent.service.UrlDocumentService;
 import com.fasterxml.jackson.databind.JsonNode;
-import java.util.Base64;
+import java.net.URI;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -26,17 +69,49 @@ import org.springframework.web.bind.annotation.RestController;
     })
 @RestController
 public class PrinterController {
+  // One line per job with its phase timings; enable with logging.level.print.trace=DEBUG
+  private static final Logger traceLogger = LoggerFactory.getLogger("print.trace");
+
+  @Value("${print.timings.enabled:false}")
+  private boolean timingsByDefault;
+
   @Autowired private PrinterService printerService;
 
   @Autowired private ConfigService configService;
 
+  @Autowired private PrinterPoolService printerPoolService;
+
+  @Autowired private PrintFailoverService printFailoverService;
+
+  @Autowired private ChunkedPrintService chunkedPrintService;
+
+  @Autowired private MetricsService metricsService;
+
+  @Autowired private PrintDispatcher printDispatcher;
+
+  @Autowired private AdmissionService admissionService;
+
+  @Autowired private DocumentBufferPool documentBufferPool;
+
+  @Autowired private FileDocumentService fileDocumentService;
+
+  @Autowired private UrlDocumentService urlDocumentService;
+
+  @Autowired private TemplateService templateService;
+
+  @Autowired private TenantPrinterService tenantPrinterService;
+
+  @Autowired private PrintJobTracker printJobTracker;
+
+  @Autowired private SubmitWatchdog submitWatchdog;
+
+  @Autowired private PrintCoalescer printCoalescer;
+
+  @Autowired private DocumentStore documentStore;
+
   @GetMapping("/i-am-here")
-  public ResponseEntity<Map<String, Object>> getIAmHere() {
-    Map<String, Object> response = new HashMap<>();
-    response.put("status", true);
-    response.put("message", "The agent already exist");
-    response.put("timestamp", System.currentTimeMillis());
-    return ResponseEntity.ok(response);
+  public PresenceResponse getIAmHere() {
+    return new PresenceResponse(true, "The agent already exist", System.currentTimeMillis());
   }
 
   @GetMapping("/printers")
@@ -50,161 +125,730 @@ public class PrinterController {
   }
 
   @PostMapping("/printers/active")
-  public ResponseEntity<Map<String, Object>> setActivePrinter(
-      @RequestBody Map<String, String> body) {
-    Map<String, Object> response = new HashMap<>();
+  public ResponseEntity<ActivePrinterResponse> setActivePrinter(
+      @RequestBody PrinterRequest request) {
+    try {
+      String printerName = request.printerName();
+      String productionPartnerUserId = request.productionPartnerUserId();
 
+      if (printerName == null || printerName.trim().isEmpty()) {
+        return ResponseEntity.badRequest()
+            .body(
+                ActivePrinterResponse.failure(
+                    "Printer name cannot be empty", "PRINTER_NAME_REQUIRED"));
+      }
+
+      if (productionPartnerUserId != null && !productionPartnerUserId.trim().isEmpty()) {
+        tenantPrinterService.setActivePrinter(productionPartnerUserId, printerName);
+
+        // The first partner user stays the agent-wide default for requests without a tenant
+        String defaultTenant = configService.getProductionPartnerUserId();
+        if (defaultTenant == null
+            || defaultTenant.isBlank()
+            || defaultTenant.equals(productionPartnerUserId)) {
+          configService.setActivePrinter(printerName, productionPartnerUserId);
+        }
+      } else {
+        configService.setActivePrinter(printerName, productionPartnerUserId);
+      }
+
+      return ResponseEntity.ok(
+          ActivePrinterResponse.ok(
+              "Active printer successfully set to: " + printerName, printerName));
+
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              ActivePrinterResponse.failure(
+                  "Error occurred while setting printer: " + e.getMessage(),
+                  "PRINTER_SET_ERROR"));
+    }
+  }
+
+  @GetMapping("/printers/tenants")
+  public Map<String, String> getTenantPrinters() {
+    return tenantPrinterService.getActivePrinters();
+  }
+
+  @DeleteMapping("/printers/tenants/{productionPartnerUserId}")
+  public ResponseEntity<StatusResponse> removeTenant(@PathVariable String productionPartnerUserId) {
+    if (!tenantPrinterService.removeTenant(productionPartnerUserId)) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND)
+          .body(
+              StatusResponse.failure(
+                  "No printer mapping for: " + productionPartnerUserId, "TENANT_NOT_FOUND"));
+    }
+
+    return ResponseEntity.ok(
+        StatusResponse.ok("Printer mapping removed: " + productionPartnerUserId));
+  }
+
+  @PostMapping("/printers/fallback")
+  public ResponseEntity<FallbackPrinterResponse> setFallbackPrinter(
+      @RequestBody PrinterRequest request) {
     try {
-      String printerName = body.get("printerName");
-      String productionPartnerUserId = body.get("productionPartnerUserId");
+      String printerName = request.printerName();
+      configService.setFallbackPrinter(printerName);
+
+      return ResponseEntity.ok(
+          FallbackPrinterResponse.ok(
+              printerName == null || printerName.isBlank()
+                  ? "Fallback printer cleared"
+                  : "Fallback printer successfully set to: " + printerName,
+              printerName));
+
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              FallbackPrinterResponse.failure(
+                  "Error occurred while setting fallback printer: " + e.getMessage(),
+                  "PRINTER_SET_ERROR"));
+    }
+  }
+
+  @PostMapping("/printers/raw")
+  public ResponseEntity<RawPrintersResponse> setRawCapable(@RequestBody PrinterRequest request) {
+    try {
+      String printerName = request.printerName();
+      String rawCapable = request.rawCapable();
 
       if (printerName == null || printerName.trim().isEmpty()) {
-        response.put("status", false);
-        response.put("message", "Printer name cannot be empty");
-        response.put("errorCode", "PRINTER_NAME_REQUIRED");
-        return ResponseEntity.badRequest().body(response);
+        return ResponseEntity.badRequest()
+            .body(
+                RawPrintersResponse.failure(
+                    "Printer name cannot be empty", "PRINTER_NAME_REQUIRED"));
       }
 
-      configService.setActivePrinter(printerName, productionPartnerUserId);
+      boolean enabled = rawCapable == null || Boolean.parseBoolean(rawCapable);
+      configService.setRawCapable(printerName, enabled);
+
+      return ResponseEntity.ok(
+          RawPrintersResponse.ok(
+              enabled
+                  ? "Printer accepts raw jobs: " + printerName
+                  : "Printer no longer accepts raw jobs: " + printerName,
+              configService.getRawPrinters()));
+
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              RawPrintersResponse.failure(
+                  "Error occurred while setting printer: " + e.getMessage(),
+                  "PRINTER_SET_ERROR"));
+    }
+  }
+
+  @PostMapping("/printers/ipp")
+  public ResponseEntity<IppPrintersResponse> setIppPrinter(@RequestBody PrinterRequest request) {
+    try {
+      String printerName = request.printerName();
+      String ippUri = request.ippUri();
 
-      response.put("status", true);
-      response.put("message", "Active printer successfully set to: " + printerName);
-      response.put("activePrinter", printerName);
-      response.put("timestamp", System.currentTimeMillis());
+      if (printerName == null || printerName.trim().isEmpty()) {
+        return ResponseEntity.badRequest()
+            .body(
+                IppPrintersResponse.failure(
+                    "Printer name cannot be empty", "PRINTER_NAME_REQUIRED"));
+      }
 
-      return ResponseEntity.ok(response);
+      // An empty URI moves the printer back to the OS print service
+      String message;
+      if (ippUri != null && !ippUri.trim().isEmpty()) {
+        String scheme;
+        try {
+          scheme = URI.create(ippUri.trim()).getScheme();
+        } catch (IllegalArgumentException e) {
+          scheme = null;
+        }
+        if (scheme == null || !List.of("ipp", "ipps", "http", "https").contains(scheme)) {
+          return ResponseEntity.badRequest()
+              .body(
+                  IppPrintersResponse.failure(
+                      "IPP URI must start with ipp://, ipps://, http:// or https://",
+                      "INVALID_IPP_URI"));
+        }
+        configService.setIppPrinter(printerName, ippUri.trim());
+        message = "Printer is printed to over IPP: " + printerName;
+      } else {
+        configService.setIppPrinter(printerName, null);
+        message = "Printer is printed to through the OS: " + printerName;
+      }
+
+      return ResponseEntity.ok(IppPrintersResponse.ok(message, configService.getIppPrinters()));
 
     } catch (Exception e) {
-      response.put("status", false);
-      response.put("message", "Error occurred while setting printer: " + e.getMessage());
-      response.put("errorCode", "PRINTER_SET_ERROR");
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              IppPrintersResponse.failure(
+                  "Error occurred while setting printer: " + e.getMessage(),
+                  "PRINTER_SET_ERROR"));
     }
   }
 
+  @GetMapping("/printers/ipp/{printerName}")
+  public ResponseEntity<IppPrinterResponse> getIppPrinter(@PathVariable String printerName) {
+    String ippUri = configService.getIppPrinterUri(printerName);
+    if (ippUri == null) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND)
+          .body(
+              IppPrinterResponse.failure(
+                  "Printer is not configured for IPP: " + printerName, "PRINTER_NOT_IPP"));
+    }
+
+    try {
+      return ResponseEntity.ok(
+          IppPrinterResponse.ok(
+              printerName, ippUri, printerService.getIppPrinterAttributes(printerName)));
+
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.BAD_GATEWAY)
+          .body(
+              IppPrinterResponse.failure(
+                  "IPP server did not answer: " + e.getMessage(), "IPP_UNAVAILABLE"));
+    }
+  }
+
+  @GetMapping("/printers/circuit-breakers")
+  public Collection<PrinterCircuitBreaker> getCircuitBreakers() {
+    return printFailoverService.getBreakers();
+  }
+
+  @GetMapping("/printers/submit-timeouts")
+  public Collection<SubmitWatchdog.LatencyWindow> getSubmitTimeouts() {
+    return submitWatchdog.getWindows();
+  }
+
   @PostMapping("/print")
-  public ResponseEntity<Map<String, Object>> print(@RequestBody Map<String, String> body) {
-    Map<String, Object> response = new HashMap<>();
-    Map<String, Object> data = new HashMap<>();
+  public ResponseEntity<PrintResponse> print(@RequestBody PrintRequest request) {
+    String pdfData = request.pdfData();
+    String documentUrl = request.documentUrl();
+
+    // The agent downloads the document itself and streams it to the printer
+    if ((pdfData == null || pdfData.isEmpty())
+        && documentUrl != null
+        && !documentUrl.trim().isEmpty()) {
+      return submitPrintJob(
+          request,
+          0,
+          details -> {
+            try {
+              return urlDocumentService.open(documentUrl, request.documentSha256());
+            } catch (UrlDocumentService.UrlAccessException e) {
+              HttpStatus status =
+                  switch (e.getErrorCode()) {
+                    case "URL_NOT_ALLOWED" -> HttpStatus.FORBIDDEN;
+                    case "URL_FETCH_FAILED" -> HttpStatus.BAD_GATEWAY;
+                    default -> HttpStatus.BAD_REQUEST;
+                  };
+              throw new PrintRequestException(
+                  status, status.value(), e.getMessage(), e.getErrorCode());
+            }
+          });
+    }
+
+    // Input validation
+    if (pdfData == null || pdfData.trim().isEmpty()) {
+      return ResponseEntity.badRequest()
+          .body(
+              PrintResponse.failure(404, "PDF data cannot be null or empty", "PDF_DATA_REQUIRED"));
+    }
+
+    return submitPrintJob(
+        request,
+        admissionService.estimateDecodedSize(pdfData),
+        details -> {
+          // Decode Base64 PDF data into a pooled off-heap buffer
+          try {
+            return documentBufferPool.decodeBase64(pdfData);
+          } catch (IllegalArgumentException e) {
+            throw new PrintRequestException(
+                HttpStatus.BAD_REQUEST, 404, "Invalid PDF data format", e.getMessage());
+          }
+        });
+  }
+
+  @PostMapping("/print/file")
+  public ResponseEntity<PrintResponse> printFile(@RequestBody PrintRequest request) {
+    String filePath = request.filePath();
+
+    if (filePath == null || filePath.trim().isEmpty()) {
+      return ResponseEntity.badRequest()
+          .body(
+              PrintResponse.failure(
+                  400, "File path cannot be null or empty", "FILE_PATH_REQUIRED"));
+    }
+
+    // The file is read from disk, so it takes no room in the heap budget
+    return submitPrintJob(
+        request,
+        0,
+        details -> {
+          try {
+            return fileDocumentService.open(filePath);
+          } catch (FileDocumentService.FileAccessException e) {
+            HttpStatus status =
+                switch (e.getErrorCode()) {
+                  case "FILE_NOT_FOUND" -> HttpStatus.NOT_FOUND;
+                  case "FILE_NOT_ALLOWED", "FILE_PRINT_DISABLED" -> HttpStatus.FORBIDDEN;
+                  default -> HttpStatus.BAD_REQUEST;
+                };
+            throw new PrintRequestException(
+                status, status.value(), e.getMessage(), e.getErrorCode());
+          }
+        });
+  }
+
+  @PostMapping("/print/template")
+  public ResponseEntity<PrintResponse> printTemplate(@RequestBody PrintTemplateRequest request) {
+    String templateId = request.templateId();
+
+    if (templateId == null || templateId.trim().isEmpty()) {
+      return ResponseEntity.badRequest()
+          .body(
+              PrintResponse.failure(
+                  400, "Template ID cannot be null or empty", "TEMPLATE_ID_REQUIRED"));
+    }
+
+    // Field values may be numbers or booleans in the JSON
+    Map<String, String> fieldValues = new HashMap<>();
+    if (request.fields() != null) {
+      request
+          .fields()
+          .forEach((key, value) -> fieldValues.put(key, value != null ? value.toString() : ""));
+    }
+
+    long templateSize;
+    try {
+      templateSize = templateService.getTemplateSize(templateId);
+    } catch (TemplateService.TemplateException e) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND)
+          .body(PrintResponse.failure(404, e.getMessage(), e.getErrorCode()));
+    }
+
+    // A filled-in label is about the size of its template
+    return submitPrintJob(
+        request.toPrintRequest(),
+        templateSize,
+        details -> {
+          try {
+            TemplateService.RenderedTemplate rendered =
+                templateService.render(templateId, fieldValues);
+            details.templateId = templateId;
+            details.renderTimeMs = rendered.getRenderTimeMs();
+            return PrintDocument.of(rendered.getPdf());
+          } catch (TemplateService.TemplateException e) {
+            HttpStatus status =
+                e.getErrorCode().equals("TEMPLATE_RENDER_ERROR")
+                    ? HttpStatus.INTERNAL_SERVER_ERROR
+                    : HttpStatus.BAD_REQUEST;
+            throw new PrintRequestException(
+                status, status.value(), e.getMessage(), e.getErrorCode());
+          }
+        });
+  }
+
+  // Prints a document kept from an earlier job; the body only chooses the printer and options
+  @PostMapping("/reprint/{documentHash}")
+  public ResponseEntity<PrintResponse> reprint(
+      @PathVariable String documentHash, @RequestBody(required = false) PrintRequest request) {
+    PrintRequest options =
+        request != null
+            ? request
+            : new PrintRequest(
+                null, null, null, null, null, null, null, null, null, null, null, null, null);
+
+    // Stored documents are read from disk, so they take no room in the heap budget
+    return submitPrintJob(
+        options,
+        0,
+        details -> {
+          try {
+            PrintDocument stored = documentStore.open(documentHash);
+            details.documentHash = documentHash;
+            return stored;
+          } catch (DocumentStore.StoreException e) {
+            HttpStatus status =
+                switch (e.getErrorCode()) {
+                  case "DOCUMENT_NOT_FOUND" -> HttpStatus.NOT_FOUND;
+                  case "DOCUMENT_STORE_DISABLED" -> HttpStatus.FORBIDDEN;
+                  default -> HttpStatus.BAD_REQUEST;
+                };
+            throw new PrintRequestException(
+                status, status.value(), e.getMessage(), e.getErrorCode());
+          }
+        });
+  }
+
+  private ResponseEntity<PrintResponse> submitPrintJob(
+      PrintRequest request, long heapBytes, DocumentLoader loader) {
+    AdmissionService.Permit permit = null;
+    PrintDocument document = null;
+    PrintJobTracker.TrackedJob trackedJob = null;
+    PrintTimings timings = PrintTimings.start();
+    long phaseStart = System.nanoTime();
+    String tracedPrinter = null;
+    String failure = null;
+    boolean printed = false;
 
     try {
-      String fileName = body.get("fileName");
-      String pdfData = body.get("pdfData");
+      String fileName = request.fileName();
+
+      PrintPriority priority;
+      try {
+        priority = PrintPriority.fromString(request.priority());
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+            .body(
+                PrintResponse.failure(
+                    404, "Invalid priority, expected urgent, normal or bulk", "INVALID_PRIORITY"));
+      }
 
-      // Input validation
-      if (pdfData == null || pdfData.trim().isEmpty()) {
-        response.put("status", false);
-        response.put("statuscode", 404);
-        response.put("message", "PDF data cannot be null or empty");
-        response.put("data", "PDF_DATA_REQUIRED");
-        return ResponseEntity.badRequest().body(response);
+      PrinterLanguage language;
+      try {
+        language = PrinterLanguage.fromString(request.language());
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+            .body(
+                PrintResponse.failure(
+                    404, "Invalid language, expected pdf, zpl, epl or escpos", "INVALID_LANGUAGE"));
+      }
+
+      // Use the named printer, the least loaded pool member, or the tenant's or agent's active one
+      String printerPool = request.printerPool();
+      String productionPartnerUserId = request.productionPartnerUserId();
+      boolean tenantRequested =
+          productionPartnerUserId != null && !productionPartnerUserId.trim().isEmpty();
+      String printerName = request.printerName();
+      String printer;
+      if (printerName != null && !printerName.trim().isEmpty()) {
+        printer = printerName;
+      } else if (printerPool != null && !printerPool.trim().isEmpty()) {
+        try {
+          printer = printerPoolService.selectPrinter(printerPool);
+        } catch (PrinterPoolService.PoolException e) {
+          return ResponseEntity.badRequest()
+              .body(PrintResponse.failure(404, e.getMessage(), e.getErrorCode()));
+        }
+      } else if (tenantRequested) {
+        printer = tenantPrinterService.getActivePrinter(productionPartnerUserId);
+      } else {
+        printer = configService.getActivePrinter();
       }
 
       // Check if active printer is configured
-      String printer = configService.getActivePrinter();
       if (printer == null || printer.trim().isEmpty()) {
-        response.put("status", false);
-        response.put("statuscode", 404);
-        response.put("message", "No active printer configured. Please select a printer first.");
-        response.put("data", "NO_ACTIVE_PRINTER");
-        return ResponseEntity.badRequest().body(response);
+        return ResponseEntity.badRequest()
+            .body(
+                PrintResponse.failure(
+                    404,
+                    tenantRequested
+                        ? "No active printer configured for: " + productionPartnerUserId
+                        : "No active printer configured. Please select a printer first.",
+                    "NO_ACTIVE_PRINTER"));
+      }
+
+      // Raw bytes sent to a printer that does not understand them come out as garbage
+      if (language.isRaw() && !configService.isRawCapable(printer)) {
+        return ResponseEntity.badRequest()
+            .body(
+                PrintResponse.failure(
+                    400,
+                    "Printer is not configured for raw jobs: " + printer,
+                    "PRINTER_NOT_RAW_CAPABLE"));
       }
+      timings.record("config", phaseStart);
+      tracedPrinter = printer;
 
-      // Decode Base64 PDF data
-      byte[] pdfBytes;
+      // Reserve room for the document before allocating it
+      phaseStart = System.nanoTime();
       try {
-        pdfBytes = Base64.getDecoder().decode(pdfData);
-      } catch (IllegalArgumentException e) {
-        response.put("status", false);
-        response.put("statuscode", 404);
-        response.put("message", "Invalid PDF data format");
-        response.put("data", e.getMessage());
-        return ResponseEntity.badRequest().body(response);
+        permit = admissionService.acquire(heapBytes);
+        timings.record("admission", phaseStart);
+      } catch (AdmissionService.AdmissionException e) {
+        PrintError error =
+            new PrintError(
+                e.getErrorCode(),
+                null,
+                null,
+                admissionService.getInFlightJobs(),
+                admissionService.getInFlightBytes(),
+                System.currentTimeMillis());
+
+        if (e.getRetryAfterSeconds() <= 0) {
+          return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+              .body(PrintResponse.failure(413, e.getMessage(), error));
+        }
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(PrintResponse.failure(429, e.getMessage(), error));
       }
 
-      // Perform print operation
-      printerService.printPdf(printer, pdfBytes);
-      data.put("printerName", printer);
-      data.put("fileName", fileName != null ? fileName : "document.pdf");
-      data.put("timestamp", System.currentTimeMillis());
-      data.put("documentSize", pdfBytes.length);
+      LoadDetails details = new LoadDetails();
+      phaseStart = System.nanoTime();
+      DocumentStore.Recording recording = null;
+      try {
+        document = loader.load(details);
+        // New documents are hashed and kept while they print, so they can be reprinted
+        if (details.documentHash == null) {
+          recording = documentStore.record(document);
+          document = recording;
+        }
+        timings.record("decode", phaseStart);
+      } catch (PrintRequestException e) {
+        return ResponseEntity.status(e.getHttpStatus())
+            .body(PrintResponse.failure(e.getStatusCode(), e.getMessage(), e.getData()));
+      }
 
-      // Success response
-      response.put("status", true);
-      response.put("statuscode", 200);
-      response.put("message", "Print job completed successfully");
-      response.put("data", data);
+      // From here on the job can be followed and canceled through /jobs
+      try {
+        trackedJob = printJobTracker.create(request.jobId(), printer, timings.getStartNanos());
+      } catch (PrintJobTracker.JobException e) {
+        return ResponseEntity.badRequest()
+            .body(PrintResponse.failure(400, e.getMessage(), e.getErrorCode()));
+      }
 
-      return ResponseEntity.ok(response);
+      // Queue the job on the printer by priority, failing over to the backup printer if needed
+      boolean chunkedRequested =
+          !language.isRaw() && chunkedPrintService.isRequested(request.chunked());
+      String targetPrinter = printer;
+      PrintDocument pdf = document;
+      PrintJobTracker.TrackedJob job = trackedJob;
+      long submitted = System.nanoTime();
+      PrintDispatcher.Dispatched<PrintFailoverService.PrintOutcome> dispatched;
+      try {
+        if (printCoalescer.accepts(printer, language, priority, chunkedRequested, document)) {
+          // Small labels for a busy printer are merged with others arriving at the same time
+          dispatched = printCoalescer.print(printer, priority, trackedJob, document);
+        } else {
+          dispatched =
+              printDispatcher.execute(
+                  printer,
+                  priority,
+                  () ->
+                      job.attach(
+                          () ->
+                              timings.attach(
+                                  () -> {
+                                    timings.record("queueWait", submitted);
+                                    return chunkedRequested
+                                        ? chunkedPrintService.print(targetPrinter, pdf)
+                                        : printFailoverService.print(
+                                            targetPrinter, pdf, language);
+                                  })));
+        }
+      } catch (PrintFailoverService.CircuitOpenException e) {
+        failure = e.getMessage();
+        PrintError error =
+            new PrintError(
+                "PRINTER_UNAVAILABLE", null, printer, null, null, System.currentTimeMillis());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+            .body(PrintResponse.failure(503, failure, error));
+      } catch (PrintJobTracker.CanceledException e) {
+        failure = e.getMessage();
+        PrintError error =
+            new PrintError(
+                "JOB_CANCELED",
+                trackedJob.getJobId(),
+                null,
+                null,
+                null,
+                System.currentTimeMillis());
+        return ResponseEntity.status(HttpStatus.CONFLICT)
+            .body(PrintResponse.failure(409, failure, error));
+      }
+      trackedJob.submitted();
+      phaseStart = System.nanoTime();
+      String documentHash = recording != null ? recording.store() : details.documentHash;
+      timings.record("store", phaseStart);
+      PrintFailoverService.PrintOutcome outcome = dispatched.getResult();
+      PrintCoalescer.CoalescedOutcome coalesced =
+          outcome instanceof PrintCoalescer.CoalescedOutcome coalescedOutcome
+              ? coalescedOutcome
+              : null;
+      ChunkedPrintService.ChunkedOutcome chunked =
+          outcome instanceof ChunkedPrintService.ChunkedOutcome chunkedOutcome
+              ? chunkedOutcome
+              : null;
+      String timingsRequested = request.timings();
+      boolean timingsIncluded =
+          timingsRequested != null ? Boolean.parseBoolean(timingsRequested) : timingsByDefault;
+      PrintJobResult result =
+          new PrintJobResult(
+              trackedJob.getJobId(),
+              trackedJob.getState().name().toLowerCase(),
+              outcome.getPrinterName(),
+              outcome.isFailedOver() ? printer : null,
+              printerPool != null && !printerPool.trim().isEmpty() ? printerPool : null,
+              tenantRequested ? productionPartnerUserId : null,
+              priority.name().toLowerCase(),
+              language.name().toLowerCase(),
+              dispatched.getQueueWaitMs(),
+              outcome.getAttempts(),
+              chunked != null ? chunked.getPageCount() : null,
+              chunked != null ? chunked.getChunkCount() : null,
+              chunked != null ? chunked.getTimeToFirstChunkMs() : null,
+              coalesced != null ? coalesced.getJobCount() : null,
+              details.templateId,
+              details.renderTimeMs,
+              fileName != null ? fileName : "document.pdf",
+              document.size(),
+              documentHash,
+              System.currentTimeMillis(),
+              timingsIncluded ? timings.toMillis() : null);
+      printed = true;
+
+      // Handing the data to the OS is not completion; only say so when the printer confirmed it
+      return ResponseEntity.ok(
+          new PrintResponse(
+              true,
+              200,
+              trackedJob.getState() == PrintJobTracker.State.COMPLETED
+                  ? "Print job completed successfully"
+                  : "Print job submitted successfully",
+              result));
 
     } catch (Exception e) {
-      data.put("errorCode", "PRINT_ERROR");
-      data.put("timestamp", System.currentTimeMillis());
-
-      response.put("status", false);
-      response.put("statuscode", 500);
-      response.put("message", "Print operation failed: " + e.getMessage());
-      response.put("data", data);
+      failure = "Print operation failed: " + e.getMessage();
 
       // Log the error for debugging
       e.printStackTrace();
 
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(PrintResponse.failure(500, failure, PrintError.of("PRINT_ERROR")));
+    } finally {
+      if (document != null) {
+        document.close();
+      }
+      if (permit != null) {
+        permit.close();
+      }
+      if (trackedJob != null && !printed) {
+        trackedJob.failed(String.valueOf(failure));
+      }
+      if (tracedPrinter != null) {
+        traceJob(tracedPrinter, printed, timings);
+      }
     }
   }
 
-  @GetMapping("/config")
-  public JsonNode getConfig() {
-    return configService.getAllConfig();
+  private void traceJob(String printer, boolean printed, PrintTimings timings) {
+    Map<String, Double> phases = timings.toMillis();
+    phases.forEach(
+        (phase, millis) -> metricsService.recordTime("print.phase." + phase, Math.round(millis)));
+    if (traceLogger.isDebugEnabled()) {
+      StringBuilder span = new StringBuilder("span=print.job printer=\"").append(printer);
+      span.append("\" outcome=").append(printed ? "printed" : "failed");
+      phases.forEach((phase, millis) -> span.append(' ').append(phase).append('=').append(millis));
+      traceLogger.debug(span.toString());
+    }
   }
 
-  @PostMapping("/config/print-settings")
-  public ResponseEntity<Map<String, Object>> updatePrintSettings(
-      @RequestBody Map<String, Object> settings) {
-    Map<String, Object> response = new HashMap<>();
+  @GetMapping("/printer-pools")
+  public Map<String, List<PrinterPoolService.MemberStatus>> getPrinterPools() {
+    return printerPoolService.getPoolStatus();
+  }
 
+  @PostMapping("/printer-pools")
+  public ResponseEntity<PrinterPoolResponse> setPrinterPool(
+      @RequestBody PrinterPoolRequest request) {
     try {
-      settings.forEach(configService::setPrintSettings);
+      String poolName = request.poolName();
+      List<String> printers = request.printers();
 
-      response.put("status", true);
-      response.put("statuscode", 201);
-      response.put("message", "Print settings updated successfully");
-      response.put("updatedSettings", settings);
-      response.put("timestamp", System.currentTimeMillis());
+      if (poolName == null || poolName.trim().isEmpty()) {
+        return ResponseEntity.badRequest()
+            .body(PrinterPoolResponse.failure("Pool name cannot be empty", "POOL_NAME_REQUIRED"));
+      }
+
+      if (printers == null || printers.isEmpty()) {
+        return ResponseEntity.badRequest()
+            .body(
+                PrinterPoolResponse.failure(
+                    "Pool must contain at least one printer", "POOL_PRINTERS_REQUIRED"));
+      }
 
-      return ResponseEntity.ok(response);
+      List<String> members = List.copyOf(printers);
+      configService.setPrinterPool(poolName, members);
+
+      return ResponseEntity.ok(
+          PrinterPoolResponse.ok("Printer pool saved: " + poolName, poolName, members));
 
     } catch (Exception e) {
-      response.put("status", false);
-      response.put("statuscode", 500);
-      response.put("message", "Error occurred while updating settings: " + e.getMessage());
-      response.put("errorCode", "SETTINGS_UPDATE_ERROR");
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              PrinterPoolResponse.failure(
+                  "Error occurred while saving printer pool: " + e.getMessage(),
+                  "POOL_SET_ERROR"));
+    }
+  }
 
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+  @DeleteMapping("/printer-pools/{poolName}")
+  public ResponseEntity<StatusResponse> removePrinterPool(@PathVariable String poolName) {
+    if (!configService.removePrinterPool(poolName)) {
+      return ResponseEntity.status(HttpStatus.NOT_FOUND)
+          .body(
+              StatusResponse.failure(
+                  "Printer pool not found: " + poolName, "PRINTER_POOL_NOT_FOUND"));
     }
+
+    return ResponseEntity.ok(StatusResponse.ok("Printer pool removed: " + poolName));
   }
 
-  @PostMapping("/config/reset")
-  public ResponseEntity<Map<String, Object>> resetConfig() {
-    Map<String, Object> response = new HashMap<>();
+  @GetMapping("/metrics")
+  public Map<String, Object> getMetrics() {
+    return metricsService.snapshot();
+  }
 
+  @GetMapping("/config")
+  public JsonNode getConfig() {
+    return configService.getAllConfig();
+  }
+
+  // Settings are free-form keys saved as they are, so the body stays a map
+  @PostMapping("/config/print-settings")
+  public ResponseEntity<PrintSettingsResponse> updatePrintSettings(
+      @RequestBody Map<String, Object> settings) {
     try {
-      configService.resetConfig();
+      configService.setPrintSettings(settings);
+      return ResponseEntity.ok(PrintSettingsResponse.ok(settings));
 
-      response.put("status", true);
-      response.put("statuscode", 200);
-      response.put("message", "Configuration reset successfully");
-      response.put("timestamp", System.currentTimeMillis());
+    } catch (Exception e) {
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              PrintSettingsResponse.failure(
+                  500,
+                  "Error occurred while updating settings: " + e.getMessage(),
+                  "SETTINGS_UPDATE_ERROR"));
+    }
+  }
 
-      return ResponseEntity.ok(response);
+  @PostMapping("/config/reset")
+  public ResponseEntity<StatusResponse> resetConfig() {
+    try {
+      tenantPrinterService.resetConfig();
+      return ResponseEntity.ok(StatusResponse.ok(200, "Configuration reset successfully"));
 
     } catch (Exception e) {
-      response.put("status", false);
-      response.put("statuscode", 500);
-      response.put("message", "Error occurred while resetting configuration: " + e.getMessage());
-      response.put("errorCode", "CONFIG_RESET_ERROR");
-
-      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response);
+      return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+          .body(
+              StatusResponse.failure(
+                  500,
+                  "Error occurred while resetting configuration: " + e.getMessage(),
+                  "CONFIG_RESET_ERROR"));
     }
   }
+
+  // Produces the job's document once the job has been admitted
+  @FunctionalInterface
+  private interface DocumentLoader {
+    PrintDocument load(LoadDetails details) throws PrintRequestException;
+  }
+
+  // What a loader learned while producing the document, reported with the job
+  private static class LoadDetails {
+    private String templateId;
+    private Long renderTimeMs;
+    // Set when the document came from the document store
+    private String documentHash;
+  }
 }
@@ -0,0 +1,36 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTimings;
+import com.alpidiprinteragent.alpidiprinteragent.service.SocketActivationService;
+import jakarta.servlet.Filter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import java.io.IOException;
+import org.springframework.stereotype.Component;
+
+// Marks when a request arrives, before Spring reads and parses its JSON body
+@Component
+public class RequestTimingFilter implements Filter {
+
+  private final SocketActivationService socketActivationService;
+
+  public RequestTimingFilter(SocketActivationService socketActivationService) {
+    this.socketActivationService = socketActivationService;
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+      throws IOException, ServletException {
+    PrintTimings.markRequestReceived();
+    // Requests in progress keep an idle-shutdown from happening
+    socketActivationService.requestStarted();
+    try {
+      chain.doFilter(request, response);
+    } finally {
+      socketActivationService.requestFinished();
+      PrintTimings.clearRequestReceived();
+    }
+  }
+}
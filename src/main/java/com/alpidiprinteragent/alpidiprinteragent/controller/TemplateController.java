@@ -0,0 +1,86 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.StatusResponse;
+import com.alpidiprinteragent.alpidiprinteragent.model.TemplateRequest;
+import com.alpidiprinteragent.alpidiprinteragent.model.TemplateResponse;
+import com.alpidiprinteragent.alpidiprinteragent.service.TemplateService;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@CrossOrigin(
+    origins = {
+      "http://localhost:4200",
+      "https://alpidi.com",
+      "https://app.alpidi.com",
+      "https://test.alpidi.com",
+      "https://stage.alpidi.com"
+    })
+@RestController
+public class TemplateController {
+  @Autowired private TemplateService templateService;
+
+  @GetMapping("/templates")
+  public List<Map<String, Object>> getTemplates() {
+    return templateService.listTemplates();
+  }
+
+  @PostMapping("/templates")
+  public ResponseEntity<TemplateResponse> saveTemplate(@RequestBody TemplateRequest request) {
+    try {
+      String templateId = request.templateId();
+      String pdfData = request.pdfData();
+
+      if (pdfData == null || pdfData.trim().isEmpty()) {
+        return ResponseEntity.badRequest()
+            .body(
+                TemplateResponse.failure(
+                    "Template PDF data cannot be null or empty", "PDF_DATA_REQUIRED"));
+      }
+
+      byte[] pdf;
+      try {
+        pdf = Base64.getDecoder().decode(pdfData);
+      } catch (IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+            .body(TemplateResponse.failure("Invalid PDF data format", "INVALID_TEMPLATE"));
+      }
+
+      List<String> fields = templateService.saveTemplate(templateId, pdf);
+      return ResponseEntity.ok(TemplateResponse.ok(templateId, fields, pdf.length));
+
+    } catch (TemplateService.TemplateException e) {
+      TemplateResponse response = TemplateResponse.failure(e.getMessage(), e.getErrorCode());
+      return e.getErrorCode().equals("TEMPLATE_SAVE_ERROR")
+          ? ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(response)
+          : ResponseEntity.badRequest().body(response);
+    }
+  }
+
+  @DeleteMapping("/templates/{templateId}")
+  public ResponseEntity<StatusResponse> deleteTemplate(@PathVariable String templateId) {
+    try {
+      if (!templateService.deleteTemplate(templateId)) {
+        return ResponseEntity.status(HttpStatus.NOT_FOUND)
+            .body(
+                StatusResponse.failure("Template not found: " + templateId, "TEMPLATE_NOT_FOUND"));
+      }
+
+      return ResponseEntity.ok(StatusResponse.ok("Template removed: " + templateId));
+
+    } catch (TemplateService.TemplateException e) {
+      return ResponseEntity.badRequest()
+          .body(StatusResponse.failure(e.getMessage(), e.getErrorCode()));
+    }
+  }
+}
@@ -0,0 +1,17 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record ActivePrinterResponse(
+    boolean status, String message, String errorCode, String activePrinter, Long timestamp) {
+
+  public static ActivePrinterResponse ok(String message, String activePrinter) {
+    return new ActivePrinterResponse(
+        true, message, null, activePrinter, System.currentTimeMillis());
+  }
+
+  public static ActivePrinterResponse failure(String message, String errorCode) {
+    return new ActivePrinterResponse(false, message, errorCode, null, null);
+  }
+}
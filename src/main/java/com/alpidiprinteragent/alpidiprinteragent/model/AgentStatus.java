@@ -0,0 +1,10 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import java.util.List;
+
+// Answer to /agent/status, which the coordinator polls with its heartbeat
+public record AgentStatus(List<PrinterStatus> printers, long timestamp) {
+
+  public record PrinterStatus(
+      String printerName, boolean available, boolean circuitOpen, int load) {}
+}
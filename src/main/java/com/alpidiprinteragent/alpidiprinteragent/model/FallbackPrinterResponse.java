@@ -0,0 +1,22 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// fallbackPrinter is sent as null once the fallback printer is cleared
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record FallbackPrinterResponse(
+    boolean status,
+    String message,
+    String errorCode,
+    @JsonInclude(JsonInclude.Include.ALWAYS) String fallbackPrinter,
+    Long timestamp) {
+
+  public static FallbackPrinterResponse ok(String message, String fallbackPrinter) {
+    return new FallbackPrinterResponse(
+        true, message, null, fallbackPrinter, System.currentTimeMillis());
+  }
+
+  public static FallbackPrinterResponse failure(String message, String errorCode) {
+    return new FallbackPrinterResponse(false, message, errorCode, null, null);
+  }
+}
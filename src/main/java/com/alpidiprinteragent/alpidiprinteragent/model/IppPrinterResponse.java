@@ -0,0 +1,26 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
+// Answer to /printers/ipp/{printerName}: the attributes the printer reported over IPP
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IppPrinterResponse(
+    boolean status,
+    String message,
+    String errorCode,
+    String printerName,
+    String ippUri,
+    Map<String, Object> attributes,
+    Long timestamp) {
+
+  public static IppPrinterResponse ok(
+      String printerName, String ippUri, Map<String, Object> attributes) {
+    return new IppPrinterResponse(
+        true, null, null, printerName, ippUri, attributes, System.currentTimeMillis());
+  }
+
+  public static IppPrinterResponse failure(String message, String errorCode) {
+    return new IppPrinterResponse(false, message, errorCode, null, null, null, null);
+  }
+}
@@ -0,0 +1,21 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record IppPrintersResponse(
+    boolean status,
+    String message,
+    String errorCode,
+    Map<String, String> ippPrinters,
+    Long timestamp) {
+
+  public static IppPrintersResponse ok(String message, Map<String, String> ippPrinters) {
+    return new IppPrintersResponse(true, message, null, ippPrinters, System.currentTimeMillis());
+  }
+
+  public static IppPrintersResponse failure(String message, String errorCode) {
+    return new IppPrintersResponse(false, message, errorCode, null, null);
+  }
+}
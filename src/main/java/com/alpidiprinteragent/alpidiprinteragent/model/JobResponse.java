@@ -0,0 +1,22 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintJobTracker;
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Answer of the /jobs/{jobId} endpoints
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record JobResponse(
+    boolean status,
+    String message,
+    String errorCode,
+    PrintJobTracker.TrackedJob job,
+    Long timestamp) {
+
+  public static JobResponse ok(String message, PrintJobTracker.TrackedJob job) {
+    return new JobResponse(true, message, null, job, System.currentTimeMillis());
+  }
+
+  public static JobResponse failure(String message, String errorCode) {
+    return new JobResponse(false, message, errorCode, null, null);
+  }
+}
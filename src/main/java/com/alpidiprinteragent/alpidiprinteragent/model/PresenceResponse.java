@@ -0,0 +1,4 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+// Answer to /i-am-here, which the web app polls to find a running agent
+public record PresenceResponse(boolean status, String message, long timestamp) {}
@@ -0,0 +1,41 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+public interface PrintDocument extends AutoCloseable {
+
+  // -1 while not known, e.g. for a download without Content-Length that has not been read yet
+  long size();
+
+  // A fresh stream over the whole document; may be called once per submission attempt
+  InputStream openStream() throws IOException;
+
+  // Read-only view of the whole document for processing that needs random access
+  ByteBuffer asByteBuffer() throws IOException;
+
+  // Releases buffers or files held by the document
+  @Override
+  default void close() {}
+
+  static PrintDocument of(byte[] data) {
+    ByteBuffer buffer = ByteBuffer.wrap(data).asReadOnlyBuffer();
+    return new PrintDocument() {
+      @Override
+      public long size() {
+        return data.length;
+      }
+
+      @Override
+      public InputStream openStream() {
+        return new ByteBufferInputStream(buffer.duplicate());
+      }
+
+      @Override
+      public ByteBuffer asByteBuffer() {
+        return buffer.duplicate();
+      }
+    };
+  }
+}
@@ -0,0 +1,18 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Data of a failed print response that carries more than its error code
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PrintError(
+    String errorCode,
+    String jobId,
+    String printerName,
+    Integer inFlightJobs,
+    Long inFlightBytes,
+    long timestamp) {
+
+  public static PrintError of(String errorCode) {
+    return new PrintError(errorCode, null, null, null, null, System.currentTimeMillis());
+  }
+}
@@ -0,0 +1,29 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
+// Data of a successful print response; fields that do not apply to the job are left out
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PrintJobResult(
+    String jobId,
+    String jobState,
+    String printerName,
+    String requestedPrinter,
+    String printerPool,
+    String productionPartnerUserId,
+    String priority,
+    String language,
+    long queueWaitMs,
+    int attempts,
+    Integer pageCount,
+    Integer chunkCount,
+    Long timeToFirstChunkMs,
+    Integer coalescedJobs,
+    String templateId,
+    Long renderTimeMs,
+    String fileName,
+    long documentSize,
+    String documentHash,
+    long timestamp,
+    Map<String, Double> timings) {}
@@ -0,0 +1,25 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+public enum PrintPriority {
+  URGENT(0),
+  NORMAL(1),
+  BULK(2);
+
+  // How many aging steps a job of this class starts behind an urgent job
+  private final int rank;
+
+  PrintPriority(int rank) {
+    this.rank = rank;
+  }
+
+  public int getRank() {
+    return rank;
+  }
+
+  public static PrintPriority fromString(String value) {
+    if (value == null || value.isBlank()) {
+      return NORMAL;
+    }
+    return PrintPriority.valueOf(value.trim().toUpperCase());
+  }
+}
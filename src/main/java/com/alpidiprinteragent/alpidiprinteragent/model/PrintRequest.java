@@ -0,0 +1,18 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+// Body of /print and /print/file. Options stay strings, as the API has always accepted
+// "chunked": true and "chunked": "true" alike.
+public record PrintRequest(
+    String pdfData,
+    String documentUrl,
+    String documentSha256,
+    String filePath,
+    String fileName,
+    String printerName,
+    String printerPool,
+    String productionPartnerUserId,
+    String priority,
+    String language,
+    String jobId,
+    String chunked,
+    String timings) {}
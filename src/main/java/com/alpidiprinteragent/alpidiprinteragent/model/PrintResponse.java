@@ -0,0 +1,9 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+// Envelope of every print response; data is a PrintJobResult, a PrintError or an error code
+public record PrintResponse(boolean status, int statuscode, String message, Object data) {
+
+  public static PrintResponse failure(int statuscode, String message, Object data) {
+    return new PrintResponse(false, statuscode, message, data);
+  }
+}
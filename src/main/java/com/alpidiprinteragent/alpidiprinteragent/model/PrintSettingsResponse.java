@@ -0,0 +1,28 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.Map;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PrintSettingsResponse(
+    boolean status,
+    int statuscode,
+    String message,
+    String errorCode,
+    Map<String, Object> updatedSettings,
+    Long timestamp) {
+
+  public static PrintSettingsResponse ok(Map<String, Object> updatedSettings) {
+    return new PrintSettingsResponse(
+        true,
+        201,
+        "Print settings updated successfully",
+        null,
+        updatedSettings,
+        System.currentTimeMillis());
+  }
+
+  public static PrintSettingsResponse failure(int statuscode, String message, String errorCode) {
+    return new PrintSettingsResponse(false, statuscode, message, errorCode, null, null);
+  }
+}
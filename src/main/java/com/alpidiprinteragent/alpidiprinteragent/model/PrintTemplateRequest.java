@@ -0,0 +1,35 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import java.util.Map;
+
+// Body of /print/template; field values may be strings, numbers or booleans in the JSON
+public record PrintTemplateRequest(
+    String templateId,
+    Map<String, Object> fields,
+    String fileName,
+    String printerName,
+    String printerPool,
+    String productionPartnerUserId,
+    String priority,
+    String jobId,
+    String chunked,
+    String timings) {
+
+  // Templates always render to PDF
+  public PrintRequest toPrintRequest() {
+    return new PrintRequest(
+        null,
+        null,
+        null,
+        null,
+        fileName != null ? fileName : templateId + ".pdf",
+        printerName,
+        printerPool,
+        productionPartnerUserId,
+        priority,
+        null,
+        jobId,
+        chunked,
+        timings);
+  }
+}
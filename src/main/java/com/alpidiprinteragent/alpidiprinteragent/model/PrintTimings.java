@@ -0,0 +1,81 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+// Monotonic per-phase durations of one print job; phases that repeat (retries, chunks) add up
+public class PrintTimings {
+
+  private static final ThreadLocal<Long> requestReceived = new ThreadLocal<>();
+  private static final ThreadLocal<PrintTimings> current = new ThreadLocal<>();
+
+  private final long start;
+  private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+  private PrintTimings(long start) {
+    this.start = start;
+  }
+
+  // Called by the request filter before the body is read
+  public static void markRequestReceived() {
+    requestReceived.set(System.nanoTime());
+  }
+
+  public static void clearRequestReceived() {
+    requestReceived.remove();
+  }
+
+  // Starts at request receipt when known, so reading and parsing the body is the first phase
+  public static PrintTimings start() {
+    long now = System.nanoTime();
+    Long received = requestReceived.get();
+    PrintTimings timings = new PrintTimings(received != null ? received : now);
+    if (received != null) {
+      timings.add("request", now - received);
+    }
+    return timings;
+  }
+
+  // Lets code further down, such as the printer lookup, record phases of this job
+  public <T> T attach(Callable<T> task) throws Exception {
+    current.set(this);
+    try {
+      return task.call();
+    } finally {
+      current.remove();
+    }
+  }
+
+  // No-op when no job is attached to this thread
+  public static void recordCurrent(String phase, long startNanos) {
+    PrintTimings timings = current.get();
+    if (timings != null) {
+      timings.record(phase, startNanos);
+    }
+  }
+
+  public void record(String phase, long startNanos) {
+    add(phase, System.nanoTime() - startNanos);
+  }
+
+  public synchronized void add(String phase, long nanos) {
+    phaseNanos.merge(phase, nanos, Long::sum);
+  }
+
+  public long getStartNanos() {
+    return start;
+  }
+
+  public long getTotalNanos() {
+    return System.nanoTime() - start;
+  }
+
+  // Milliseconds with microsecond precision, in the order the phases first occurred
+  public synchronized Map<String, Double> toMillis() {
+    Map<String, Double> millis = new LinkedHashMap<>();
+    phaseNanos.forEach((phase, nanos) -> millis.put(phase, nanos / 1000 / 1000.0));
+    millis.put("total", getTotalNanos() / 1000 / 1000.0);
+    return millis;
+  }
+}
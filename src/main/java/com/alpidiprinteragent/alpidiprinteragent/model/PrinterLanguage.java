@@ -0,0 +1,27 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+public enum PrinterLanguage {
+  PDF(false),
+  ZPL(true),
+  EPL(true),
+  ESC_POS(true);
+
+  // Raw jobs are already in the printer's own language and skip the OS rendering path
+  private final boolean raw;
+
+  PrinterLanguage(boolean raw) {
+    this.raw = raw;
+  }
+
+  public boolean isRaw() {
+    return raw;
+  }
+
+  public static PrinterLanguage fromString(String value) {
+    if (value == null || value.isBlank()) {
+      return PDF;
+    }
+    String normalized = value.trim().toUpperCase().replace('-', '_');
+    return normalized.equals("ESCPOS") ? ESC_POS : PrinterLanguage.valueOf(normalized);
+  }
+}
@@ -0,0 +1,6 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import java.util.List;
+
+// Body of POST /printer-pools
+public record PrinterPoolRequest(String poolName, List<String> printers) {}
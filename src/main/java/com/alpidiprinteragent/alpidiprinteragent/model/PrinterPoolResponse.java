@@ -0,0 +1,23 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record PrinterPoolResponse(
+    boolean status,
+    String message,
+    String errorCode,
+    String poolName,
+    List<String> printers,
+    Long timestamp) {
+
+  public static PrinterPoolResponse ok(String message, String poolName, List<String> printers) {
+    return new PrinterPoolResponse(
+        true, message, null, poolName, printers, System.currentTimeMillis());
+  }
+
+  public static PrinterPoolResponse failure(String message, String errorCode) {
+    return new PrinterPoolResponse(false, message, errorCode, null, null, null);
+  }
+}
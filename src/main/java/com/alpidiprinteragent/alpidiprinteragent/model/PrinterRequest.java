@@ -0,0 +1,6 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+// Body of the /printers settings endpoints; each reads the fields it needs. rawCapable stays a
+// string, as the API has always accepted true and "true" alike.
+public record PrinterRequest(
+    String printerName, String productionPartnerUserId, String rawCapable, String ippUri) {}
@@ -0,0 +1,17 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record RawPrintersResponse(
+    boolean status, String message, String errorCode, List<String> rawPrinters, Long timestamp) {
+
+  public static RawPrintersResponse ok(String message, List<String> rawPrinters) {
+    return new RawPrintersResponse(true, message, null, rawPrinters, System.currentTimeMillis());
+  }
+
+  public static RawPrintersResponse failure(String message, String errorCode) {
+    return new RawPrintersResponse(false, message, errorCode, null, null);
+  }
+}
@@ -0,0 +1,26 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+// Answer of the settings endpoints that report nothing but the outcome; statuscode is only
+// sent by the endpoints that have always sent it
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record StatusResponse(
+    boolean status, Integer statuscode, String message, String errorCode, Long timestamp) {
+
+  public static StatusResponse ok(String message) {
+    return ok(null, message);
+  }
+
+  public static StatusResponse ok(Integer statuscode, String message) {
+    return new StatusResponse(true, statuscode, message, null, System.currentTimeMillis());
+  }
+
+  public static StatusResponse failure(String message, String errorCode) {
+    return failure(null, message, errorCode);
+  }
+
+  public static StatusResponse failure(Integer statuscode, String message, String errorCode) {
+    return new StatusResponse(false, statuscode, message, errorCode, null);
+  }
+}
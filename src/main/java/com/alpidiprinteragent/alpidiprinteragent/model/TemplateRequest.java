@@ -0,0 +1,4 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+// Body of POST /templates; pdfData is the Base64 encoded template PDF
+public record TemplateRequest(String templateId, String pdfData) {}
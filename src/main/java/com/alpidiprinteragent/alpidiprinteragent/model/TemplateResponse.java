@@ -0,0 +1,31 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+
+// Answer to POST /templates; fields lists the form fields found in the template
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public record TemplateResponse(
+    boolean status,
+    String message,
+    String errorCode,
+    String templateId,
+    List<String> fields,
+    Integer size,
+    Long timestamp) {
+
+  public static TemplateResponse ok(String templateId, List<String> fields, int size) {
+    return new TemplateResponse(
+        true,
+        "Template saved: " + templateId,
+        null,
+        templateId,
+        fields,
+        size,
+        System.currentTimeMillis());
+  }
+
+  public static TemplateResponse failure(String message, String errorCode) {
+    return new TemplateResponse(false, message, errorCode, null, null, null, null);
+  }
+}
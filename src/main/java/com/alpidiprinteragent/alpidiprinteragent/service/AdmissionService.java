@@ -0,0 +1,116 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class AdmissionService {
+
+  @Value("${admission.max-in-flight-jobs:16}")
+  private int maxInFlightJobs;
+
+  @Value("${admission.max-in-flight-bytes:67108864}")
+  private long maxInFlightBytes;
+
+  @Value("${admission.retry-after-seconds:2}")
+  private int retryAfterSeconds;
+
+  private final MetricsService metricsService;
+
+  private int inFlightJobs;
+  private long inFlightBytes;
+
+  public AdmissionService(MetricsService metricsService) {
+    this.metricsService = metricsService;
+    metricsService.registerGauge("admission.inFlightJobs", this::getInFlightJobs);
+    metricsService.registerGauge("admission.inFlightBytes", this::getInFlightBytes);
+    metricsService.registerGauge("admission.maxInFlightJobs", () -> maxInFlightJobs);
+    metricsService.registerGauge("admission.maxInFlightBytes", () -> maxInFlightBytes);
+  }
+
+  // Size of the decoded document, computed from the Base64 text without decoding it
+  public long estimateDecodedSize(String base64) {
+    int length = base64.length();
+    int padding = 0;
+    if (length > 0 && base64.charAt(length - 1) == '=') {
+      padding++;
+      if (length > 1 && base64.charAt(length - 2) == '=') {
+        padding++;
+      }
+    }
+    return (long) length * 3 / 4 - padding;
+  }
+
+  public Permit acquire(long documentBytes) throws AdmissionException {
+    if (documentBytes > maxInFlightBytes) {
+      metricsService.increment("admission.rejected.tooLarge");
+      throw new AdmissionException(
+          "DOCUMENT_TOO_LARGE",
+          "Document of " + documentBytes + " bytes exceeds the limit of " + maxInFlightBytes,
+          0);
+    }
+
+    synchronized (this) {
+      if (inFlightJobs >= maxInFlightJobs || inFlightBytes + documentBytes > maxInFlightBytes) {
+        metricsService.increment("admission.rejected.busy");
+        throw new AdmissionException(
+            "AGENT_BUSY",
+            "Agent is busy (" + inFlightJobs + " jobs, " + inFlightBytes + " bytes in flight)",
+            retryAfterSeconds);
+      }
+      inFlightJobs++;
+      inFlightBytes += documentBytes;
+    }
+    metricsService.increment("admission.accepted");
+    return new Permit(documentBytes);
+  }
+
+  public synchronized int getInFlightJobs() {
+    return inFlightJobs;
+  }
+
+  public synchronized long getInFlightBytes() {
+    return inFlightBytes;
+  }
+
+  private synchronized void release(long documentBytes) {
+    inFlightJobs--;
+    inFlightBytes -= documentBytes;
+  }
+
+  public class Permit implements AutoCloseable {
+    private final long documentBytes;
+    private boolean released;
+
+    private Permit(long documentBytes) {
+      this.documentBytes = documentBytes;
+    }
+
+    @Override
+    public void close() {
+      if (!released) {
+        released = true;
+        release(documentBytes);
+      }
+    }
+  }
+
+  public static class AdmissionException extends Exception {
+    private final String errorCode;
+    private final int retryAfterSeconds;
+
+    public AdmissionException(String errorCode, String message, int retryAfterSeconds) {
+      super(message);
+      this.errorCode = errorCode;
+      this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+
+    public int getRetryAfterSeconds() {
+      return retryAfterSeconds;
+    }
+  }
+}
@@ -0,0 +1,270 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTimings;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class ChunkedPrintService {
+
+  private static final Logger logger = LoggerFactory.getLogger(ChunkedPrintService.class);
+
+  @Value("${printer.chunking.enabled:false}")
+  private boolean enabledByDefault;
+
+  @Value("${printer.chunking.min-pages:50}")
+  private int minPages;
+
+  @Value("${printer.chunking.pages-per-chunk:20}")
+  private int pagesPerChunk;
+
+  @Value("${printer.chunking.prefetch-chunks:2}")
+  private int prefetchChunks;
+
+  private final PrintFailoverService failoverService;
+  private final MetricsService metricsService;
+  private final ExecutorService splitExecutor =
+      Executors.newCachedThreadPool(
+          r -> {
+            Thread thread = new Thread(r, "pdf-chunk-splitter");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public ChunkedPrintService(PrintFailoverService failoverService, MetricsService metricsService) {
+    this.failoverService = failoverService;
+    this.metricsService = metricsService;
+  }
+
+  // The request can switch chunking on or off; otherwise the configured default applies
+  public boolean isRequested(String chunked) {
+    return chunked != null && !chunked.isBlank() ? Boolean.parseBoolean(chunked) : enabledByDefault;
+  }
+
+  public PrintFailoverService.PrintOutcome print(String printerName, PrintDocument pdf)
+      throws Exception {
+    long start = System.currentTimeMillis();
+
+    long loadStart = System.nanoTime();
+    PDDocument document = Loader.loadPDF(new RandomAccessReadBuffer(pdf.asByteBuffer()));
+    PrintTimings.recordCurrent("pdfLoad", loadStart);
+    int pageCount = document.getNumberOfPages();
+    if (pageCount < minPages) {
+      document.close();
+      return failoverService.print(printerName, pdf);
+    }
+
+    // The splitter stays at most prefetchChunks ahead of the printer
+    BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<>(Math.max(1, prefetchChunks));
+    // Whoever claims the document closes it: the splitter once it is done, or this thread if the
+    // splitter never got to start
+    AtomicBoolean claimed = new AtomicBoolean();
+    CountDownLatch splitDone = new CountDownLatch(1);
+    Future<?> splitter;
+    try {
+      splitter =
+          splitExecutor.submit(
+              () -> {
+                if (claimed.compareAndSet(false, true)) {
+                  try {
+                    split(document, chunks);
+                  } finally {
+                    splitDone.countDown();
+                  }
+                }
+              });
+    } catch (RejectedExecutionException e) {
+      document.close();
+      throw e;
+    }
+
+    String targetPrinter = printerName;
+    int chunkCount = 0;
+    int attempts = 0;
+    Long timeToFirstChunkMs = null;
+
+    try {
+      while (true) {
+        Chunk chunk = chunks.take();
+        if (chunk.error != null) {
+          throw chunk.error;
+        }
+        if (chunk.data == null) {
+          break;
+        }
+
+        // Only the first chunk may fail over; the rest follow it, so that one document never ends
+        // up split across two printers
+        boolean failover = chunkCount == 0;
+        PrintFailoverService.PrintOutcome outcome;
+        try {
+          outcome =
+              failoverService.print(
+                  targetPrinter, PrintDocument.of(chunk.data), PrinterLanguage.PDF, failover);
+        } catch (PrintJobTracker.CanceledException
+            | PrintDispatcher.RetryLaterException
+            | PrintFailoverService.CircuitOpenException
+            | SubmitWatchdog.SubmitTimeoutException
+            | PrinterService.NotSubmittedException
+            | PrinterService.DocumentException e) {
+          // The caller maps these by type, so they are passed on as they are
+          logger.warn(
+              "Chunk {} (pages {}-{}) failed: {}",
+              chunkCount + 1,
+              chunk.firstPage,
+              chunk.lastPage,
+              e.getMessage());
+          throw e;
+        } catch (Exception e) {
+          throw new Exception(
+              String.format(
+                  "Chunk %d (pages %d-%d) failed: %s",
+                  chunkCount + 1, chunk.firstPage, chunk.lastPage, e.getMessage()),
+              e);
+        }
+
+        targetPrinter = outcome.getPrinterName();
+        attempts += outcome.getAttempts();
+        chunkCount++;
+
+        if (timeToFirstChunkMs == null) {
+          timeToFirstChunkMs = System.currentTimeMillis() - start;
+          metricsService.recordTime("print.chunked.timeToFirstChunk", timeToFirstChunkMs);
+        }
+      }
+    } finally {
+      splitter.cancel(true);
+      // The document reads from the caller's buffer, which may be reused as soon as this returns
+      if (claimed.compareAndSet(false, true)) {
+        document.close();
+      } else {
+        awaitUninterruptibly(splitDone);
+      }
+    }
+
+    metricsService.recordTime("print.chunked.total", System.currentTimeMillis() - start);
+    metricsService.increment("print.chunked.chunks", chunkCount);
+
+    return new ChunkedOutcome(
+        targetPrinter,
+        attempts,
+        !targetPrinter.equalsIgnoreCase(printerName),
+        pageCount,
+        chunkCount,
+        timeToFirstChunkMs);
+  }
+
+  private void split(PDDocument document, BlockingQueue<Chunk> chunks) {
+    try (document) {
+      int pageCount = document.getNumberOfPages();
+      for (int first = 0; first < pageCount; first += pagesPerChunk) {
+        if (Thread.currentThread().isInterrupted()) {
+          // The printing side gave up and is waiting for the document to be closed
+          return;
+        }
+        int last = Math.min(first + pagesPerChunk, pageCount);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PDDocument chunk = new PDDocument()) {
+          for (int page = first; page < last; page++) {
+            chunk.importPage(document.getPage(page));
+          }
+          chunk.save(out);
+        }
+        chunks.put(new Chunk(out.toByteArray(), first + 1, last, null));
+      }
+      chunks.put(new Chunk(null, 0, 0, null));
+    } catch (InterruptedException e) {
+      // The printing side gave up, nothing left to do
+      Thread.currentThread().interrupt();
+    } catch (Exception e) {
+      try {
+        chunks.put(new Chunk(null, 0, 0, e));
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static void awaitUninterruptibly(CountDownLatch latch) {
+    boolean interrupted = false;
+    while (true) {
+      try {
+        latch.await();
+        break;
+      } catch (InterruptedException e) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    splitExecutor.shutdownNow();
+  }
+
+  private static class Chunk {
+    final byte[] data;
+    final int firstPage;
+    final int lastPage;
+    final Exception error;
+
+    Chunk(byte[] data, int firstPage, int lastPage, Exception error) {
+      this.data = data;
+      this.firstPage = firstPage;
+      this.lastPage = lastPage;
+      this.error = error;
+    }
+  }
+
+  public static class ChunkedOutcome extends PrintFailoverService.PrintOutcome {
+    private final int pageCount;
+    private final int chunkCount;
+    private final Long timeToFirstChunkMs;
+
+    public ChunkedOutcome(
+        String printerName,
+        int attempts,
+        boolean failedOver,
+        int pageCount,
+        int chunkCount,
+        Long timeToFirstChunkMs) {
+      super(printerName, attempts, failedOver);
+      this.pageCount = pageCount;
+      this.chunkCount = chunkCount;
+      this.timeToFirstChunkMs = timeToFirstChunkMs;
+    }
+
+    public int getPageCount() {
+      return pageCount;
+    }
+
+    public int getChunkCount() {
+      return chunkCount;
+    }
+
+    public Long getTimeToFirstChunkMs() {
+      return timeToFirstChunkMs;
+    }
+  }
+}
@@ -2,158 +2,419 @@ package com.alpidiprinteragent.alpidiprinteragent.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import org.springframework.stereotype.Service;
 
 @Service
 public class ConfigService {
   private static final Path CONFIG_FILE = Paths.get("printer-config.json");
-  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ObjectMapper objectMapper;
+  private final Object writeLock = new Object();
+  private final Queue<PendingChange> pendingChanges = new ConcurrentLinkedQueue<>();
+  // The parsed file, replaced after every write and reset; the getters read it instead of the
+  // disk, so a print does not read and parse the file several times. Never modified in place.
+  private volatile ObjectNode snapshot;
+
+  public ConfigService(ObjectMapper objectMapper) {
+    this.objectMapper = objectMapper;
+  }
 
   public String getActivePrinter() {
+    return config().path("activePrinter").asText(null);
+  }
+
+  public String getProductionPartnerUserId() {
+    return config().path("productionPartnerUserId").asText(null);
+  }
+
+  public String getFallbackPrinter() {
+    return config().path("fallbackPrinter").asText(null);
+  }
+
+  public void setFallbackPrinter(String printerName) {
     try {
-      if (Files.exists(CONFIG_FILE)) {
-        String jsonContent = Files.readString(CONFIG_FILE);
-        JsonNode config = objectMapper.readTree(jsonContent);
-        return config.path("activePrinter").asText(null);
-      }
+      update(
+          config -> {
+            if (printerName == null || printerName.isBlank()) {
+              config.remove("fallbackPrinter");
+            } else {
+              config.put("fallbackPrinter", printerName);
+            }
+          });
+
     } catch (IOException e) {
       e.printStackTrace();
     }
-    return null;
   }
 
-  public String getProductionPartnerUserId() {
+  public void setActivePrinter(String printerName, String productionPartnerUserId) {
     try {
-      if (Files.exists(CONFIG_FILE)) {
-        String jsonContent = Files.readString(CONFIG_FILE);
-        JsonNode config = objectMapper.readTree(jsonContent);
-        return config.path("productionPartnerUserId").asText(null);
-      }
+      update(
+          config -> {
+            config.put("activePrinter", printerName);
+            config.put("productionPartnerUserId", productionPartnerUserId);
+          });
+
     } catch (IOException e) {
       e.printStackTrace();
     }
-    return null;
   }
 
-  public void setActivePrinter(String printerName, String productionPartnerUserId) {
+  // Additional configuration methods
+  public void setPrintSettings(String key, Object value) {
     try {
-      ObjectNode config = objectMapper.createObjectNode();
+      setPrintSettings(Map.of(key, value));
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
 
-      // Read current configuration (if any)
-      if (Files.exists(CONFIG_FILE)) {
-        try {
-          String existingContent = Files.readString(CONFIG_FILE);
-          config = (ObjectNode) objectMapper.readTree(existingContent);
-        } catch (IOException e) {
-          // Create a new config if the existing file is corrupt
-          config = objectMapper.createObjectNode();
-        }
-      }
+  // All keys are applied in one write, so readers see either none or all of them
+  public void setPrintSettings(Map<String, Object> settings) throws IOException {
+    update(
+        config -> {
+          ObjectNode printSettings = getOrCreateObject(config, "printSettings");
+          settings.forEach(
+              (key, value) -> {
+                if (value instanceof String) {
+                  printSettings.put(key, (String) value);
+                } else if (value instanceof Integer) {
+                  printSettings.put(key, (Integer) value);
+                } else if (value instanceof Boolean) {
+                  printSettings.put(key, (Boolean) value);
+                } else {
+                  printSettings.put(key, String.valueOf(value));
+                }
+              });
+        });
+  }
 
-      // Update active printer
-      config.put("activePrinter", printerName);
-      config.put("productionPartnerUserId", productionPartnerUserId);
-      config.put("lastUpdated", System.currentTimeMillis());
+  public String getPrintSetting(String key, String defaultValue) {
+    return config().path("printSettings").path(key).asText(defaultValue);
+  }
+
+  // Printer pools: named groups of identical printers that share the load
+  public Map<String, List<String>> getPrinterPools() {
+    Map<String, List<String>> pools = new LinkedHashMap<>();
+    config()
+        .path("printerPools")
+        .fields()
+        .forEachRemaining(entry -> pools.put(entry.getKey(), toStringList(entry.getValue())));
+    return pools;
+  }
+
+  public List<String> getPrinterPool(String poolName) {
+    return getPrinterPools().get(poolName);
+  }
 
-      // Write JSON file
-      String jsonString = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(config);
-      Files.writeString(
-          CONFIG_FILE, jsonString, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+  public void setPrinterPool(String poolName, List<String> printerNames) {
+    try {
+      update(
+          config -> {
+            ArrayNode members = getOrCreateObject(config, "printerPools").putArray(poolName);
+            printerNames.forEach(members::add);
+          });
 
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
-  // Additional configuration methods
-  public void setPrintSettings(String key, Object value) {
+  public boolean removePrinterPool(String poolName) {
     try {
-      ObjectNode config = getOrCreateConfig();
-
-      // Create or get a printSettings object
-      ObjectNode printSettings;
-      if (config.has("printSettings") && config.get("printSettings").isObject()) {
-        printSettings = (ObjectNode) config.get("printSettings");
-      } else {
-        printSettings = objectMapper.createObjectNode();
-        config.set("printSettings", printSettings);
-      }
+      AtomicBoolean removed = new AtomicBoolean();
+      update(
+          config -> {
+            if (config.path("printerPools").has(poolName)) {
+              ((ObjectNode) config.get("printerPools")).remove(poolName);
+              removed.set(true);
+            }
+          });
+      return removed.get();
 
-      // Add the value
-      if (value instanceof String) {
-        printSettings.put(key, (String) value);
-      } else if (value instanceof Integer) {
-        printSettings.put(key, (Integer) value);
-      } else if (value instanceof Boolean) {
-        printSettings.put(key, (Boolean) value);
-      } else {
-        printSettings.put(key, value.toString());
-      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return false;
+  }
 
-      config.put("lastUpdated", System.currentTimeMillis());
+  // Active printer per productionPartnerUserId when several partner users share this agent
+  public Map<String, String> getTenantPrinters() {
+    Map<String, String> tenantPrinters = new LinkedHashMap<>();
+    config()
+        .path("tenantPrinters")
+        .fields()
+        .forEachRemaining(entry -> tenantPrinters.put(entry.getKey(), entry.getValue().asText()));
+    return tenantPrinters;
+  }
 
-      // Save the file
-      saveConfig(config);
+  // Replaces all mappings in one write
+  public void setTenantPrinters(Map<String, String> tenantPrinters) {
+    try {
+      update(
+          config -> {
+            ObjectNode mappings = config.putObject("tenantPrinters");
+            tenantPrinters.forEach(mappings::put);
+          });
 
     } catch (IOException e) {
       e.printStackTrace();
     }
   }
 
-  public String getPrintSetting(String key, String defaultValue) {
+  // Printers that accept raw ZPL, EPL or ESC/POS jobs
+  public List<String> getRawPrinters() {
+    return toStringList(config().path("rawPrinters"));
+  }
+
+  public boolean isRawCapable(String printerName) {
+    return getRawPrinters().stream().anyMatch(name -> name.equalsIgnoreCase(printerName));
+  }
+
+  public void setRawCapable(String printerName, boolean rawCapable) {
     try {
-      if (Files.exists(CONFIG_FILE)) {
-        String jsonContent = Files.readString(CONFIG_FILE);
-        JsonNode config = objectMapper.readTree(jsonContent);
-        JsonNode printSettings = config.path("printSettings");
-        return printSettings.path(key).asText(defaultValue);
-      }
+      update(
+          config -> {
+            List<String> rawPrinters = toStringList(config.path("rawPrinters"));
+            rawPrinters.removeIf(name -> name.equalsIgnoreCase(printerName));
+            if (rawCapable) {
+              rawPrinters.add(printerName);
+            }
+
+            ArrayNode members = config.putArray("rawPrinters");
+            rawPrinters.forEach(members::add);
+          });
+
     } catch (IOException e) {
       e.printStackTrace();
     }
-    return defaultValue;
   }
 
-  public JsonNode getAllConfig() {
+  // Printers submitted to directly over IPP, by printer name
+  public Map<String, String> getIppPrinters() {
+    Map<String, String> ippPrinters = new LinkedHashMap<>();
+    config()
+        .path("ippPrinters")
+        .fields()
+        .forEachRemaining(entry -> ippPrinters.put(entry.getKey(), entry.getValue().asText()));
+    return ippPrinters;
+  }
+
+  public String getIppPrinterUri(String printerName) {
+    return getIppPrinters().entrySet().stream()
+        .filter(entry -> entry.getKey().equalsIgnoreCase(printerName))
+        .map(Map.Entry::getValue)
+        .findFirst()
+        .orElse(null);
+  }
+
+  // A null URI moves the printer back to the OS print service
+  public void setIppPrinter(String printerName, String printerUri) {
     try {
-      if (Files.exists(CONFIG_FILE)) {
-        String jsonContent = Files.readString(CONFIG_FILE);
-        return objectMapper.readTree(jsonContent);
-      }
+      update(
+          config -> {
+            ObjectNode mappings = getOrCreateObject(config, "ippPrinters");
+            List<String> names = new ArrayList<>();
+            mappings.fieldNames().forEachRemaining(names::add);
+            names.removeIf(name -> !name.equalsIgnoreCase(printerName));
+            mappings.remove(names);
+            if (printerUri != null) {
+              mappings.put(printerName, printerUri);
+            }
+          });
+
     } catch (IOException e) {
       e.printStackTrace();
     }
-    return objectMapper.createObjectNode();
+  }
+
+  // A copy, so callers cannot change the snapshot
+  public JsonNode getAllConfig() {
+    return config().deepCopy();
   }
 
   // Helper methods
-  private ObjectNode getOrCreateConfig() throws IOException {
+  private ObjectNode config() {
+    ObjectNode current = snapshot;
+    if (current == null) {
+      synchronized (writeLock) {
+        current = snapshot;
+        if (current == null) {
+          current = readConfig();
+          snapshot = current;
+        }
+      }
+    }
+    return current;
+  }
+
+  private ObjectNode readConfig() {
     if (Files.exists(CONFIG_FILE)) {
       try {
         String existingContent = Files.readString(CONFIG_FILE);
         return (ObjectNode) objectMapper.readTree(existingContent);
-      } catch (IOException e) {
+      } catch (IOException | ClassCastException e) {
         // If the file is corrupt, create a new one
       }
     }
     return objectMapper.createObjectNode();
   }
 
+  private ObjectNode getOrCreateObject(ObjectNode parent, String field) {
+    if (parent.has(field) && parent.get(field).isObject()) {
+      return (ObjectNode) parent.get(field);
+    }
+    ObjectNode child = objectMapper.createObjectNode();
+    parent.set(field, child);
+    return child;
+  }
+
+  private List<String> toStringList(JsonNode node) {
+    List<String> values = new ArrayList<>();
+    if (node.isArray()) {
+      node.forEach(item -> values.add(item.asText()));
+    }
+    return values;
+  }
+
+  // Concurrent updates are merged: whoever holds the write lock applies every queued change in one
+  // read-modify-write, so simultaneous callers share a single disk write and none is lost
+  private void update(Consumer<ObjectNode> change) throws IOException {
+    PendingChange pending = new PendingChange(change);
+    pendingChanges.add(pending);
+    synchronized (writeLock) {
+      if (!pending.done.isDone()) {
+        commitPending();
+      }
+    }
+    try {
+      pending.done.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private void commitPending() {
+    List<PendingChange> batch = new ArrayList<>();
+    for (PendingChange pending; (pending = pendingChanges.poll()) != null; ) {
+      batch.add(pending);
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<PendingChange> applied = new ArrayList<>();
+    try {
+      // Changes are applied to copies, so the snapshot itself is never modified
+      ObjectNode config = config();
+      // Each change is tried on a copy, so one that throws halfway fails alone and leaves nothing
+      // behind for the others to write
+      for (PendingChange pending : batch) {
+        ObjectNode changed = config.deepCopy();
+        try {
+          pending.change.accept(changed);
+        } catch (RuntimeException e) {
+          pending.done.completeExceptionally(e);
+          continue;
+        }
+        config = changed;
+        applied.add(pending);
+      }
+      if (applied.isEmpty()) {
+        return;
+      }
+      config.put("lastUpdated", System.currentTimeMillis());
+      saveConfig(config);
+      snapshot = config;
+      applied.forEach(pending -> pending.done.complete(null));
+    } catch (IOException | RuntimeException e) {
+      batch.forEach(pending -> pending.done.completeExceptionally(e));
+    }
+  }
+
+  // Written to a temp file, flushed to disk and renamed over the old file, so readers and a crash
+  // see either the old or the new configuration, never a truncated one
   private void saveConfig(ObjectNode config) throws IOException {
-    String jsonString = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(config);
-    Files.writeString(
-        CONFIG_FILE, jsonString, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+    byte[] json = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(config);
+    Path directory = CONFIG_FILE.toAbsolutePath().getParent();
+    Path temp = Files.createTempFile(directory, "printer-config", ".tmp");
+    try {
+      copyPermissions(CONFIG_FILE, temp);
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(json);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      try {
+        Files.move(
+            temp, CONFIG_FILE, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp, CONFIG_FILE, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+    syncDirectory(directory);
   }
 
-  // Reset configuration file
-  public void resetConfig() {
+  // Temp files are created readable by the owner only; the renamed file keeps the old one's mode,
+  // so an operator's chmod, e.g. for a group that reads the config, survives every save
+  private static void copyPermissions(Path from, Path to) throws IOException {
     try {
-      Files.deleteIfExists(CONFIG_FILE);
+      Files.setPosixFilePermissions(to, Files.getPosixFilePermissions(from));
+    } catch (NoSuchFileException e) {
+      // First save; nothing to keep
+    } catch (UnsupportedOperationException e) {
+      // Windows, where the temp file inherits the folder's ACL like the old file did
+    }
+  }
+
+  // Makes the rename itself durable; directories cannot be opened on Windows
+  private static void syncDirectory(Path directory) {
+    try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+      channel.force(true);
     } catch (IOException e) {
-      e.printStackTrace();
+      // Best effort
+    }
+  }
+
+  // Reset configuration file
+  public void resetConfig() {
+    synchronized (writeLock) {
+      try {
+        Files.deleteIfExists(CONFIG_FILE);
+        snapshot = objectMapper.createObjectNode();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  private static class PendingChange {
+    private final Consumer<ObjectNode> change;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    PendingChange(Consumer<ObjectNode> change) {
+      this.change = change;
     }
   }
 }
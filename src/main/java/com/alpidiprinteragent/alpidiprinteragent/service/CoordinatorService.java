@@ -0,0 +1,310 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+@Service
+public class CoordinatorService {
+
+  private static final Logger logger = LoggerFactory.getLogger(CoordinatorService.class);
+
+  private final boolean enabled;
+  private final Duration heartbeatTimeout;
+  private final Duration forwardTimeout;
+  private final long peerExpiryMs;
+  private final MetricsService metricsService;
+  private final ObjectMapper objectMapper;
+  private final HttpClient httpClient;
+
+  private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+  public CoordinatorService(
+      @Value("${coordinator.enabled:false}") boolean enabled,
+      @Value("${coordinator.peers:}") List<String> peerUrls,
+      @Value("${coordinator.heartbeat-timeout-ms:2000}") long heartbeatTimeoutMs,
+      @Value("${coordinator.forward-timeout-ms:120000}") long forwardTimeoutMs,
+      @Value("${coordinator.peer-expiry-ms:15000}") long peerExpiryMs,
+      MetricsService metricsService,
+      ObjectMapper objectMapper) {
+    this.enabled = enabled;
+    this.heartbeatTimeout = Duration.ofMillis(heartbeatTimeoutMs);
+    this.forwardTimeout = Duration.ofMillis(forwardTimeoutMs);
+    this.peerExpiryMs = peerExpiryMs;
+    this.metricsService = metricsService;
+    this.objectMapper = objectMapper;
+    this.httpClient = HttpClient.newBuilder().connectTimeout(heartbeatTimeout).build();
+
+    // Peers come only from the configuration: the coordinator sends them whole print jobs
+    for (String url : peerUrls) {
+      if (!url.isBlank()) {
+        try {
+          String baseUrl = normalize(url);
+          peers.computeIfAbsent(baseUrl, Peer::new);
+        } catch (CoordinatorException e) {
+          logger.warn("Ignoring peer '{}': {}", url, e.getMessage());
+        }
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public List<Peer> getPeers() {
+    List<Peer> result = new ArrayList<>(peers.values());
+    result.sort(Comparator.comparing(Peer::getUrl));
+    return result;
+  }
+
+  // Polls all peers at once, so one slow agent does not delay the others' state
+  @Scheduled(fixedDelayString = "${coordinator.heartbeat-interval-ms:5000}")
+  public void heartbeat() {
+    if (!enabled) {
+      return;
+    }
+    List<CompletableFuture<Void>> polls = new ArrayList<>();
+    for (Peer peer : peers.values()) {
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create(peer.url + "/agent/status"))
+              .timeout(heartbeatTimeout)
+              .GET()
+              .build();
+      polls.add(
+          httpClient
+              .sendAsync(request, HttpResponse.BodyHandlers.ofString())
+              .handle(
+                  (response, error) -> {
+                    if (error != null) {
+                      peer.markDown(error.getMessage());
+                    } else if (response.statusCode() != 200) {
+                      peer.markDown("HTTP " + response.statusCode());
+                    } else {
+                      updatePeer(peer, response.body());
+                    }
+                    return null;
+                  }));
+    }
+    CompletableFuture.allOf(polls.toArray(new CompletableFuture[0])).join();
+  }
+
+  // Sends the job to the least loaded live peer that has the printer, trying the next one only
+  // when the job was certainly not printed: the peer was unreachable or refused it as busy
+  public ForwardResult forward(String printerName, Map<String, String> job)
+      throws CoordinatorException {
+    // Loads are read once; other requests keep changing them while this one is sorted
+    Map<Peer, Integer> loads = new HashMap<>();
+    for (Peer peer : peers.values()) {
+      int load = peer.getPrinterLoad(printerName);
+      if (peer.isAlive(peerExpiryMs) && load >= 0) {
+        loads.put(peer, load);
+      }
+    }
+    if (loads.isEmpty()) {
+      throw new CoordinatorException(
+          "NO_PEER_AVAILABLE", "No live agent has printer available: " + printerName);
+    }
+    List<Peer> candidates = new ArrayList<>(loads.keySet());
+    candidates.sort(Comparator.comparing(loads::get));
+
+    byte[] body;
+    try {
+      body = objectMapper.writeValueAsBytes(job);
+    } catch (IOException e) {
+      throw new CoordinatorException("INVALID_JOB", e.getMessage());
+    }
+
+    String lastError = null;
+    int attempts = 0;
+    for (Peer peer : candidates) {
+      attempts++;
+      // Counted until the next heartbeat, so a burst of jobs spreads over the fleet
+      peer.forwarded.incrementAndGet();
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create(peer.url + "/print"))
+              .timeout(forwardTimeout)
+              .header("Content-Type", "application/json")
+              .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+              .build();
+      try {
+        HttpResponse<String> response =
+            httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() == 429 || response.statusCode() == 503) {
+          lastError = peer.url + " returned HTTP " + response.statusCode();
+          metricsService.increment("coordinator.failovers");
+          continue;
+        }
+        metricsService.increment("coordinator.forwarded");
+        return new ForwardResult(peer.url, attempts, response.statusCode(), response.body());
+      } catch (ConnectException | HttpConnectTimeoutException e) {
+        peer.markDown(e.getMessage());
+        lastError = peer.url + " unreachable";
+        metricsService.increment("coordinator.failovers");
+      } catch (IOException e) {
+        // The peer may have printed already; sending it elsewhere could print it twice
+        throw new CoordinatorException(
+            "PEER_TIMEOUT", "No answer from " + peer.url + ": " + e.getMessage());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new CoordinatorException("PEER_TIMEOUT", "Interrupted while forwarding job");
+      }
+    }
+    throw new CoordinatorException(
+        "NO_PEER_AVAILABLE", "No agent accepted the job for " + printerName + ": " + lastError);
+  }
+
+  private void updatePeer(Peer peer, String json) {
+    try {
+      Map<String, Integer> printers = new ConcurrentHashMap<>();
+      for (JsonNode printer : objectMapper.readTree(json).path("printers")) {
+        if (printer.path("available").asBoolean() && !printer.path("circuitOpen").asBoolean()) {
+          printers.put(
+              printer.path("printerName").asText().toLowerCase(), printer.path("load").asInt());
+        }
+      }
+      peer.markUp(printers);
+    } catch (IOException e) {
+      peer.markDown("Invalid status response");
+    }
+  }
+
+  private static String normalize(String url) throws CoordinatorException {
+    try {
+      URI uri = URI.create(url.trim());
+      if (uri.getHost() == null || !uri.getScheme().startsWith("http")) {
+        throw new IllegalArgumentException();
+      }
+      String baseUrl = uri.toString();
+      return baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    } catch (RuntimeException e) {
+      throw new CoordinatorException("INVALID_PEER_URL", "Invalid agent URL: " + url);
+    }
+  }
+
+  public static class Peer {
+    private final String url;
+    private final AtomicInteger forwarded = new AtomicInteger();
+    private volatile Map<String, Integer> printers = Map.of();
+    private volatile long lastSeen;
+    private volatile boolean up;
+    private volatile String lastError;
+
+    Peer(String url) {
+      this.url = url;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    public boolean isUp() {
+      return up;
+    }
+
+    public long getLastSeen() {
+      return lastSeen;
+    }
+
+    public String getLastError() {
+      return lastError;
+    }
+
+    public Map<String, Integer> getPrinters() {
+      return printers;
+    }
+
+    public int getForwardedSinceHeartbeat() {
+      return forwarded.get();
+    }
+
+    boolean isAlive(long expiryMs) {
+      return up && System.currentTimeMillis() - lastSeen <= expiryMs;
+    }
+
+    // -1 if the peer has no such printer or it is not accepting jobs
+    int getPrinterLoad(String printerName) {
+      Integer load = printers.get(printerName.toLowerCase());
+      return load != null ? load + forwarded.get() : -1;
+    }
+
+    void markUp(Map<String, Integer> printers) {
+      this.printers = printers;
+      this.lastSeen = System.currentTimeMillis();
+      this.up = true;
+      this.lastError = null;
+      forwarded.set(0);
+    }
+
+    void markDown(String error) {
+      if (up) {
+        logger.warn("Agent '{}' is down: {}", url, error);
+      }
+      this.up = false;
+      this.lastError = error;
+    }
+  }
+
+  public static class ForwardResult {
+    private final String peerUrl;
+    private final int attempts;
+    private final int statusCode;
+    private final String body;
+
+    public ForwardResult(String peerUrl, int attempts, int statusCode, String body) {
+      this.peerUrl = peerUrl;
+      this.attempts = attempts;
+      this.statusCode = statusCode;
+      this.body = body;
+    }
+
+    public String getPeerUrl() {
+      return peerUrl;
+    }
+
+    public int getAttempts() {
+      return attempts;
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    public String getBody() {
+      return body;
+    }
+  }
+
+  public static class CoordinatorException extends Exception {
+    private final String errorCode;
+
+    public CoordinatorException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+}
@@ -0,0 +1,180 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.ByteBufferInputStream;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class DocumentBufferPool {
+
+  // Size classes grow by 4x: 64 KB, 256 KB, 1 MB, 4 MB, 16 MB
+  private static final int SMALLEST_CLASS = 64 * 1024;
+  private static final int CLASS_COUNT = 5;
+
+  // Base64 is decoded in slices of this many characters (a multiple of 4)
+  private static final int DECODE_SLICE_CHARS = 64 * 1024;
+
+  private static final ThreadLocal<byte[]> DECODE_INPUT =
+      ThreadLocal.withInitial(() -> new byte[DECODE_SLICE_CHARS]);
+  private static final ThreadLocal<byte[]> DECODE_OUTPUT =
+      ThreadLocal.withInitial(() -> new byte[DECODE_SLICE_CHARS / 4 * 3]);
+
+  @Value("${document-buffers.max-pooled-bytes:33554432}")
+  private long maxPooledBytes;
+
+  private final MetricsService metricsService;
+
+  @SuppressWarnings("unchecked")
+  private final ConcurrentLinkedDeque<ByteBuffer>[] idle = new ConcurrentLinkedDeque[CLASS_COUNT];
+
+  private final AtomicLong pooledBytes = new AtomicLong();
+  private final AtomicInteger inUse = new AtomicInteger();
+
+  public DocumentBufferPool(MetricsService metricsService) {
+    this.metricsService = metricsService;
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      idle[i] = new ConcurrentLinkedDeque<>();
+    }
+    metricsService.registerGauge("documentBuffers.pooledBytes", pooledBytes::get);
+    metricsService.registerGauge("documentBuffers.inUse", inUse::get);
+    metricsService.registerGauge("documentBuffers.idleByClass", this::getIdleByClass);
+  }
+
+  // Decodes straight into a pooled direct buffer without materialising the whole byte[]
+  public PooledDocument decodeBase64(String base64) {
+    int length = base64.length();
+    PooledDocument document = acquire((length + 3) / 4 * 3);
+    try {
+      Base64.Decoder decoder = Base64.getDecoder();
+      byte[] input = DECODE_INPUT.get();
+      byte[] output = DECODE_OUTPUT.get();
+      ByteBuffer target = document.buffer;
+
+      for (int start = 0; start < length; start += DECODE_SLICE_CHARS) {
+        int end = Math.min(length, start + DECODE_SLICE_CHARS);
+        boolean last = end == length;
+        if (!last && base64.charAt(end - 1) == '=') {
+          throw new IllegalArgumentException("Input byte array has incorrect ending byte");
+        }
+
+        // Only the final slice can be shorter, so it gets its own exact-size array
+        byte[] slice = end - start == input.length ? input : new byte[end - start];
+        for (int i = start; i < end; i++) {
+          char c = base64.charAt(i);
+          if (c > 0x7F) {
+            throw new IllegalArgumentException(
+                "Illegal base64 character " + Integer.toHexString(c));
+          }
+          slice[i - start] = (byte) c;
+        }
+        target.put(output, 0, decoder.decode(slice, output));
+      }
+
+      target.flip();
+      return document;
+    } catch (RuntimeException e) {
+      document.close();
+      throw e;
+    }
+  }
+
+  public PooledDocument acquire(int size) {
+    int sizeClass = sizeClassFor(size);
+    if (sizeClass < 0) {
+      // Too big to keep around; a one-off heap buffer is cheaper than pinning direct memory
+      metricsService.increment("documentBuffers.oversize");
+      inUse.incrementAndGet();
+      return new PooledDocument(ByteBuffer.allocate(size), -1);
+    }
+
+    ByteBuffer buffer = idle[sizeClass].pollFirst();
+    if (buffer != null) {
+      pooledBytes.addAndGet(-buffer.capacity());
+      metricsService.increment("documentBuffers.hits");
+    } else {
+      buffer = ByteBuffer.allocateDirect(SMALLEST_CLASS << (2 * sizeClass));
+      metricsService.increment("documentBuffers.misses");
+    }
+    buffer.clear().limit(size);
+    inUse.incrementAndGet();
+    return new PooledDocument(buffer, sizeClass);
+  }
+
+  private void release(ByteBuffer buffer, int sizeClass) {
+    inUse.decrementAndGet();
+    if (sizeClass < 0) {
+      return;
+    }
+    if (pooledBytes.addAndGet(buffer.capacity()) > maxPooledBytes) {
+      // Pool is full, let the GC reclaim this one
+      pooledBytes.addAndGet(-buffer.capacity());
+      metricsService.increment("documentBuffers.discarded");
+      return;
+    }
+    idle[sizeClass].offerFirst(buffer);
+  }
+
+  private int sizeClassFor(int size) {
+    int classSize = SMALLEST_CLASS;
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      if (size <= classSize) {
+        return i;
+      }
+      classSize <<= 2;
+    }
+    return -1;
+  }
+
+  private Map<String, Integer> getIdleByClass() {
+    Map<String, Integer> result = new LinkedHashMap<>();
+    for (int i = 0; i < CLASS_COUNT; i++) {
+      result.put((SMALLEST_CLASS << (2 * i)) / 1024 + "KB", idle[i].size());
+    }
+    return result;
+  }
+
+  public class PooledDocument implements PrintDocument {
+    private final ByteBuffer buffer;
+    private final int sizeClass;
+    private boolean released;
+
+    private PooledDocument(ByteBuffer buffer, int sizeClass) {
+      this.buffer = buffer;
+      this.sizeClass = sizeClass;
+    }
+
+    @Override
+    public long size() {
+      return buffer.limit();
+    }
+
+    @Override
+    public InputStream openStream() {
+      return new ByteBufferInputStream(asByteBuffer());
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() {
+      ByteBuffer view = buffer.asReadOnlyBuffer();
+      view.position(0);
+      return view;
+    }
+
+    @Override
+    public synchronized void close() {
+      if (!released) {
+        released = true;
+        release(buffer, sizeClass);
+      }
+    }
+  }
+}
@@ -0,0 +1,708 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import jakarta.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Keeps printed documents on disk under their SHA-256 hash, so a reprint needs no upload. The
+// least recently printed documents are removed first once the store is full or they get too old.
+@Service
+public class DocumentStore {
+
+  private static final Logger logger = LoggerFactory.getLogger(DocumentStore.class);
+  private static final Pattern HASH = Pattern.compile("[0-9a-f]{64}");
+  // Each waiting copy holds its document's buffer, so past this many documents go unstored
+  private static final int MAX_PENDING_WRITES = 8;
+  // A streamed copy is handed to the writer in chunks; one that falls further behind than this
+  // is dropped rather than held in memory
+  private static final int COPY_CHUNK_BYTES = 64 * 1024;
+  private static final int MAX_PENDING_CHUNKS = 16;
+
+  private final boolean enabled;
+  private final Path directory;
+  private final long maxBytes;
+  private final long maxAgeMs;
+  private final MetricsService metricsService;
+  private final Executor writer;
+  private final AtomicInteger pendingWrites = new AtomicInteger();
+  // Last access time by hash, least recently printed first. Guarded by this, like storedBytes.
+  private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+  private long storedBytes;
+
+  @Autowired
+  public DocumentStore(
+      @Value("${printer.document-store.enabled:false}") boolean enabled,
+      @Value("${printer.document-store.directory:printer-documents}") String directory,
+      @Value("${printer.document-store.max-bytes:536870912}") long maxBytes,
+      @Value("${printer.document-store.max-age-hours:168}") long maxAgeHours,
+      MetricsService metricsService) {
+    this(
+        enabled,
+        directory,
+        maxBytes,
+        maxAgeHours,
+        metricsService,
+        Executors.newSingleThreadExecutor(
+            task -> {
+              Thread thread = new Thread(task, "document-store-writer");
+              thread.setDaemon(true);
+              return thread;
+            }));
+  }
+
+  DocumentStore(
+      boolean enabled,
+      String directory,
+      long maxBytes,
+      long maxAgeHours,
+      MetricsService metricsService,
+      Executor writer) {
+    this.directory = Paths.get(directory);
+    this.maxBytes = maxBytes;
+    this.maxAgeMs = TimeUnit.HOURS.toMillis(maxAgeHours);
+    this.metricsService = metricsService;
+    this.writer = writer;
+    this.enabled = enabled && loadIndex();
+    metricsService.registerGauge("documentStore.documents", this::getDocumentCount);
+    metricsService.registerGauge("documentStore.bytes", this::getStoredBytes);
+  }
+
+  // Wraps a document about to be printed so its hash is computed, and its bytes written to the
+  // store, while the printer reads it
+  public Recording record(PrintDocument document) {
+    return new Recording(document);
+  }
+
+  public PrintDocument open(String hash) throws StoreException {
+    if (hash == null || !HASH.matcher(hash).matches()) {
+      throw new StoreException(
+          "INVALID_DOCUMENT_HASH", "Document hash must be 64 lowercase hex characters");
+    }
+    if (!enabled) {
+      throw new StoreException("DOCUMENT_STORE_DISABLED", "The document store is disabled");
+    }
+    long now = System.currentTimeMillis();
+    List<Path> evicted;
+    Entry entry;
+    synchronized (this) {
+      evicted = evict(now);
+      entry = index.get(hash);
+      if (entry != null) {
+        index.put(hash, new Entry(entry.size(), now));
+      }
+    }
+    evicted.forEach(DocumentStore::deleteQuietly);
+    if (entry == null) {
+      throw new StoreException("DOCUMENT_NOT_FOUND", "Document is not stored: " + hash);
+    }
+
+    Path file = directory.resolve(hash);
+    try {
+      // The modification time records the last use, so the order survives a restart
+      Files.setLastModifiedTime(file, FileTime.fromMillis(now));
+      FileDocumentService.FileDocument document =
+          new FileDocumentService.FileDocument(file, Files.size(file));
+      metricsService.increment("documentStore.reprints");
+      return document;
+    } catch (IOException e) {
+      forget(hash);
+      throw new StoreException("DOCUMENT_NOT_FOUND", "Document is not stored: " + hash);
+    }
+  }
+
+  // Copies already queued are still written
+  @PreDestroy
+  public void shutdown() {
+    if (writer instanceof ExecutorService pool) {
+      pool.shutdown();
+    }
+  }
+
+  // Picks up documents stored before a restart; a store that cannot be read is switched off
+  private boolean loadIndex() {
+    if (!Files.isDirectory(directory)) {
+      try {
+        Files.createDirectories(directory);
+      } catch (IOException e) {
+        logger.warn("Document store disabled, cannot create {}: {}", directory, e.getMessage());
+        return false;
+      }
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      List<Path> stored =
+          files
+              .filter(
+                  file -> {
+                    String name = file.getFileName().toString();
+                    if (name.endsWith(".tmp")) {
+                      deleteQuietly(file);
+                      return false;
+                    }
+                    return HASH.matcher(name).matches() && Files.isRegularFile(file);
+                  })
+              .sorted(Comparator.comparingLong(DocumentStore::lastModified))
+              .toList();
+      Map<String, Entry> entries = new LinkedHashMap<>();
+      for (Path file : stored) {
+        entries.put(file.getFileName().toString(), new Entry(Files.size(file), lastModified(file)));
+      }
+      List<Path> evicted;
+      synchronized (this) {
+        entries.forEach(
+            (hash, entry) -> {
+              index.put(hash, entry);
+              storedBytes += entry.size();
+            });
+        evicted = evict(System.currentTimeMillis());
+      }
+      evicted.forEach(DocumentStore::deleteQuietly);
+      return true;
+    } catch (IOException e) {
+      logger.warn("Document store disabled, cannot read {}: {}", directory, e.getMessage());
+      return false;
+    }
+  }
+
+  // Only the index is touched under the lock; reprints and other jobs do not wait for the disk
+  private void keep(String hash, Path recorded) {
+    long now = System.currentTimeMillis();
+    boolean known;
+    synchronized (this) {
+      Entry entry = index.get(hash);
+      known = entry != null;
+      if (known) {
+        index.put(hash, new Entry(entry.size(), now));
+      }
+    }
+    if (known) {
+      deleteQuietly(recorded);
+      return;
+    }
+
+    long size;
+    try {
+      size = Files.size(recorded);
+      // The same document kept twice at once moves the same bytes to the same name
+      move(recorded, directory.resolve(hash));
+    } catch (IOException e) {
+      logger.warn("Could not store document {}: {}", hash, e.getMessage());
+      deleteQuietly(recorded);
+      return;
+    }
+    List<Path> evicted;
+    synchronized (this) {
+      Entry previous = index.put(hash, new Entry(size, now));
+      if (previous != null) {
+        storedBytes -= previous.size();
+      }
+      storedBytes += size;
+      evicted = evict(now);
+    }
+    evicted.forEach(DocumentStore::deleteQuietly);
+  }
+
+  // Holding the lock; returns the files to delete once it is released. A document stored again
+  // before its old file is deleted is lost with it, and open() then forgets it.
+  private List<Path> evict(long now) {
+    List<Path> evicted = new ArrayList<>();
+    Iterator<Map.Entry<String, Entry>> eldest = index.entrySet().iterator();
+    while (eldest.hasNext()) {
+      Map.Entry<String, Entry> next = eldest.next();
+      if (storedBytes <= maxBytes && now - next.getValue().lastAccess() <= maxAgeMs) {
+        break;
+      }
+      eldest.remove();
+      storedBytes -= next.getValue().size();
+      evicted.add(directory.resolve(next.getKey()));
+      metricsService.increment("documentStore.evictions");
+    }
+    return evicted;
+  }
+
+  private synchronized void forget(String hash) {
+    Entry entry = index.remove(hash);
+    if (entry != null) {
+      storedBytes -= entry.size();
+    }
+  }
+
+  private static void move(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static long lastModified(Path file) {
+    try {
+      return Files.getLastModifiedTime(file).toMillis();
+    } catch (IOException e) {
+      return 0;
+    }
+  }
+
+  private static void deleteQuietly(Path file) {
+    try {
+      Files.deleteIfExists(file);
+    } catch (IOException e) {
+      // A file that is being printed cannot be deleted on Windows; it is picked up again on the
+      // next start
+      logger.debug("Could not delete {}: {}", file, e.getMessage());
+    }
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private synchronized int getDocumentCount() {
+    return index.size();
+  }
+
+  private synchronized long getStoredBytes() {
+    return storedBytes;
+  }
+
+  private record Entry(long size, long lastAccess) {}
+
+  public class Recording implements PrintDocument {
+    private final PrintDocument document;
+    // Set once a stream has been read to the end. Guarded by this, like the fields below.
+    private String hash;
+    private Path recorded;
+    private boolean stored;
+    private boolean writing;
+    private boolean closed;
+
+    private Recording(PrintDocument document) {
+      this.document = document;
+    }
+
+    @Override
+    public long size() {
+      return document.size();
+    }
+
+    // Each attempt records from scratch; only a stream read to the end counts
+    @Override
+    public InputStream openStream() throws IOException {
+      InputStream in = document.openStream();
+      synchronized (this) {
+        if (hash != null) {
+          return in;
+        }
+      }
+      return new RecordingInputStream(in);
+    }
+
+    @Override
+    public ByteBuffer asByteBuffer() throws IOException {
+      return document.asByteBuffer();
+    }
+
+    // Hashes the document if printing did not read it as a stream, and keeps it in the store.
+    // Returns null if the document could not be read again; the job itself has already printed.
+    // A copy taken while streaming is kept here once written, or by the writer thread when it is.
+    public String store() {
+      String known;
+      Path file;
+      synchronized (this) {
+        stored = true;
+        known = hash;
+        file = recorded;
+        recorded = null;
+      }
+      if (known == null) {
+        ByteBuffer buffer;
+        try {
+          buffer = document.asByteBuffer();
+        } catch (IOException e) {
+          logger.warn("Could not hash printed document: {}", e.getMessage());
+          return null;
+        }
+        MessageDigest digest = sha256();
+        digest.update(buffer.duplicate());
+        known = HexFormat.of().formatHex(digest.digest());
+        synchronized (this) {
+          hash = known;
+        }
+        if (enabled) {
+          writeLater(known, buffer);
+        }
+      }
+      if (file != null) {
+        keep(known, file);
+      }
+      return known;
+    }
+
+    // A document whose copy is still being written is closed by the writer once it is done
+    @Override
+    public void close() {
+      boolean release;
+      synchronized (this) {
+        if (recorded != null) {
+          deleteQuietly(recorded);
+          recorded = null;
+        }
+        closed = true;
+        release = !writing;
+      }
+      if (release) {
+        document.close();
+      }
+    }
+
+    private void writeLater(String hash, ByteBuffer buffer) {
+      if (pendingWrites.incrementAndGet() > MAX_PENDING_WRITES) {
+        pendingWrites.decrementAndGet();
+        metricsService.increment("documentStore.skipped");
+        return;
+      }
+      synchronized (this) {
+        writing = true;
+      }
+      try {
+        writer.execute(
+            () -> {
+              try {
+                Path file = writeCopy(buffer);
+                if (file != null) {
+                  keep(hash, file);
+                }
+              } finally {
+                written();
+              }
+            });
+      } catch (RejectedExecutionException e) {
+        // Shutting down
+        written();
+      }
+    }
+
+    private void written() {
+      pendingWrites.decrementAndGet();
+      boolean release;
+      synchronized (this) {
+        writing = false;
+        release = closed;
+      }
+      if (release) {
+        document.close();
+      }
+    }
+
+    // Returns null if the copy could not be written
+    private Path writeCopy(ByteBuffer buffer) {
+      Path file = null;
+      try {
+        file = Files.createTempFile(directory, "incoming-", ".tmp");
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+          while (buffer.hasRemaining()) {
+            channel.write(buffer);
+          }
+        }
+        return file;
+      } catch (IOException e) {
+        logger.debug("Not storing document, write failed: {}", e.getMessage());
+        if (file != null) {
+          deleteQuietly(file);
+        }
+        return null;
+      }
+    }
+
+    // Only the first stream read to the end is recorded; the copies of later ones are deleted
+    private synchronized boolean recorded(String streamHash) {
+      if (hash != null) {
+        return false;
+      }
+      hash = streamHash;
+      return true;
+    }
+
+    // Called by the writer thread once the streamed copy is complete
+    private void copied(Path file) {
+      String known;
+      boolean keep;
+      synchronized (this) {
+        known = hash;
+        keep = stored;
+        if (!keep && !closed) {
+          recorded = file;
+          return;
+        }
+      }
+      if (keep) {
+        keep(known, file);
+      } else {
+        deleteQuietly(file);
+      }
+    }
+
+    // Hashes the bytes as they pass through to the printer and hands a copy of them to the
+    // writer thread in chunks, so the driver's reads do not wait for the disk
+    private class RecordingInputStream extends FilterInputStream {
+      private final MessageDigest digest = sha256();
+      private final StreamCopy copy = enabled ? new StreamCopy() : null;
+      private byte[] chunk;
+      private int chunkLength;
+      private boolean finished;
+
+      RecordingInputStream(InputStream in) {
+        super(in);
+      }
+
+      @Override
+      public int read() throws IOException {
+        int b = super.read();
+        if (b < 0) {
+          finish();
+        } else {
+          digest.update((byte) b);
+          if (copying()) {
+            chunk[chunkLength++] = (byte) b;
+            handOverIfFull();
+          }
+        }
+        return b;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        int n = super.read(b, off, len);
+        if (n < 0) {
+          finish();
+        } else {
+          digest.update(b, off, n);
+          for (int copied = 0; copied < n && copying(); ) {
+            int length = Math.min(n - copied, chunk.length - chunkLength);
+            System.arraycopy(b, off + copied, chunk, chunkLength, length);
+            chunkLength += length;
+            copied += length;
+            handOverIfFull();
+          }
+        }
+        return n;
+      }
+
+      // Skipped bytes must still be hashed
+      @Override
+      public long skip(long n) throws IOException {
+        byte[] skipped = new byte[(int) Math.min(n, 8192)];
+        int read = read(skipped, 0, skipped.length);
+        return Math.max(read, 0);
+      }
+
+      @Override
+      public boolean markSupported() {
+        return false;
+      }
+
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          if (!finished && copy != null) {
+            copy.discard();
+          }
+        }
+      }
+
+      // Makes sure there is room in the current chunk
+      private boolean copying() {
+        if (copy == null || copy.abandoned) {
+          return false;
+        }
+        if (chunk == null) {
+          chunk = new byte[COPY_CHUNK_BYTES];
+          chunkLength = 0;
+        }
+        return true;
+      }
+
+      private void handOverIfFull() {
+        if (chunkLength == chunk.length) {
+          copy.write(chunk, chunkLength);
+          chunk = null;
+        }
+      }
+
+      private void finish() {
+        if (finished) {
+          return;
+        }
+        finished = true;
+        boolean first = recorded(HexFormat.of().formatHex(digest.digest()));
+        if (copy != null) {
+          if (chunk != null && chunkLength > 0) {
+            copy.write(chunk, chunkLength);
+          }
+          chunk = null;
+          copy.finish(first);
+        }
+      }
+    }
+
+    // One streamed copy. The reading thread hands over filled chunks; only the writer thread
+    // creates, writes and closes the file, in the order the chunks were read.
+    private class StreamCopy {
+      private final AtomicInteger pendingChunks = new AtomicInteger();
+      private volatile boolean abandoned;
+      // Writer thread only
+      private Path file;
+      private OutputStream out;
+      private boolean failed;
+
+      void write(byte[] chunk, int length) {
+        if (abandoned) {
+          return;
+        }
+        // A full disk or a slow one must not fail the print or fill the heap
+        if (pendingChunks.incrementAndGet() > MAX_PENDING_CHUNKS) {
+          metricsService.increment("documentStore.skipped");
+          discard();
+          return;
+        }
+        submit(
+            () -> {
+              try {
+                append(chunk, length);
+              } finally {
+                pendingChunks.decrementAndGet();
+              }
+            });
+      }
+
+      void finish(boolean first) {
+        if (abandoned) {
+          return;
+        }
+        abandoned = true;
+        submit(
+            () -> {
+              // An empty document has had no chunk to create its file
+              append(new byte[0], 0);
+              Path complete = closeFile();
+              if (complete != null && first) {
+                copied(complete);
+              } else if (complete != null) {
+                deleteQuietly(complete);
+              }
+            });
+      }
+
+      void discard() {
+        if (abandoned) {
+          return;
+        }
+        abandoned = true;
+        submit(
+            () -> {
+              Path partial = closeFile();
+              if (partial != null) {
+                deleteQuietly(partial);
+              }
+            });
+      }
+
+      // A copy the writer no longer accepts is left as a .tmp file and removed on the next start
+      private void submit(Runnable task) {
+        try {
+          writer.execute(task);
+        } catch (RejectedExecutionException e) {
+          // Shutting down
+          abandoned = true;
+        }
+      }
+
+      private void append(byte[] chunk, int length) {
+        if (failed) {
+          return;
+        }
+        try {
+          if (out == null) {
+            file = Files.createTempFile(directory, "incoming-", ".tmp");
+            out = Files.newOutputStream(file);
+          }
+          out.write(chunk, 0, length);
+        } catch (IOException e) {
+          logger.debug("Not storing document, write failed: {}", e.getMessage());
+          failed = true;
+        }
+      }
+
+      // Returns the file if it was written in full
+      private Path closeFile() {
+        if (out != null) {
+          try {
+            out.close();
+          } catch (IOException e) {
+            failed = true;
+          }
+          out = null;
+        }
+        Path closed = file;
+        file = null;
+        if (failed && closed != null) {
+          deleteQuietly(closed);
+          return null;
+        }
+        return closed;
+      }
+    }
+  }
+
+  public static class StoreException extends Exception {
+    private final String errorCode;
+
+    public StoreException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+}
@@ -0,0 +1,151 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class FileDocumentService {
+
+  private final List<Path> allowedDirectories = new ArrayList<>();
+
+  public FileDocumentService(
+      @Value("${print.file.allowed-directories:}") List<String> allowedDirectories) {
+    for (String directory : allowedDirectories) {
+      if (directory.isBlank()) {
+        continue;
+      }
+      try {
+        this.allowedDirectories.add(Paths.get(directory.trim()).toRealPath());
+      } catch (IOException e) {
+        System.err.println("[FILE PRINT] Ignoring missing allowed directory: " + directory);
+      }
+    }
+  }
+
+  public boolean isEnabled() {
+    return !allowedDirectories.isEmpty();
+  }
+
+  public FileDocument open(String filePath) throws FileAccessException {
+    if (!isEnabled()) {
+      throw new FileAccessException(
+          "FILE_PRINT_DISABLED", "Printing local files is disabled on this agent");
+    }
+
+    // Resolve symlinks and '..' before checking, so nothing can escape the allowed folders
+    Path path;
+    try {
+      path = Paths.get(filePath).toRealPath();
+    } catch (Exception e) {
+      throw new FileAccessException("FILE_NOT_FOUND", "File not found: " + filePath);
+    }
+
+    if (allowedDirectories.stream().noneMatch(path::startsWith)) {
+      throw new FileAccessException(
+          "FILE_NOT_ALLOWED", "File is outside the allowed directories: " + filePath);
+    }
+    if (!Files.isRegularFile(path)) {
+      throw new FileAccessException("FILE_NOT_FOUND", "Not a regular file: " + filePath);
+    }
+
+    try {
+      long size = Files.size(path);
+      if (size == 0) {
+        throw new FileAccessException("FILE_EMPTY", "File is empty: " + filePath);
+      }
+      if (size > Integer.MAX_VALUE) {
+        throw new FileAccessException("FILE_TOO_LARGE", "File is larger than 2 GB: " + filePath);
+      }
+      return new FileDocument(path, size);
+    } catch (IOException e) {
+      throw new FileAccessException("FILE_READ_ERROR", "Cannot read file: " + e.getMessage());
+    }
+  }
+
+  // Streams the file through channels that close() releases. A mapping is only unmapped by the
+  // garbage collector and keeps the file locked on Windows until then, so the file is only mapped
+  // when a PDF has to be processed with random access.
+  public static class FileDocument implements PrintDocument {
+    private final Path path;
+    private final long size;
+    // Guarded by this
+    private final List<InputStream> streams = new ArrayList<>();
+    private MappedByteBuffer mapping;
+    private boolean closed;
+
+    FileDocument(Path path, long size) {
+      this.path = path;
+      this.size = size;
+    }
+
+    @Override
+    public long size() {
+      return size;
+    }
+
+    // Every stream has its own channel, so an abandoned attempt cannot move the position of the
+    // next one
+    @Override
+    public synchronized InputStream openStream() throws IOException {
+      if (closed) {
+        throw new IOException("Document is closed: " + path);
+      }
+      InputStream stream = Channels.newInputStream(FileChannel.open(path, StandardOpenOption.READ));
+      streams.add(stream);
+      return stream;
+    }
+
+    @Override
+    public synchronized ByteBuffer asByteBuffer() throws IOException {
+      if (mapping == null) {
+        if (closed) {
+          throw new IOException("Document is closed: " + path);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+          // The mapping stays valid after the channel is closed
+          mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+      }
+      return mapping.asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void close() {
+      closed = true;
+      for (InputStream stream : streams) {
+        try {
+          stream.close();
+        } catch (IOException e) {
+          // Nothing left to release
+        }
+      }
+      streams.clear();
+    }
+  }
+
+  public static class FileAccessException extends Exception {
+    private final String errorCode;
+
+    public FileAccessException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+}
@@ -0,0 +1,290 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Minimal IPP/1.1 client (RFC 8010/8011) for CUPS and network printers
+@Service
+public class IppClient {
+
+  private static final int PRINT_JOB = 0x0002;
+  private static final int CANCEL_JOB = 0x0008;
+  private static final int GET_JOB_ATTRIBUTES = 0x0009;
+  private static final int GET_PRINTER_ATTRIBUTES = 0x000B;
+
+  private static final int OPERATION_ATTRIBUTES = 0x01;
+  private static final int END_OF_ATTRIBUTES = 0x03;
+
+  private static final int INTEGER = 0x21;
+  private static final int BOOLEAN = 0x22;
+  private static final int ENUM = 0x23;
+  private static final int NAME = 0x42;
+  private static final int KEYWORD = 0x44;
+  private static final int URI_TAG = 0x45;
+  private static final int CHARSET = 0x47;
+  private static final int NATURAL_LANGUAGE = 0x48;
+  private static final int MIME_MEDIA_TYPE = 0x49;
+
+  private final AtomicInteger requestId = new AtomicInteger();
+  private final Duration requestTimeout;
+
+  // HTTP/1.1 keeps connections to CUPS open between jobs; CUPS does not speak HTTP/2
+  private final HttpClient httpClient;
+
+  public IppClient(
+      @Value("${ipp.connect-timeout-ms:5000}") long connectTimeoutMs,
+      @Value("${ipp.request-timeout-ms:120000}") long requestTimeoutMs) {
+    this.requestTimeout = Duration.ofMillis(requestTimeoutMs);
+    this.httpClient =
+        HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .build();
+  }
+
+  // The document is streamed after the IPP header; its length is unknown, so it is sent chunked
+  public IppResponse printJob(
+      URI printerUri, String jobName, String documentFormat, InputStream document)
+      throws IOException {
+    Request request = new Request(PRINT_JOB, printerUri);
+    request.attribute(NAME, "requesting-user-name", System.getProperty("user.name", "agent"));
+    request.attribute(NAME, "job-name", jobName);
+    request.attribute(MIME_MEDIA_TYPE, "document-format", documentFormat);
+    return send(printerUri, request.finish(), document);
+  }
+
+  public IppResponse getJobAttributes(URI printerUri, int jobId) throws IOException {
+    Request request = new Request(GET_JOB_ATTRIBUTES, printerUri);
+    request.attribute(INTEGER, "job-id", jobId);
+    request.attribute(KEYWORD, "requested-attributes", "job-state");
+    return send(printerUri, request.finish(), null);
+  }
+
+  public IppResponse getPrinterAttributes(URI printerUri) throws IOException {
+    Request request = new Request(GET_PRINTER_ATTRIBUTES, printerUri);
+    request.attribute(KEYWORD, "requested-attributes", "printer-state");
+    request.attribute(KEYWORD, "", "printer-state-reasons");
+    request.attribute(KEYWORD, "", "printer-is-accepting-jobs");
+    request.attribute(KEYWORD, "", "queued-job-count");
+    request.attribute(KEYWORD, "", "document-format-supported");
+    return send(printerUri, request.finish(), null);
+  }
+
+  public IppResponse cancelJob(URI printerUri, int jobId) throws IOException {
+    Request request = new Request(CANCEL_JOB, printerUri);
+    request.attribute(INTEGER, "job-id", jobId);
+    request.attribute(NAME, "requesting-user-name", System.getProperty("user.name", "agent"));
+    return send(printerUri, request.finish(), null);
+  }
+
+  // CUPS queues take their raw type as-is; network printers sniff the data themselves
+  public static String rawDocumentFormat(URI printerUri) {
+    String path = printerUri.getPath() != null ? printerUri.getPath() : "";
+    return path.startsWith("/printers/") || path.startsWith("/classes/")
+        ? "application/vnd.cups-raw"
+        : "application/octet-stream";
+  }
+
+  private IppResponse send(URI printerUri, byte[] ippRequest, InputStream document)
+      throws IOException {
+    HttpRequest.BodyPublisher body =
+        document == null
+            ? HttpRequest.BodyPublishers.ofByteArray(ippRequest)
+            : HttpRequest.BodyPublishers.ofInputStream(
+                () -> new SequenceInputStream(new ByteArrayInputStream(ippRequest), document));
+    HttpRequest request =
+        HttpRequest.newBuilder(httpUri(printerUri))
+            .timeout(requestTimeout)
+            .header("Content-Type", "application/ipp")
+            .POST(body)
+            .build();
+
+    HttpResponse<byte[]> response;
+    try {
+      response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while talking to " + printerUri, e);
+    }
+    if (response.statusCode() != 200) {
+      throw new IOException("IPP server returned HTTP " + response.statusCode());
+    }
+    return IppResponse.parse(response.body());
+  }
+
+  // ipp://host/path is plain HTTP on port 631, ipps:// is HTTPS on the same port
+  private static URI httpUri(URI printerUri) {
+    String scheme = printerUri.getScheme().toLowerCase();
+    if (scheme.startsWith("http")) {
+      return printerUri;
+    }
+    int port = printerUri.getPort() != -1 ? printerUri.getPort() : 631;
+    return URI.create(
+        (scheme.equals("ipps") ? "https" : "http")
+            + "://"
+            + printerUri.getHost()
+            + ":"
+            + port
+            + printerUri.getRawPath());
+  }
+
+  private class Request {
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream out = new DataOutputStream(buffer);
+
+    Request(int operation, URI printerUri) throws IOException {
+      out.writeShort(0x0101);
+      out.writeShort(operation);
+      out.writeInt(requestId.incrementAndGet());
+      out.writeByte(OPERATION_ATTRIBUTES);
+      attribute(CHARSET, "attributes-charset", "utf-8");
+      attribute(NATURAL_LANGUAGE, "attributes-natural-language", "en");
+      attribute(URI_TAG, "printer-uri", printerUri.toString());
+    }
+
+    void attribute(int tag, String name, String value) throws IOException {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeName(tag, name);
+      out.writeShort(bytes.length);
+      out.write(bytes);
+    }
+
+    void attribute(int tag, String name, int value) throws IOException {
+      writeName(tag, name);
+      out.writeShort(4);
+      out.writeInt(value);
+    }
+
+    byte[] finish() throws IOException {
+      out.writeByte(END_OF_ATTRIBUTES);
+      return buffer.toByteArray();
+    }
+
+    // An empty name adds another value to the previous attribute
+    private void writeName(int tag, String name) throws IOException {
+      byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+      out.writeByte(tag);
+      out.writeShort(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  public static class IppResponse {
+    private final int statusCode;
+    private final Map<String, Object> attributes;
+
+    public IppResponse(int statusCode, Map<String, Object> attributes) {
+      this.statusCode = statusCode;
+      this.attributes = attributes;
+    }
+
+    // All groups are merged; multi-valued attributes become lists
+    static IppResponse parse(byte[] body) throws IOException {
+      DataInputStream in = new DataInputStream(new ByteArrayInputStream(body));
+      in.readShort();
+      int statusCode = in.readUnsignedShort();
+      in.readInt();
+
+      Map<String, Object> attributes = new LinkedHashMap<>();
+      String lastName = null;
+      while (true) {
+        int tag = in.read();
+        if (tag == -1 || tag == END_OF_ATTRIBUTES) {
+          break;
+        }
+        if (tag < 0x10) {
+          // Start of the next attribute group
+          continue;
+        }
+        byte[] nameBytes = new byte[in.readUnsignedShort()];
+        in.readFully(nameBytes);
+        byte[] valueBytes = new byte[in.readUnsignedShort()];
+        in.readFully(valueBytes);
+
+        Object value = decode(tag, valueBytes);
+        String name = nameBytes.length > 0 ? new String(nameBytes, StandardCharsets.UTF_8) : null;
+        if (name != null) {
+          attributes.put(name, value);
+          lastName = name;
+        } else if (lastName != null) {
+          Object previous = attributes.get(lastName);
+          List<Object> values = new ArrayList<>();
+          if (previous instanceof List<?> list) {
+            values.addAll(list);
+          } else {
+            values.add(previous);
+          }
+          values.add(value);
+          attributes.put(lastName, values);
+        }
+      }
+      return new IppResponse(statusCode, attributes);
+    }
+
+    private static Object decode(int tag, byte[] value) {
+      if ((tag == INTEGER || tag == ENUM) && value.length == 4) {
+        return ((value[0] & 0xFF) << 24)
+            | ((value[1] & 0xFF) << 16)
+            | ((value[2] & 0xFF) << 8)
+            | (value[3] & 0xFF);
+      }
+      if (tag == BOOLEAN && value.length == 1) {
+        return value[0] != 0;
+      }
+      return new String(value, StandardCharsets.UTF_8);
+    }
+
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    // successful-ok and its variants are 0x0000-0x00FF
+    public boolean isSuccessful() {
+      return statusCode < 0x0100;
+    }
+
+    public Map<String, Object> getAttributes() {
+      return attributes;
+    }
+
+    public Integer getInt(String name) {
+      return attributes.get(name) instanceof Integer value ? value : null;
+    }
+  }
+
+  public static class JobHandle {
+    private final URI printerUri;
+    private final int jobId;
+
+    public JobHandle(URI printerUri, int jobId) {
+      this.printerUri = printerUri;
+      this.jobId = jobId;
+    }
+
+    public URI getPrinterUri() {
+      return printerUri;
+    }
+
+    public int getJobId() {
+      return jobId;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Service;
+
+@Service
+public class MetricsService {
+
+  private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+  private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+  private final Map<String, Supplier<Object>> gauges = new ConcurrentHashMap<>();
+
+  public void increment(String name) {
+    increment(name, 1);
+  }
+
+  public void increment(String name, long amount) {
+    counters.computeIfAbsent(name, k -> new LongAdder()).add(amount);
+  }
+
+  public void recordTime(String name, long millis) {
+    timers.computeIfAbsent(name, k -> new Timer()).record(millis);
+  }
+
+  // Gauges are read when the snapshot is taken, so they always show the current value
+  public void registerGauge(String name, Supplier<Object> gauge) {
+    gauges.put(name, gauge);
+  }
+
+  public Map<String, Object> snapshot() {
+    Map<String, Object> counterValues = new TreeMap<>();
+    counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+
+    Map<String, Object> timerValues = new TreeMap<>();
+    timers.forEach((name, timer) -> timerValues.put(name, timer.snapshot()));
+
+    Map<String, Object> gaugeValues = new TreeMap<>();
+    gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.get()));
+
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("counters", counterValues);
+    result.put("timers", timerValues);
+    result.put("gauges", gaugeValues);
+    result.put("timestamp", System.currentTimeMillis());
+    return result;
+  }
+
+  private static class Timer {
+    private long count;
+    private long totalMs;
+    private long maxMs;
+    private long lastMs;
+
+    synchronized void record(long millis) {
+      count++;
+      totalMs += millis;
+      maxMs = Math.max(maxMs, millis);
+      lastMs = millis;
+    }
+
+    synchronized Map<String, Object> snapshot() {
+      Map<String, Object> values = new LinkedHashMap<>();
+      values.put("count", count);
+      values.put("avgMs", count > 0 ? totalMs / count : 0);
+      values.put("maxMs", maxMs);
+      values.put("lastMs", lastMs);
+      return values;
+    }
+  }
+}
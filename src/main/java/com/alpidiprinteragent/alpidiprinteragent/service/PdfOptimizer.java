@@ -0,0 +1,292 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTimings;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.cos.COSArray;
+import org.apache.pdfbox.cos.COSBase;
+import org.apache.pdfbox.cos.COSDictionary;
+import org.apache.pdfbox.cos.COSName;
+import org.apache.pdfbox.cos.COSStream;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.pdmodel.graphics.PDXObject;
+import org.apache.pdfbox.pdmodel.graphics.form.PDFormXObject;
+import org.apache.pdfbox.pdmodel.graphics.image.JPEGFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Shrinks PDFs before they are spooled: images are downsampled to what the printer can resolve,
+// identical embedded font programs are stored once, and objects a printer never reads are dropped
+@Service
+public class PdfOptimizer {
+
+  private static final Logger logger = LoggerFactory.getLogger(PdfOptimizer.class);
+  private static final COSName[] FONT_FILES = {
+    COSName.FONT_FILE, COSName.FONT_FILE2, COSName.FONT_FILE3
+  };
+  // Cached for documents that did not get smaller, so they are not processed again
+  private static final byte[] UNCHANGED = new byte[0];
+  private static final int MAX_CACHE_ENTRIES = 1024;
+
+  private final boolean enabled;
+  private final long minBytes;
+  private final int defaultDpi;
+  private final long cacheBytes;
+  private final MetricsService metricsService;
+  // Optimized documents by content hash and target resolution, least recently used first
+  private final LinkedHashMap<String, byte[]> cache = new LinkedHashMap<>(16, 0.75f, true);
+  private long cachedBytes;
+
+  public PdfOptimizer(
+      @Value("${printer.pdf-optimization.enabled:false}") boolean enabled,
+      @Value("${printer.pdf-optimization.min-bytes:65536}") long minBytes,
+      @Value("${printer.pdf-optimization.default-dpi:300}") int defaultDpi,
+      @Value("${printer.pdf-optimization.cache-bytes:67108864}") long cacheBytes,
+      MetricsService metricsService) {
+    this.enabled = enabled;
+    this.minBytes = minBytes;
+    this.defaultDpi = defaultDpi;
+    this.cacheBytes = cacheBytes;
+    this.metricsService = metricsService;
+  }
+
+  // Returns the smaller document, or the original when it cannot be improved; never fails the job
+  public PrintDocument optimize(PrintDocument document, Integer printerDpi) {
+    if (!enabled || document.size() < minBytes) {
+      return document;
+    }
+    long start = System.nanoTime();
+    int dpi = printerDpi != null && printerDpi > 0 ? printerDpi : defaultDpi;
+
+    try {
+      String key = hash(document) + "@" + dpi;
+      byte[] optimized = getCached(key);
+      if (optimized != null) {
+        metricsService.increment("print.pdfOptimization.cacheHits");
+      } else {
+        optimized = shrink(document, dpi);
+        if (optimized.length >= document.size()) {
+          optimized = UNCHANGED;
+        }
+        putCached(key, optimized);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        metricsService.recordTime("print.pdfOptimization", elapsedMs);
+        if (optimized != UNCHANGED) {
+          metricsService.increment(
+              "print.pdfOptimization.bytesSaved", document.size() - optimized.length);
+          logger.debug(
+              "Optimized PDF from {} to {} bytes at {} dpi in {} ms",
+              document.size(),
+              optimized.length,
+              dpi,
+              elapsedMs);
+        }
+      }
+      return optimized == UNCHANGED ? document : PrintDocument.of(optimized);
+
+    } catch (Exception e) {
+      logger.debug("Printing PDF as uploaded, optimization failed: {}", e.getMessage());
+      return document;
+    } finally {
+      PrintTimings.recordCurrent("optimize", start);
+    }
+  }
+
+  private byte[] shrink(PrintDocument document, int dpi) throws IOException {
+    try (PDDocument pdf = Loader.loadPDF(new RandomAccessReadBuffer(document.asByteBuffer()))) {
+      // No image is ever drawn larger than the largest page
+      float maxPagePoints = 0;
+      for (PDPage page : pdf.getPages()) {
+        PDRectangle box = page.getMediaBox();
+        maxPagePoints = Math.max(maxPagePoints, Math.max(box.getWidth(), box.getHeight()));
+      }
+      int maxPixels = (int) Math.ceil(maxPagePoints / 72 * dpi);
+
+      Map<COSBase, PDImageXObject> replaced = new IdentityHashMap<>();
+      Set<COSBase> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+      Map<String, COSStream> fontPrograms = new LinkedHashMap<>();
+      for (PDPage page : pdf.getPages()) {
+        page.getCOSObject().removeItem(COSName.THUMB);
+        page.getCOSObject().removeItem(COSName.PIECE_INFO);
+        if (page.getResources() != null) {
+          optimizeResources(pdf, page.getResources(), maxPixels, replaced, visited, fontPrograms);
+        }
+      }
+      pdf.getDocumentCatalog().getCOSObject().removeItem(COSName.METADATA);
+
+      // Saving writes only objects still reachable from the pages, with object streams
+      ByteArrayOutputStream out = new ByteArrayOutputStream((int) document.size());
+      pdf.save(out);
+      return out.toByteArray();
+    }
+  }
+
+  private void optimizeResources(
+      PDDocument pdf,
+      PDResources resources,
+      int maxPixels,
+      Map<COSBase, PDImageXObject> replaced,
+      Set<COSBase> visited,
+      Map<String, COSStream> fontPrograms)
+      throws IOException {
+    if (!visited.add(resources.getCOSObject())) {
+      return;
+    }
+    dedupeFontPrograms(resources, fontPrograms);
+
+    List<COSName> names = new ArrayList<>();
+    resources.getXObjectNames().forEach(names::add);
+    for (COSName name : names) {
+      PDXObject xObject = resources.getXObject(name);
+      if (xObject instanceof PDFormXObject form && form.getResources() != null) {
+        optimizeResources(pdf, form.getResources(), maxPixels, replaced, visited, fontPrograms);
+      } else if (xObject instanceof PDImageXObject image) {
+        PDImageXObject smaller = replaced.get(image.getCOSObject());
+        if (smaller == null && !replaced.containsKey(image.getCOSObject())) {
+          smaller = downsample(pdf, image, maxPixels);
+          replaced.put(image.getCOSObject(), smaller);
+        }
+        if (smaller != null) {
+          resources.put(name, smaller);
+        }
+      }
+    }
+  }
+
+  // Returns null when the image is kept as it is
+  private static PDImageXObject downsample(PDDocument pdf, PDImageXObject image, int maxPixels)
+      throws IOException {
+    int longestSide = Math.max(image.getWidth(), image.getHeight());
+    // Below 10% smaller the re-encoding costs more than it saves. Masks, transparency and 1-bit
+    // images (barcodes, line art) are left alone: resampling would blur them or lose the alpha.
+    if (longestSide * 0.9 <= maxPixels
+        || image.isStencil()
+        || image.getBitsPerComponent() == 1
+        || image.getSoftMask() != null
+        || image.getMask() != null) {
+      return null;
+    }
+
+    double scale = (double) maxPixels / longestSide;
+    int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+    int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+    BufferedImage source = image.getImage();
+    boolean gray = source.getColorModel().getNumColorComponents() == 1;
+    BufferedImage scaled =
+        new BufferedImage(
+            width, height, gray ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+      graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+      graphics.drawImage(source, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+
+    // Photos stay JPEG; everything else is stored losslessly
+    return "jpg".equals(image.getSuffix())
+        ? JPEGFactory.createFromImage(pdf, scaled, 0.85f)
+        : LosslessFactory.createFromImage(pdf, scaled);
+  }
+
+  // Documents assembled from several sources often embed the same font program once per page;
+  // descriptors with identical programs are pointed at the first copy
+  private static void dedupeFontPrograms(
+      PDResources resources, Map<String, COSStream> fontPrograms) throws IOException {
+    COSDictionary fonts = resources.getCOSObject().getCOSDictionary(COSName.FONT);
+    if (fonts == null) {
+      return;
+    }
+    for (COSName fontName : fonts.keySet()) {
+      COSDictionary font = fonts.getCOSDictionary(fontName);
+      if (font == null) {
+        continue;
+      }
+      dedupeFontProgram(font.getCOSDictionary(COSName.FONT_DESC), fontPrograms);
+      // Type 0 fonts keep their descriptor in the descendant font
+      COSArray descendants = font.getCOSArray(COSName.DESCENDANT_FONTS);
+      if (descendants != null && descendants.size() > 0) {
+        if (descendants.getObject(0) instanceof COSDictionary descendant) {
+          dedupeFontProgram(descendant.getCOSDictionary(COSName.FONT_DESC), fontPrograms);
+        }
+      }
+    }
+  }
+
+  private static void dedupeFontProgram(
+      COSDictionary descriptor, Map<String, COSStream> fontPrograms) throws IOException {
+    if (descriptor == null) {
+      return;
+    }
+    for (COSName key : FONT_FILES) {
+      if (!(descriptor.getDictionaryObject(key) instanceof COSStream program)) {
+        continue;
+      }
+      MessageDigest digest = sha256();
+      try (InputStream in = program.createRawInputStream()) {
+        digest.update(in.readAllBytes());
+      }
+      String programHash = key.getName() + ":" + HexFormat.of().formatHex(digest.digest());
+      COSStream first = fontPrograms.putIfAbsent(programHash, program);
+      if (first != null && first != program) {
+        descriptor.setItem(key, first);
+      }
+    }
+  }
+
+  private static String hash(PrintDocument document) throws IOException {
+    MessageDigest digest = sha256();
+    digest.update(document.asByteBuffer());
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  private static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private synchronized byte[] getCached(String key) {
+    return cache.get(key);
+  }
+
+  private synchronized void putCached(String key, byte[] optimized) {
+    byte[] previous = cache.put(key, optimized);
+    cachedBytes += optimized.length - (previous != null ? previous.length : 0);
+    Iterator<Map.Entry<String, byte[]>> eldest = cache.entrySet().iterator();
+    while ((cachedBytes > cacheBytes || cache.size() > MAX_CACHE_ENTRIES) && eldest.hasNext()) {
+      cachedBytes -= eldest.next().getValue().length;
+      eldest.remove();
+    }
+  }
+}
@@ -0,0 +1,271 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import jakarta.annotation.PreDestroy;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.print.PageFormat;
+import java.awt.print.Pageable;
+import java.awt.print.Paper;
+import java.awt.print.Printable;
+import java.awt.print.PrinterAbortException;
+import java.awt.print.PrinterException;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.common.PDRectangle;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Renders PDFs to images on the agent for printers whose drivers cannot take PDF. Pages are
+// rendered in parallel and handed to the driver in order, at most a few pages ahead of it.
+@Service
+public class PdfRasterizer {
+
+  private static final Logger logger = LoggerFactory.getLogger(PdfRasterizer.class);
+
+  private final List<String> printers;
+  private final int defaultDpi;
+  private final int pagesInFlight;
+  private final ImageType imageType;
+  private final MetricsService metricsService;
+  private final ForkJoinPool renderPool;
+
+  public PdfRasterizer(
+      @Value("${printer.rasterize.printers:}") List<String> printers,
+      @Value("${printer.rasterize.default-dpi:300}") int defaultDpi,
+      @Value("${printer.rasterize.parallelism:0}") int parallelism,
+      @Value("${printer.rasterize.pages-in-flight:0}") int pagesInFlight,
+      @Value("${printer.rasterize.image-type:RGB}") ImageType imageType,
+      MetricsService metricsService) {
+    this.printers = printers.stream().map(String::trim).filter(name -> !name.isEmpty()).toList();
+    this.defaultDpi = defaultDpi;
+    int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    this.pagesInFlight = pagesInFlight > 0 ? pagesInFlight : threads;
+    this.imageType = imageType;
+    this.metricsService = metricsService;
+    this.renderPool =
+        new ForkJoinPool(
+            threads,
+            pool -> {
+              ForkJoinWorkerThread thread =
+                  ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+              thread.setName("pdf-rasterizer-" + thread.getPoolIndex());
+              return thread;
+            },
+            null,
+            false);
+  }
+
+  public boolean accepts(String printerName) {
+    return printers.stream().anyMatch(name -> name.equalsIgnoreCase(printerName));
+  }
+
+  // Parses the document once for its page sizes; rendering starts when the driver asks for pages.
+  // The caller closes the pages once the job has been spooled.
+  public RasterPages open(PrintDocument document, Integer printerDpi) throws IOException {
+    int dpi = printerDpi != null && printerDpi > 0 ? printerDpi : defaultDpi;
+    return new RasterPages(document, dpi);
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    renderPool.shutdownNow();
+  }
+
+  public class RasterPages implements Pageable, Printable, Closeable {
+    private final PrintDocument document;
+    private final float dpi;
+    private final PageFormat[] formats;
+    // Parsed copies of the document, one per page being rendered; PDFBox cannot render from one
+    // copy on several threads. Guarded by this, like pages and closed.
+    private final Deque<PDDocument> idle = new ArrayDeque<>();
+    // From the page the driver is printing up to pagesInFlight pages ahead of it
+    private final Map<Integer, ForkJoinTask<BufferedImage>> pages = new HashMap<>();
+    private boolean closed;
+
+    RasterPages(PrintDocument document, int dpi) throws IOException {
+      this.document = document;
+      this.dpi = dpi;
+      PDDocument pdf = load();
+      try {
+        formats = new PageFormat[pdf.getNumberOfPages()];
+        for (int i = 0; i < formats.length; i++) {
+          formats[i] = pageFormat(pdf.getPage(i));
+        }
+      } catch (RuntimeException e) {
+        pdf.close();
+        throw e;
+      }
+      idle.push(pdf);
+    }
+
+    @Override
+    public int getNumberOfPages() {
+      return formats.length;
+    }
+
+    @Override
+    public PageFormat getPageFormat(int pageIndex) {
+      return formats[pageIndex];
+    }
+
+    @Override
+    public Printable getPrintable(int pageIndex) {
+      return this;
+    }
+
+    @Override
+    public int print(Graphics graphics, PageFormat format, int pageIndex) throws PrinterException {
+      if (pageIndex >= formats.length) {
+        return NO_SUCH_PAGE;
+      }
+      BufferedImage image = page(pageIndex);
+      Graphics2D g = (Graphics2D) graphics;
+      g.translate(format.getImageableX(), format.getImageableY());
+      g.drawImage(image, AffineTransform.getScaleInstance(72 / dpi, 72 / dpi), null);
+      return PAGE_EXISTS;
+    }
+
+    // Drivers may ask for the same page several times, once per band
+    private BufferedImage page(int pageIndex) throws PrinterException {
+      ForkJoinTask<BufferedImage> task;
+      synchronized (this) {
+        if (closed) {
+          throw new PrinterAbortException("Rasterizing was canceled");
+        }
+        pages.keySet().removeIf(index -> index < pageIndex);
+        int last = Math.min(formats.length, pageIndex + pagesInFlight);
+        for (int i = pageIndex; i < last; i++) {
+          int index = i;
+          pages.computeIfAbsent(index, k -> renderPool.submit(() -> render(index)));
+        }
+        task = pages.get(pageIndex);
+      }
+
+      long start = System.nanoTime();
+      boolean waited = !task.isDone();
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new PrinterAbortException("Rasterizing was interrupted");
+      } catch (ExecutionException e) {
+        PrinterException failure =
+            new PrinterException(
+                "Could not render page " + (pageIndex + 1) + ": " + e.getCause().getMessage());
+        failure.initCause(e.getCause());
+        throw failure;
+      } finally {
+        if (waited) {
+          metricsService.recordTime(
+              "print.rasterize.pageWait",
+              TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+      }
+    }
+
+    private BufferedImage render(int pageIndex) throws IOException {
+      PDDocument pdf = borrow();
+      long start = System.nanoTime();
+      try {
+        return new PDFRenderer(pdf).renderImageWithDPI(pageIndex, dpi, imageType);
+      } finally {
+        giveBack(pdf);
+        metricsService.recordTime(
+            "print.rasterize.page", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    }
+
+    private PDDocument borrow() throws IOException {
+      synchronized (this) {
+        if (closed) {
+          throw new IOException("Rasterizing was canceled");
+        }
+        PDDocument pdf = idle.poll();
+        if (pdf != null) {
+          return pdf;
+        }
+      }
+      return load();
+    }
+
+    private void giveBack(PDDocument pdf) {
+      synchronized (this) {
+        if (!closed) {
+          idle.push(pdf);
+          return;
+        }
+      }
+      closeQuietly(pdf);
+    }
+
+    private PDDocument load() throws IOException {
+      return Loader.loadPDF(new RandomAccessReadBuffer(document.asByteBuffer()));
+    }
+
+    // Pages still rendering finish on their own and close their copy when they are done
+    @Override
+    public void close() {
+      List<PDDocument> copies;
+      synchronized (this) {
+        closed = true;
+        pages.values().forEach(task -> task.cancel(false));
+        pages.clear();
+        copies = new ArrayList<>(idle);
+        idle.clear();
+      }
+      copies.forEach(PdfRasterizer::closeQuietly);
+    }
+  }
+
+  // Landscape pages are described as portrait paper printed sideways, which drivers handle better
+  // than paper wider than it is tall
+  private static PageFormat pageFormat(PDPage page) {
+    PDRectangle box = page.getCropBox();
+    boolean turned = page.getRotation() % 180 != 0;
+    double width = turned ? box.getHeight() : box.getWidth();
+    double height = turned ? box.getWidth() : box.getHeight();
+
+    PageFormat format = new PageFormat();
+    Paper paper = new Paper();
+    if (width > height) {
+      paper.setSize(height, width);
+      paper.setImageableArea(0, 0, height, width);
+      format.setOrientation(PageFormat.LANDSCAPE);
+    } else {
+      paper.setSize(width, height);
+      paper.setImageableArea(0, 0, width, height);
+    }
+    format.setPaper(paper);
+    return format;
+  }
+
+  private static void closeQuietly(PDDocument pdf) {
+    try {
+      pdf.close();
+    } catch (IOException e) {
+      logger.debug("Could not close rasterized document: {}", e.getMessage());
+    }
+  }
+}
@@ -1,5 +1,7 @@
 package com.alpidiprinteragent.alpidiprinteragent.service;
 
+import com.alpidiprinteragent.alpidiprinteragent.controller.LiteHttpServer;
+import java.util.Arrays;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,8 +16,17 @@ public class PlatformServiceWrapper {
 
     try {
       if (osName.contains("windows")) {
+        // Starts lite mode too, so the tray icon and --headless work the same in both modes
         logger.info("Starting Windows service wrapper...");
         WindowsServiceWrapper.main(args);
+      } else if (isLiteMode(args) && SocketActivationService.inheritsServerSocket()) {
+        logger.warn(
+            "Lite mode cannot adopt the socket passed by systemd, starting the standard server");
+        LinuxServiceWrapper.main(args);
+      } else if (isLiteMode(args)) {
+        // Same endpoints without Tomcat or Spring MVC, for kiosks with little memory
+        logger.info("Starting lite server mode...");
+        LiteHttpServer.start(args);
       } else if (osName.contains("mac") || osName.contains("darwin")) {
         logger.info("Starting macOS service wrapper...");
         MacServiceWrapper.main(args);
@@ -33,4 +44,11 @@ public class PlatformServiceWrapper {
       com.alpidiprinteragent.alpidiprinteragent.AlpidiprinteragentApplication.main(args);
     }
   }
+
+  // --lite, --agent.server=lite or AGENT_SERVER=lite
+  static boolean isLiteMode(String[] args) {
+    return Arrays.asList(args).contains("--lite")
+        || Arrays.asList(args).contains("--agent.server=lite")
+        || "lite".equalsIgnoreCase(System.getenv("AGENT_SERVER"));
+  }
 }
@@ -0,0 +1,284 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintPriority;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.io.RandomAccessReadBuffer;
+import org.apache.pdfbox.multipdf.PDFMergerUtility;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Merges small PDF jobs that arrive for the same printer within a short window into one
+// document, so the driver and spooler set up one job instead of one per label
+@Service
+public class PrintCoalescer {
+
+  private static final Logger logger = LoggerFactory.getLogger(PrintCoalescer.class);
+
+  private final List<String> printers;
+  private final long windowMs;
+  private final int maxDocuments;
+  private final long maxDocumentBytes;
+  private final PrintDispatcher printDispatcher;
+  private final PrintFailoverService failoverService;
+  private final MetricsService metricsService;
+  // Guarded by this
+  private final Map<String, Batch> openBatches = new HashMap<>();
+
+  public PrintCoalescer(
+      @Value("${printer.coalescing.printers:}") List<String> printers,
+      @Value("${printer.coalescing.window-ms:50}") long windowMs,
+      @Value("${printer.coalescing.max-documents:20}") int maxDocuments,
+      @Value("${printer.coalescing.max-document-bytes:262144}") long maxDocumentBytes,
+      PrintDispatcher printDispatcher,
+      PrintFailoverService failoverService,
+      MetricsService metricsService) {
+    this.printers = printers.stream().map(String::trim).filter(name -> !name.isEmpty()).toList();
+    this.windowMs = windowMs;
+    this.maxDocuments = maxDocuments;
+    this.maxDocumentBytes = maxDocumentBytes;
+    this.printDispatcher = printDispatcher;
+    this.failoverService = failoverService;
+    this.metricsService = metricsService;
+  }
+
+  // Urgent jobs do not wait for the window; raw and chunked jobs cannot be merged as PDF, and a
+  // download of unknown size may be far larger than the limit
+  public boolean accepts(
+      String printerName,
+      PrinterLanguage language,
+      PrintPriority priority,
+      boolean chunked,
+      PrintDocument document) {
+    return language == PrinterLanguage.PDF
+        && priority != PrintPriority.URGENT
+        && !chunked
+        && document.size() >= 0
+        && document.size() <= maxDocumentBytes
+        && printers.stream().anyMatch(name -> name.equalsIgnoreCase(printerName));
+  }
+
+  // Joins the printer's open batch and waits for the merged job to be printed. The first job of
+  // a batch waits out the window and then submits the batch on behalf of all of them.
+  public PrintDispatcher.Dispatched<PrintFailoverService.PrintOutcome> print(
+      String printerName,
+      PrintPriority priority,
+      PrintJobTracker.TrackedJob job,
+      PrintDocument document)
+      throws Exception {
+    Entry entry = new Entry(priority, job, document);
+    String key = printerName.toLowerCase();
+    Batch batch;
+    boolean leader;
+    synchronized (this) {
+      batch = openBatches.get(key);
+      leader = batch == null;
+      if (leader) {
+        batch = new Batch(printerName);
+        openBatches.put(key, batch);
+      }
+      batch.entries.add(entry);
+      if (batch.entries.size() >= maxDocuments) {
+        openBatches.remove(key);
+        batch.full.countDown();
+      }
+    }
+
+    if (leader) {
+      boolean interrupted = false;
+      try {
+        batch.full.await(windowMs, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        // The other jobs are still waiting, so the batch is submitted anyway
+        interrupted = true;
+      }
+      synchronized (this) {
+        openBatches.remove(key, batch);
+      }
+      // No entry can join any more; entries is only read from here on
+      submit(batch);
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    try {
+      return entry.result.get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private void submit(Batch batch) {
+    List<Entry> entries = batch.entries;
+    metricsService.increment("print.coalesced.batches");
+    PrintPriority priority =
+        entries.stream()
+            .map(entry -> entry.priority)
+            .min(Comparator.comparingInt(PrintPriority::getRank))
+            .orElse(PrintPriority.NORMAL);
+
+    try {
+      PrintDispatcher.Dispatched<List<Entry>> dispatched =
+          printDispatcher.execute(batch.printerName, priority, () -> printMerged(batch));
+      for (Entry entry : dispatched.getResult()) {
+        entry.result.complete(
+            new PrintDispatcher.Dispatched<>(entry.outcome, dispatched.getQueueWaitMs()));
+      }
+    } catch (Exception e) {
+      entries.forEach(entry -> entry.result.completeExceptionally(e));
+    }
+  }
+
+  // Runs on the printer's dispatcher thread; returns the entries that were printed
+  private List<Entry> printMerged(Batch batch) throws Exception {
+    if (batch.entries.size() == 1) {
+      Entry entry = batch.entries.get(0);
+      entry.outcome =
+          entry.job.attach(() -> failoverService.print(batch.printerName, entry.document));
+      return batch.entries;
+    }
+
+    List<Entry> started = new ArrayList<>();
+    for (Entry entry : batch.entries) {
+      if (entry.job.startMerged()) {
+        started.add(entry);
+      } else {
+        entry.result.completeExceptionally(
+            new PrintJobTracker.CanceledException(
+                "Print job was canceled: " + entry.job.getJobId()));
+      }
+    }
+    if (started.isEmpty()) {
+      return started;
+    }
+
+    PrintDocument document;
+    try {
+      document = started.size() == 1 ? started.get(0).document : merge(started);
+    } catch (IOException e) {
+      // One unreadable document must not fail the jobs it would have been merged with
+      logger.warn(
+          "Could not merge {} jobs for '{}', printing them one by one: {}",
+          started.size(),
+          batch.printerName,
+          e.getMessage());
+      return printEach(batch.printerName, started);
+    }
+    PrintFailoverService.PrintOutcome printed =
+        PrintJobTracker.attachMerged(
+            started.stream().map(entry -> entry.job).toList(),
+            () -> failoverService.print(batch.printerName, document));
+
+    PrintFailoverService.PrintOutcome outcome =
+        started.size() == 1
+            ? printed
+            : new CoalescedOutcome(
+                printed.getPrinterName(),
+                printed.getAttempts(),
+                printed.isFailedOver(),
+                started.size());
+    started.forEach(entry -> entry.outcome = outcome);
+    metricsService.increment("print.coalesced.jobs", started.size());
+    return started;
+  }
+
+  private List<Entry> printEach(String printerName, List<Entry> entries) {
+    List<Entry> printed = new ArrayList<>();
+    for (Entry entry : entries) {
+      try {
+        entry.outcome =
+            PrintJobTracker.attachMerged(
+                List.of(entry.job), () -> failoverService.print(printerName, entry.document));
+        printed.add(entry);
+      } catch (PrintDispatcher.RetryLaterException e) {
+        // The others cannot be run again with it
+        entry.result.completeExceptionally(e.getCause());
+      } catch (Exception e) {
+        entry.result.completeExceptionally(e);
+      }
+    }
+    return printed;
+  }
+
+  private PrintDocument merge(List<Entry> entries) throws IOException {
+    long start = System.nanoTime();
+    List<PDDocument> sources = new ArrayList<>();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PDDocument merged = new PDDocument()) {
+      PDFMergerUtility merger = new PDFMergerUtility();
+      for (Entry entry : entries) {
+        PDDocument source =
+            Loader.loadPDF(new RandomAccessReadBuffer(entry.document.asByteBuffer()));
+        sources.add(source);
+        merger.appendDocument(merged, source);
+      }
+      merged.save(out);
+    } finally {
+      for (PDDocument source : sources) {
+        source.close();
+      }
+    }
+    long mergeMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    metricsService.recordTime("print.coalesced.merge", mergeMs);
+    logger.debug("Merged {} jobs in {} ms", entries.size(), mergeMs);
+    return PrintDocument.of(out.toByteArray());
+  }
+
+  private static class Batch {
+    final String printerName;
+    final List<Entry> entries = new ArrayList<>();
+    final CountDownLatch full = new CountDownLatch(1);
+
+    Batch(String printerName) {
+      this.printerName = printerName;
+    }
+  }
+
+  private static class Entry {
+    final PrintPriority priority;
+    final PrintJobTracker.TrackedJob job;
+    final PrintDocument document;
+    final CompletableFuture<PrintDispatcher.Dispatched<PrintFailoverService.PrintOutcome>>
+        result = new CompletableFuture<>();
+    PrintFailoverService.PrintOutcome outcome;
+
+    Entry(PrintPriority priority, PrintJobTracker.TrackedJob job, PrintDocument document) {
+      this.priority = priority;
+      this.job = job;
+      this.document = document;
+    }
+  }
+
+  public static class CoalescedOutcome extends PrintFailoverService.PrintOutcome {
+    private final int jobCount;
+
+    public CoalescedOutcome(String printerName, int attempts, boolean failedOver, int jobCount) {
+      super(printerName, attempts, failedOver);
+      this.jobCount = jobCount;
+    }
+
+    // Jobs printed in the same merged document, this one included
+    public int getJobCount() {
+      return jobCount;
+    }
+  }
+}
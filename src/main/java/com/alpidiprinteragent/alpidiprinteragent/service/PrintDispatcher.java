@@ -0,0 +1,276 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintPriority;
+import jakarta.annotation.PreDestroy;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PrintDispatcher {
+
+  private static final Logger logger = LoggerFactory.getLogger(PrintDispatcher.class);
+
+  private static final ThreadLocal<Run> current = new ThreadLocal<>();
+
+  private final long agingMs;
+  private final long idleMs;
+  private final MetricsService metricsService;
+  private final Map<String, PrinterQueue> queues = new ConcurrentHashMap<>();
+  private final AtomicLong sequence = new AtomicLong();
+  // Holds jobs that asked to be retried later, so that their backoff does not block the printer
+  private final ScheduledExecutorService retryTimer =
+      Executors.newSingleThreadScheduledExecutor(
+          runnable -> {
+            Thread thread = new Thread(runnable, "print-dispatcher-retry");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public PrintDispatcher(
+      @Value("${printer.dispatch.aging-ms:30000}") long agingMs,
+      @Value("${printer.dispatch.idle-ms:60000}") long idleMs,
+      MetricsService metricsService) {
+    this.agingMs = agingMs;
+    this.idleMs = idleMs;
+    this.metricsService = metricsService;
+    metricsService.registerGauge("print.queue.depth", this::getQueueDepths);
+  }
+
+  // The run of the dispatched job on the calling thread, or null outside the dispatcher
+  public static Run currentRun() {
+    return current.get();
+  }
+
+  // Runs the task on the printer's worker thread and waits for its result. A task that throws
+  // RetryLaterException before anything was submitted is queued again once the delay is over.
+  public <T> Dispatched<T> execute(String printerName, PrintPriority priority, Callable<T> task)
+      throws Exception {
+    QueuedJob<T> job = new QueuedJob<>(printerName, priority, task);
+    enqueue(job);
+
+    try {
+      return new Dispatched<>(job.result.get(), job.queueWaitMs);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  public int getPendingCount(String printerName) {
+    PrinterQueue queue = queues.get(printerName.toLowerCase());
+    return queue != null ? queue.jobs.size() : 0;
+  }
+
+  public Map<String, Integer> getQueueDepths() {
+    Map<String, Integer> depths = new TreeMap<>();
+    queues.values().forEach(queue -> depths.put(queue.printerName, queue.jobs.size()));
+    return depths;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    retryTimer.shutdownNow();
+    queues.values().forEach(queue -> queue.worker.interrupt());
+  }
+
+  private void enqueue(QueuedJob<?> job) {
+    // Added under the map lock so that an idle worker cannot retire with the job still queued
+    queues.compute(
+        job.printerName.toLowerCase(),
+        (key, queue) -> {
+          PrinterQueue target = queue != null ? queue : new PrinterQueue(key, job.printerName);
+          target.add(job);
+          return target;
+        });
+  }
+
+  private class PrinterQueue {
+    private final String key;
+    private final String printerName;
+    private final PriorityBlockingQueue<QueuedJob<?>> jobs = new PriorityBlockingQueue<>();
+    private final Thread worker;
+
+    PrinterQueue(String key, String printerName) {
+      this.key = key;
+      this.printerName = printerName;
+      this.worker = new Thread(this::run, "print-dispatcher-" + printerName);
+      this.worker.setDaemon(true);
+      this.worker.start();
+    }
+
+    void add(QueuedJob<?> job) {
+      jobs.add(job);
+    }
+
+    // Workers for printers that stop receiving jobs exit after idleMs, so that names that were
+    // only printed to once do not keep a thread forever
+    private void run() {
+      while (!Thread.currentThread().isInterrupted()) {
+        try {
+          QueuedJob<?> job = jobs.poll(idleMs, TimeUnit.MILLISECONDS);
+          if (job != null) {
+            job.run();
+          } else if (retire()) {
+            return;
+          }
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+          logger.error("Print dispatcher for '{}' failed to run a job", printerName, e);
+        }
+      }
+    }
+
+    private boolean retire() {
+      boolean[] retired = {false};
+      queues.computeIfPresent(
+          key,
+          (k, queue) -> {
+            if (queue != this || !jobs.isEmpty()) {
+              return queue;
+            }
+            retired[0] = true;
+            return null;
+          });
+      return retired[0];
+    }
+  }
+
+  private class QueuedJob<T> implements Comparable<QueuedJob<?>> {
+    private final String printerName;
+    private final PrintPriority priority;
+    private final Callable<T> task;
+    private final long enqueuedAt = System.nanoTime();
+    private final long seq = sequence.incrementAndGet();
+    private final CompletableFuture<T> result = new CompletableFuture<>();
+    // Lower classes start some aging steps back: overtaken for a while, but never starved.
+    // A retried job keeps its place, so it is not overtaken by jobs that arrived after it.
+    private final long deadline;
+    private final Run run = new Run();
+    private volatile long queueWaitMs;
+
+    QueuedJob(String printerName, PrintPriority priority, Callable<T> task) {
+      this.printerName = printerName;
+      this.priority = priority;
+      this.task = task;
+      this.deadline = enqueuedAt + TimeUnit.MILLISECONDS.toNanos(agingMs) * priority.getRank();
+    }
+
+    void run() {
+      if (run.number == 0) {
+        queueWaitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt);
+        metricsService.recordTime(
+            "print.queueWait." + priority.name().toLowerCase(), queueWaitMs);
+      }
+      run.number++;
+      current.set(run);
+      try {
+        result.complete(task.call());
+      } catch (RetryLaterException e) {
+        retryLater(e);
+      } catch (Throwable e) {
+        result.completeExceptionally(e);
+      } finally {
+        current.remove();
+      }
+    }
+
+    private void retryLater(RetryLaterException e) {
+      if (run.submitted) {
+        result.completeExceptionally(e.getCause());
+        return;
+      }
+      try {
+        retryTimer.schedule(() -> enqueue(this), e.getDelayMs(), TimeUnit.MILLISECONDS);
+      } catch (RejectedExecutionException rejected) {
+        result.completeExceptionally(e.getCause());
+      }
+    }
+
+    @Override
+    public int compareTo(QueuedJob<?> other) {
+      int byDeadline = Long.compare(deadline - other.deadline, 0);
+      return byDeadline != 0 ? byDeadline : Long.compare(seq, other.seq);
+    }
+  }
+
+  // One job across its runs; the task sees the same instance each time it is retried
+  public static class Run {
+    private int number;
+    private int failedAttempts;
+    private boolean submitted;
+
+    // 1 for the first run of the job
+    public int getNumber() {
+      return number;
+    }
+
+    // Carries the attempts of a run that asked to be retried over to the next run
+    public void addFailedAttempts(int attempts) {
+      failedAttempts += attempts;
+    }
+
+    public int takeFailedAttempts() {
+      int attempts = failedAttempts;
+      failedAttempts = 0;
+      return attempts;
+    }
+
+    // Once anything may have reached the printer, running the job again could print it twice
+    public void submitted() {
+      submitted = true;
+    }
+
+    public boolean isRetryable() {
+      return !submitted;
+    }
+  }
+
+  // Thrown by a task that should run again after the delay instead of failing now
+  public static class RetryLaterException extends Exception {
+    private final long delayMs;
+
+    public RetryLaterException(long delayMs, Exception cause) {
+      super(cause.getMessage(), cause);
+      this.delayMs = delayMs;
+    }
+
+    public long getDelayMs() {
+      return delayMs;
+    }
+  }
+
+  public static class Dispatched<T> {
+    private final T result;
+    private final long queueWaitMs;
+
+    public Dispatched(T result, long queueWaitMs) {
+      this.result = result;
+      this.queueWaitMs = queueWaitMs;
+    }
+
+    public T getResult() {
+      return result;
+    }
+
+    public long getQueueWaitMs() {
+      return queueWaitMs;
+    }
+  }
+}
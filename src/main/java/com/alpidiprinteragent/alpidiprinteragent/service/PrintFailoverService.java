@@ -0,0 +1,195 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.print.PrintService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PrintFailoverService {
+
+  private static final Logger logger = LoggerFactory.getLogger(PrintFailoverService.class);
+
+  private final int failureThreshold;
+  private final long openDurationMs;
+  private final int maxAttempts;
+  private final long backoffMs;
+  private final ConfigService configService;
+  private final PrinterService printerService;
+  private final Map<String, PrinterCircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+  public PrintFailoverService(
+      @Value("${printer.circuit-breaker.failure-threshold:3}") int failureThreshold,
+      @Value("${printer.circuit-breaker.open-duration-ms:30000}") long openDurationMs,
+      @Value("${printer.retry.max-attempts:3}") int maxAttempts,
+      @Value("${printer.retry.backoff-ms:1000}") long backoffMs,
+      ConfigService configService,
+      PrinterService printerService) {
+    this.failureThreshold = failureThreshold;
+    this.openDurationMs = openDurationMs;
+    this.maxAttempts = maxAttempts;
+    this.backoffMs = backoffMs;
+    this.configService = configService;
+    this.printerService = printerService;
+  }
+
+  public PrintOutcome print(String printerName, PrintDocument document) throws Exception {
+    return print(printerName, document, PrinterLanguage.PDF);
+  }
+
+  public PrintOutcome print(String printerName, PrintDocument document, PrinterLanguage language)
+      throws Exception {
+    return print(printerName, document, language, true);
+  }
+
+  // Without failover the job is only tried on the given printer, e.g. for the rest of a document
+  // whose first part already printed there
+  public PrintOutcome print(
+      String printerName, PrintDocument document, PrinterLanguage language, boolean failover)
+      throws Exception {
+    List<String> candidates = new ArrayList<>();
+    candidates.add(printerName);
+    String fallback = failover ? configService.getFallbackPrinter() : null;
+    if (fallback != null && !fallback.isBlank() && !fallback.equalsIgnoreCase(printerName)) {
+      // A raw label job can only fail over to a printer that speaks the same language
+      if (!language.isRaw() || configService.isRawCapable(fallback)) {
+        candidates.add(fallback);
+      }
+    }
+
+    // Only jobs that never reached a printer are tried again. Each candidate is tried once per
+    // run; the next run comes after a backoff that the dispatcher waits out off the printer's
+    // thread, so the jobs queued behind this one are not held up.
+    PrintDispatcher.Run run = PrintDispatcher.currentRun();
+    // Counts the attempts of earlier runs of the same job too
+    int attempts = run != null ? run.takeFailedAttempts() : 0;
+    boolean acquired = false;
+    Exception lastError = null;
+    for (String target : candidates) {
+      if (attempts >= maxAttempts) {
+        break;
+      }
+      PrinterCircuitBreaker breaker = getBreaker(target);
+      if (!breaker.tryAcquire()) {
+        continue;
+      }
+      acquired = true;
+      attempts++;
+      try {
+        printerService.print(target, document, language);
+        breaker.onSuccess();
+        submitted(run);
+        return new PrintOutcome(target, attempts, !target.equalsIgnoreCase(printerName));
+      } catch (PrintJobTracker.CanceledException | PrinterService.DocumentException e) {
+        // Says nothing about the printer
+        breaker.release();
+        throw e;
+      } catch (PrinterService.NotSubmittedException e) {
+        breaker.onFailure(e.getMessage());
+        lastError = e;
+        logger.warn("Print attempt {} on '{}' failed: {}", attempts, target, e.getMessage());
+      } catch (SubmitWatchdog.SubmitTimeoutException e) {
+        // The abandoned driver call may still spool the job
+        breaker.onFailure(e.getMessage());
+        submitted(run);
+        throw e;
+      } catch (Exception e) {
+        // The driver may already have spooled the job, so another attempt could print it twice
+        breaker.onFailure(e.getMessage());
+        submitted(run);
+        throw e;
+      }
+    }
+
+    if (!acquired) {
+      throw new CircuitOpenException(
+          "Printer unavailable, circuit open for: " + String.join(", ", candidates));
+    }
+    if (run != null && run.isRetryable() && attempts < maxAttempts) {
+      run.addFailedAttempts(attempts);
+      throw new PrintDispatcher.RetryLaterException(
+          backoffMs << (run.getNumber() - 1), lastError);
+    }
+    throw lastError;
+  }
+
+  private static void submitted(PrintDispatcher.Run run) {
+    if (run != null) {
+      run.submitted();
+    }
+  }
+
+  public boolean isCircuitOpen(String printerName) {
+    PrinterCircuitBreaker breaker = breakers.get(printerName.toLowerCase());
+    return breaker != null && breaker.isOpen();
+  }
+
+  public Collection<PrinterCircuitBreaker> getBreakers() {
+    return breakers.values();
+  }
+
+  // Lets the next job through to an open printer as soon as it reports it is ready again
+  @Scheduled(fixedDelayString = "${printer.circuit-breaker.probe-interval-ms:10000}")
+  public void probeOpenCircuits() {
+    for (PrinterCircuitBreaker breaker : breakers.values()) {
+      if (breaker.getState() != PrinterCircuitBreaker.State.OPEN) {
+        continue;
+      }
+      try {
+        PrintService service = printerService.findPrintService(breaker.getPrinterName());
+        if (printerService.isAcceptingJobs(service)) {
+          breaker.allowTrial();
+          logger.info(
+              "Printer '{}' is accepting jobs again, circuit half-open", breaker.getPrinterName());
+        }
+      } catch (Exception e) {
+        // Still missing, keep the circuit open
+      }
+    }
+  }
+
+  private PrinterCircuitBreaker getBreaker(String printerName) {
+    return breakers.computeIfAbsent(
+        printerName.toLowerCase(),
+        k -> new PrinterCircuitBreaker(printerName, failureThreshold, openDurationMs));
+  }
+
+  public static class CircuitOpenException extends Exception {
+    public CircuitOpenException(String message) {
+      super(message);
+    }
+  }
+
+  public static class PrintOutcome {
+    private final String printerName;
+    private final int attempts;
+    private final boolean failedOver;
+
+    public PrintOutcome(String printerName, int attempts, boolean failedOver) {
+      this.printerName = printerName;
+      this.attempts = attempts;
+      this.failedOver = failedOver;
+    }
+
+    public String getPrinterName() {
+      return printerName;
+    }
+
+    public int getAttempts() {
+      return attempts;
+    }
+
+    public boolean isFailedOver() {
+      return failedOver;
+    }
+  }
+}
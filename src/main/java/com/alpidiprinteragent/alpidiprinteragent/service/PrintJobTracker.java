@@ -0,0 +1,485 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Pattern;
+import javax.print.CancelablePrintJob;
+import javax.print.DocPrintJob;
+import javax.print.PrintException;
+import javax.print.event.PrintJobEvent;
+import javax.print.event.PrintJobListener;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PrintJobTracker {
+
+  private static final Pattern JOB_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+  private static final ThreadLocal<TrackedJob> current = new ThreadLocal<>();
+
+  public enum State {
+    QUEUED,
+    PRINTING,
+    TRANSFERRED,
+    REQUIRES_ATTENTION,
+    // The print service stopped reporting without confirming completion
+    SUBMITTED,
+    COMPLETED,
+    FAILED,
+    CANCELED
+  }
+
+  // What each OS job of a print job has reported so far
+  private enum Outcome {
+    PENDING,
+    ENDED_UNCONFIRMED,
+    COMPLETED
+  }
+
+  private final int historySize;
+  private final long completionTimeoutMs;
+  private final MetricsService metricsService;
+  private final IppClient ippClient;
+  private final Map<String, TrackedJob> jobs = new ConcurrentHashMap<>();
+  private final Queue<String> finishedJobs = new ConcurrentLinkedQueue<>();
+
+  public PrintJobTracker(
+      @Value("${jobs.history-size:1000}") int historySize,
+      @Value("${jobs.completion-timeout-ms:600000}") long completionTimeoutMs,
+      MetricsService metricsService,
+      IppClient ippClient) {
+    this.historySize = historySize;
+    this.completionTimeoutMs = completionTimeoutMs;
+    this.metricsService = metricsService;
+    this.ippClient = ippClient;
+    metricsService.registerGauge("jobs.active", () -> jobs.size() - finishedJobs.size());
+  }
+
+  // The caller may choose the ID, so that it can cancel a job whose request is still waiting
+  public TrackedJob create(String jobId, String printerName, long startNanos)
+      throws JobException {
+    String id = jobId != null && !jobId.isBlank() ? jobId.trim() : UUID.randomUUID().toString();
+    if (!JOB_ID.matcher(id).matches()) {
+      throw new JobException(
+          "INVALID_JOB_ID", "Job ID must be 1-64 letters, digits, '.', '_' or '-'");
+    }
+    TrackedJob job = new TrackedJob(id, printerName, startNanos);
+    if (jobs.putIfAbsent(id, job) != null) {
+      throw new JobException("JOB_ID_IN_USE", "Job ID is already in use: " + id);
+    }
+    return job;
+  }
+
+  public TrackedJob getJob(String jobId) {
+    return jobs.get(jobId);
+  }
+
+  public List<TrackedJob> getJobs() {
+    List<TrackedJob> result = new ArrayList<>(jobs.values());
+    result.sort(Comparator.comparingLong(TrackedJob::getCreatedAt).reversed());
+    return result;
+  }
+
+  public TrackedJob cancel(String jobId) throws JobException {
+    TrackedJob job = jobs.get(jobId);
+    if (job == null) {
+      throw new JobException("JOB_NOT_FOUND", "Print job not found: " + jobId);
+    }
+    job.cancel();
+    return job;
+  }
+
+  // Some print services never report the end of a job; those are closed as SUBMITTED
+  @Scheduled(fixedDelayString = "${jobs.sweep-interval-ms:60000}")
+  public void closeSilentJobs() {
+    long now = System.currentTimeMillis();
+    for (TrackedJob job : jobs.values()) {
+      job.closeIfSilent(now - completionTimeoutMs);
+    }
+  }
+
+  // IPP servers do not push job events, so jobs submitted over IPP are polled
+  @Scheduled(fixedDelayString = "${jobs.ipp-poll-interval-ms:2000}")
+  public void pollIppJobs() {
+    for (TrackedJob job : jobs.values()) {
+      if (!job.isFinished()) {
+        job.pollIppJobs();
+      }
+    }
+  }
+
+  // Used by PrinterService to follow the OS jobs of the print job running on this thread
+  static TrackedJob current() {
+    return current.get();
+  }
+
+  // Runs one submission for jobs merged into a single document; the OS jobs it creates are
+  // followed for every one of them. Each job must have been started with startMerged.
+  public static <T> T attachMerged(List<TrackedJob> merged, Callable<T> task) throws Exception {
+    TrackedJob lead = merged.get(0);
+    lead.companions = List.copyOf(merged.subList(1, merged.size()));
+    current.set(lead);
+    try {
+      return task.call();
+    } finally {
+      current.remove();
+    }
+  }
+
+  private void finished(TrackedJob job) {
+    State state = job.getState();
+    metricsService.increment("jobs." + state.name().toLowerCase());
+    if (state == State.COMPLETED) {
+      metricsService.recordTime("print.endToEnd", job.getEndToEndMs());
+    }
+
+    finishedJobs.add(job.jobId);
+    while (finishedJobs.size() > historySize) {
+      String oldest = finishedJobs.poll();
+      if (oldest != null) {
+        jobs.remove(oldest);
+      }
+    }
+  }
+
+  public class TrackedJob {
+    private final String jobId;
+    private final String printerName;
+    private final long createdAt = System.currentTimeMillis();
+    private final long startNanos;
+    // DocPrintJobs, or IppClient.JobHandles for jobs submitted over IPP
+    private final Map<Object, Outcome> printJobs = new ConcurrentHashMap<>();
+    // Jobs printed in the same merged document; only set on the one whose thread submits it
+    private volatile List<TrackedJob> companions = List.of();
+    private State state = State.QUEUED;
+    private Long submittedAt;
+    private boolean canceled;
+    private boolean merged;
+    private Long finishedAt;
+    private Long endToEndMs;
+    private String error;
+
+    private TrackedJob(String jobId, String printerName, long startNanos) {
+      this.jobId = jobId;
+      this.printerName = printerName;
+      this.startNanos = startNanos;
+    }
+
+    public String getJobId() {
+      return jobId;
+    }
+
+    public String getPrinterName() {
+      return printerName;
+    }
+
+    public long getCreatedAt() {
+      return createdAt;
+    }
+
+    public synchronized State getState() {
+      return state;
+    }
+
+    public synchronized Long getFinishedAt() {
+      return finishedAt;
+    }
+
+    // From request receipt to the printer confirming completion
+    public synchronized Long getEndToEndMs() {
+      return endToEndMs;
+    }
+
+    public synchronized String getError() {
+      return error;
+    }
+
+    public int getPrintJobCount() {
+      return printJobs.size();
+    }
+
+    public synchronized boolean isFinished() {
+      return state == State.SUBMITTED
+          || state == State.COMPLETED
+          || state == State.FAILED
+          || state == State.CANCELED;
+    }
+
+    // Runs the submission with this job visible to PrinterService; a job canceled while queued
+    // is not started
+    public <T> T attach(Callable<T> task) throws Exception {
+      synchronized (this) {
+        checkNotCanceled();
+        state = State.PRINTING;
+      }
+      current.set(this);
+      try {
+        return task.call();
+      } finally {
+        current.remove();
+      }
+    }
+
+    // Claims a queued job for a merged document; false if it was canceled while waiting
+    public synchronized boolean startMerged() {
+      if (canceled) {
+        return false;
+      }
+      merged = true;
+      state = State.PRINTING;
+      return true;
+    }
+
+    public synchronized void checkNotCanceled() throws CanceledException {
+      if (canceled) {
+        throw new CanceledException("Print job was canceled: " + jobId);
+      }
+    }
+
+    // The listener is added before printing, so no event of a fast print service is missed
+    void register(DocPrintJob printJob) {
+      printJobs.put(printJob, Outcome.PENDING);
+      printJob.addPrintJobListener(new Listener(printJob));
+      companions.forEach(companion -> companion.register(printJob));
+    }
+
+    void register(IppClient.JobHandle ippJob) {
+      printJobs.put(ippJob, Outcome.PENDING);
+      companions.forEach(companion -> companion.register(ippJob));
+    }
+
+    // The attempt threw; its late events must not decide the job's outcome
+    void discard(Object printJob) {
+      printJobs.remove(printJob);
+      companions.forEach(companion -> companion.discard(printJob));
+    }
+
+    public void submitted() {
+      synchronized (this) {
+        submittedAt = System.currentTimeMillis();
+      }
+      checkAllEnded();
+    }
+
+    public void failed(String message) {
+      synchronized (this) {
+        if (isFinished()) {
+          return;
+        }
+        error = message;
+        finish(canceled ? State.CANCELED : State.FAILED);
+      }
+      finished(this);
+    }
+
+    private void cancel() throws JobException {
+      List<Object> toCancel;
+      synchronized (this) {
+        if (isFinished()) {
+          throw new JobException("JOB_ALREADY_DONE", "Print job has already ended: " + jobId);
+        }
+        if (state == State.QUEUED) {
+          canceled = true;
+          return;
+        }
+        // Canceling the OS job would take the other jobs in the document with it
+        if (merged) {
+          throw new JobException(
+              "JOB_NOT_CANCELABLE", "Print job was merged with other jobs: " + jobId);
+        }
+        toCancel = new ArrayList<>(printJobs.keySet());
+        if (toCancel.isEmpty()
+            || !toCancel.stream().allMatch(TrackedJob::isCancelable)) {
+          throw new JobException(
+              "JOB_NOT_CANCELABLE", "The print service cannot cancel this job: " + jobId);
+        }
+        canceled = true;
+      }
+      for (Object printJob : toCancel) {
+        try {
+          if (printJob instanceof IppClient.JobHandle ippJob) {
+            IppClient.IppResponse response =
+                ippClient.cancelJob(ippJob.getPrinterUri(), ippJob.getJobId());
+            if (!response.isSuccessful()) {
+              throw new JobException(
+                  "JOB_NOT_CANCELABLE",
+                  String.format("IPP server refused to cancel (0x%04x)", response.getStatusCode()));
+            }
+          } else {
+            ((CancelablePrintJob) printJob).cancel();
+          }
+        } catch (PrintException | IOException e) {
+          throw new JobException("JOB_NOT_CANCELABLE", e.getMessage());
+        }
+      }
+    }
+
+    private static boolean isCancelable(Object printJob) {
+      return printJob instanceof IppClient.JobHandle || printJob instanceof CancelablePrintJob;
+    }
+
+    // Maps the IPP job-state (RFC 8011 5.3.7) onto the events a javax.print service would send
+    private void pollIppJobs() {
+      for (Map.Entry<Object, Outcome> entry : printJobs.entrySet()) {
+        if (!(entry.getKey() instanceof IppClient.JobHandle ippJob)
+            || entry.getValue() != Outcome.PENDING) {
+          continue;
+        }
+        Integer jobState;
+        try {
+          jobState =
+              ippClient
+                  .getJobAttributes(ippJob.getPrinterUri(), ippJob.getJobId())
+                  .getInt("job-state");
+        } catch (IOException e) {
+          // Try again on the next poll; the sweep closes jobs the server never reports on
+          continue;
+        }
+        if (jobState == null) {
+          continue;
+        }
+        switch (jobState) {
+          case 5 -> onEvent(ippJob, PrintJobEvent.DATA_TRANSFER_COMPLETE);
+          case 6 -> onEvent(ippJob, PrintJobEvent.REQUIRES_ATTENTION);
+          case 7 -> onEvent(ippJob, PrintJobEvent.JOB_CANCELED);
+          case 8 -> onEvent(ippJob, PrintJobEvent.JOB_FAILED);
+          case 9 -> onEvent(ippJob, PrintJobEvent.JOB_COMPLETE);
+          default -> {}
+        }
+      }
+    }
+
+    private void onEvent(Object printJob, int reason) {
+      boolean ended = false;
+      synchronized (this) {
+        if (!printJobs.containsKey(printJob) || isFinished()) {
+          return;
+        }
+        switch (reason) {
+          case PrintJobEvent.DATA_TRANSFER_COMPLETE -> {
+            if (state == State.PRINTING) {
+              state = State.TRANSFERRED;
+            }
+          }
+          case PrintJobEvent.REQUIRES_ATTENTION -> state = State.REQUIRES_ATTENTION;
+          case PrintJobEvent.JOB_COMPLETE -> printJobs.put(printJob, Outcome.COMPLETED);
+          case PrintJobEvent.JOB_FAILED -> {
+            error = "Print service reported the job as failed";
+            finish(State.FAILED);
+            ended = true;
+          }
+          case PrintJobEvent.JOB_CANCELED -> {
+            finish(State.CANCELED);
+            ended = true;
+          }
+          case PrintJobEvent.NO_MORE_EVENTS ->
+              printJobs.replace(printJob, Outcome.PENDING, Outcome.ENDED_UNCONFIRMED);
+          default -> {}
+        }
+      }
+      if (ended) {
+        finished(this);
+      } else if (reason == PrintJobEvent.JOB_COMPLETE || reason == PrintJobEvent.NO_MORE_EVENTS) {
+        checkAllEnded();
+      }
+    }
+
+    // Once submission is over and every OS job has reported its end, the job has ended
+    private void checkAllEnded() {
+      synchronized (this) {
+        if (submittedAt == null
+            || isFinished()
+            || printJobs.containsValue(Outcome.PENDING)) {
+          return;
+        }
+        boolean confirmed =
+            !printJobs.isEmpty()
+                && printJobs.values().stream().allMatch(outcome -> outcome == Outcome.COMPLETED);
+        finish(confirmed ? State.COMPLETED : State.SUBMITTED);
+      }
+      finished(this);
+    }
+
+    private void closeIfSilent(long submittedBefore) {
+      synchronized (this) {
+        if (submittedAt == null || isFinished() || submittedAt > submittedBefore) {
+          return;
+        }
+        finish(State.SUBMITTED);
+      }
+      finished(this);
+    }
+
+    private void finish(State finalState) {
+      state = finalState;
+      finishedAt = System.currentTimeMillis();
+      endToEndMs = (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    private class Listener implements PrintJobListener {
+      private final DocPrintJob printJob;
+
+      Listener(DocPrintJob printJob) {
+        this.printJob = printJob;
+      }
+
+      @Override
+      public void printDataTransferCompleted(PrintJobEvent event) {
+        onEvent(printJob, PrintJobEvent.DATA_TRANSFER_COMPLETE);
+      }
+
+      @Override
+      public void printJobCompleted(PrintJobEvent event) {
+        onEvent(printJob, PrintJobEvent.JOB_COMPLETE);
+      }
+
+      @Override
+      public void printJobFailed(PrintJobEvent event) {
+        onEvent(printJob, PrintJobEvent.JOB_FAILED);
+      }
+
+      @Override
+      public void printJobCanceled(PrintJobEvent event) {
+        onEvent(printJob, PrintJobEvent.JOB_CANCELED);
+      }
+
+      @Override
+      public void printJobNoMoreEvents(PrintJobEvent event) {
+        onEvent(printJob, PrintJobEvent.NO_MORE_EVENTS);
+      }
+
+      @Override
+      public void printJobRequiresAttention(PrintJobEvent event) {
+        onEvent(printJob, PrintJobEvent.REQUIRES_ATTENTION);
+      }
+    }
+  }
+
+  public static class CanceledException extends Exception {
+    public CanceledException(String message) {
+      super(message);
+    }
+  }
+
+  public static class JobException extends Exception {
+    private final String errorCode;
+
+    public JobException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+}
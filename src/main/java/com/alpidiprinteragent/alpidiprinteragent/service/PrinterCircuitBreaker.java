@@ -0,0 +1,112 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+public class PrinterCircuitBreaker {
+
+  public enum State {
+    CLOSED,
+    OPEN,
+    HALF_OPEN
+  }
+
+  private final String printerName;
+  private final int failureThreshold;
+  private final long openDurationMs;
+
+  private State state = State.CLOSED;
+  private int consecutiveFailures;
+  private long openedAt;
+  private boolean trialInFlight;
+  private long totalFailures;
+  private long rejectedCalls;
+  private String lastError;
+
+  public PrinterCircuitBreaker(String printerName, int failureThreshold, long openDurationMs) {
+    this.printerName = printerName;
+    this.failureThreshold = failureThreshold;
+    this.openDurationMs = openDurationMs;
+  }
+
+  // Closed lets everything through; half-open lets a single trial job through
+  public synchronized boolean tryAcquire() {
+    if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openDurationMs) {
+      state = State.HALF_OPEN;
+    }
+    switch (state) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (!trialInFlight) {
+          trialInFlight = true;
+          return true;
+        }
+        rejectedCalls++;
+        return false;
+      default:
+        rejectedCalls++;
+        return false;
+    }
+  }
+
+  // Slow submissions are not failures: large documents take long on healthy printers, and a
+  // driver that hangs is cut off by the submit watchdog, which reports a failure
+  public synchronized void onSuccess() {
+    state = State.CLOSED;
+    consecutiveFailures = 0;
+    trialInFlight = false;
+  }
+
+  public synchronized void onFailure(String error) {
+    totalFailures++;
+    consecutiveFailures++;
+    lastError = error;
+    trialInFlight = false;
+    if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+      state = State.OPEN;
+      openedAt = System.currentTimeMillis();
+    }
+  }
+
+  // The call ended without telling anything about the printer, e.g. it was canceled
+  public synchronized void release() {
+    trialInFlight = false;
+  }
+
+  // Called by the background probe once the printer reports it is accepting jobs again
+  public synchronized void allowTrial() {
+    if (state == State.OPEN) {
+      state = State.HALF_OPEN;
+    }
+  }
+
+  public synchronized boolean isOpen() {
+    return state == State.OPEN && System.currentTimeMillis() - openedAt < openDurationMs;
+  }
+
+  public synchronized State getState() {
+    return state;
+  }
+
+  public String getPrinterName() {
+    return printerName;
+  }
+
+  public synchronized int getConsecutiveFailures() {
+    return consecutiveFailures;
+  }
+
+  public synchronized long getTotalFailures() {
+    return totalFailures;
+  }
+
+  public synchronized long getRejectedCalls() {
+    return rejectedCalls;
+  }
+
+  public synchronized String getLastError() {
+    return lastError;
+  }
+
+  public synchronized Long getOpenedAt() {
+    return state == State.CLOSED ? null : openedAt;
+  }
+}
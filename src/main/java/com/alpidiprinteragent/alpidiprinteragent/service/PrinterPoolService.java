@@ -0,0 +1,166 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.print.PrintService;
+import org.springframework.stereotype.Service;
+
+@Service
+public class PrinterPoolService {
+
+  private final ConfigService configService;
+  private final PrinterService printerService;
+  private final PrintFailoverService failoverService;
+  private final PrintDispatcher printDispatcher;
+
+  // Rotates the starting member so that equally loaded printers take turns
+  private final AtomicInteger nextStart = new AtomicInteger();
+
+  public PrinterPoolService(
+      ConfigService configService,
+      PrinterService printerService,
+      PrintFailoverService failoverService,
+      PrintDispatcher printDispatcher) {
+    this.configService = configService;
+    this.printerService = printerService;
+    this.failoverService = failoverService;
+    this.printDispatcher = printDispatcher;
+  }
+
+  public String selectPrinter(String poolName) throws Exception {
+    List<String> members = configService.getPrinterPool(poolName);
+    if (members == null || members.isEmpty()) {
+      throw new PoolException("PRINTER_POOL_NOT_FOUND", "Printer pool not found: " + poolName);
+    }
+
+    int start = Math.floorMod(nextStart.getAndIncrement(), members.size());
+    String selected = null;
+    int selectedLoad = Integer.MAX_VALUE;
+
+    PrintService[] installed = printerService.lookupPrintServices();
+    for (int i = 0; i < members.size(); i++) {
+      MemberStatus status = getMemberStatus(members.get((start + i) % members.size()), installed);
+      if (!status.isAvailable() || failoverService.isCircuitOpen(status.getPrinterName())) {
+        continue;
+      }
+      // Strictly less, so ties go to the member closest to the rotating start
+      if (status.getLoad() < selectedLoad) {
+        selected = status.getPrinterName();
+        selectedLoad = status.getLoad();
+      }
+    }
+
+    if (selected == null) {
+      throw new PoolException(
+          "PRINTER_POOL_UNAVAILABLE", "No printer in pool '" + poolName + "' is accepting jobs");
+    }
+    return selected;
+  }
+
+  public Map<String, List<MemberStatus>> getPoolStatus() {
+    Map<String, List<MemberStatus>> result = new LinkedHashMap<>();
+    PrintService[] installed = printerService.lookupPrintServices();
+    configService
+        .getPrinterPools()
+        .forEach(
+            (poolName, members) -> {
+              List<MemberStatus> statuses = new ArrayList<>();
+              members.forEach(member -> statuses.add(getMemberStatus(member, installed)));
+              result.put(poolName, statuses);
+            });
+    return result;
+  }
+
+  public MemberStatus getMemberStatus(String printerName) {
+    return getMemberStatus(printerName, printerService.lookupPrintServices());
+  }
+
+  // Takes the printers of one lookup, so checking a whole pool costs a single lookup
+  public MemberStatus getMemberStatus(String printerName, PrintService[] installed) {
+    // Jobs still waiting in the agent's own queue count as in flight too
+    int inFlight =
+        printerService.getInFlightCount(printerName)
+            + printDispatcher.getPendingCount(printerName);
+    PrintService service = PrinterService.findIn(installed, printerName);
+    if (service == null) {
+      // Printer was removed from the system; keep it in the pool but skip it
+      return new MemberStatus(printerName, false, false, 0, inFlight);
+    }
+    try {
+      return new MemberStatus(
+          service.getName(),
+          true,
+          printerService.isAcceptingJobs(service),
+          printerService.getQueuedJobCount(service),
+          inFlight);
+    } catch (RuntimeException e) {
+      // The queue went away between the lookup and the attribute queries
+      return new MemberStatus(printerName, false, false, 0, inFlight);
+    }
+  }
+
+  public static class PoolException extends Exception {
+    private final String errorCode;
+
+    public PoolException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+
+  public static class MemberStatus {
+    private final String printerName;
+    private final boolean installed;
+    private final boolean acceptingJobs;
+    private final int queuedJobCount;
+    private final int inFlightCount;
+
+    public MemberStatus(
+        String printerName,
+        boolean installed,
+        boolean acceptingJobs,
+        int queuedJobCount,
+        int inFlightCount) {
+      this.printerName = printerName;
+      this.installed = installed;
+      this.acceptingJobs = acceptingJobs;
+      this.queuedJobCount = queuedJobCount;
+      this.inFlightCount = inFlightCount;
+    }
+
+    public String getPrinterName() {
+      return printerName;
+    }
+
+    public boolean isInstalled() {
+      return installed;
+    }
+
+    public boolean isAcceptingJobs() {
+      return acceptingJobs;
+    }
+
+    public int getQueuedJobCount() {
+      return queuedJobCount;
+    }
+
+    public int getInFlightCount() {
+      return inFlightCount;
+    }
+
+    public int getLoad() {
+      return queuedJobCount + inFlightCount;
+    }
+
+    public boolean isAvailable() {
+      return installed && acceptingJobs;
+    }
+  }
+}
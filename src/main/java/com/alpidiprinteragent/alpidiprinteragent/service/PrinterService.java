@@ -1,13 +1,25 @@
 package com.alpidiprinteragent.alpidiprinteragent.service;
 
-import java.io.ByteArrayInputStream;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintTimings;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ConnectException;
 import java.net.URI;
+import java.net.http.HttpConnectTimeoutException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import javax.print.CancelablePrintJob;
 import javax.print.Doc;
 import javax.print.DocFlavor;
 import javax.print.DocPrintJob;
+import javax.print.FlavorException;
+import javax.print.PrintException;
 import javax.print.PrintService;
 import javax.print.PrintServiceLookup;
 import javax.print.SimpleDoc;
@@ -15,33 +27,313 @@ import javax.print.attribute.Attribute;
 import javax.print.attribute.HashPrintRequestAttributeSet;
 import javax.print.attribute.PrintRequestAttributeSet;
 import javax.print.attribute.PrintServiceAttributeSet;
+import javax.print.attribute.ResolutionSyntax;
+import javax.print.attribute.standard.PrinterIsAcceptingJobs;
 import javax.print.attribute.standard.PrinterLocation;
+import javax.print.attribute.standard.PrinterResolution;
 import javax.print.attribute.standard.PrinterURI;
+import javax.print.attribute.standard.QueuedJobCount;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PrinterService {
+  // CUPS hands this type to the printer as-is, without running any filters
+  private static final DocFlavor CUPS_RAW = new DocFlavor.INPUT_STREAM("application/vnd.cups-raw");
+
+  private final ConfigService configService;
+  private final IppClient ippClient;
+  private final SubmitWatchdog submitWatchdog;
+  private final PdfOptimizer pdfOptimizer;
+  private final PdfRasterizer pdfRasterizer;
+
+  public PrinterService(
+      ConfigService configService,
+      IppClient ippClient,
+      SubmitWatchdog submitWatchdog,
+      PdfOptimizer pdfOptimizer,
+      PdfRasterizer pdfRasterizer) {
+    this.configService = configService;
+    this.ippClient = ippClient;
+    this.submitWatchdog = submitWatchdog;
+    this.pdfOptimizer = pdfOptimizer;
+    this.pdfRasterizer = pdfRasterizer;
+  }
+
   public List<String> getPrinters() {
     PrintService[] services = PrintServiceLookup.lookupPrintServices(null, null);
     return Arrays.stream(services).map(PrintService::getName).collect(Collectors.toList());
   }
 
+  // Jobs this agent has handed to each printer and that have not returned yet
+  private final Map<String, AtomicInteger> inFlightJobs = new ConcurrentHashMap<>();
+
   public void printPdf(String printerName, byte[] pdfData) throws Exception {
-    PrintService[] services = PrintServiceLookup.lookupPrintServices(null, null);
+    printPdf(printerName, PrintDocument.of(pdfData));
+  }
+
+  public void printPdf(String printerName, PrintDocument document) throws Exception {
+    print(printerName, document, PrinterLanguage.PDF);
+  }
+
+  public void print(String printerName, PrintDocument document, PrinterLanguage language)
+      throws Exception {
+    String ippUri = configService.getIppPrinterUri(printerName);
+    if (ippUri != null) {
+      PrintDocument optimized =
+          language.isRaw() ? document : pdfOptimizer.optimize(document, null);
+      printIpp(printerName, URI.create(ippUri), optimized, language);
+      return;
+    }
 
-    PrintService selectedPrinter =
-        Arrays.stream(services)
-            .filter(p -> p.getName().equalsIgnoreCase(printerName))
-            .findFirst()
-            .orElseThrow(() -> new Exception("Printer not found: " + printerName));
+    long lookupStart = System.nanoTime();
+    PrintService selectedPrinter;
+    try {
+      selectedPrinter = findPrintService(printerName);
+    } catch (Exception e) {
+      throw new NotSubmittedException(e.getMessage(), e);
+    } finally {
+      PrintTimings.recordCurrent("lookup", lookupStart);
+    }
+    // Rasterized pages are sized by the renderer, so optimizing them first gains nothing
+    boolean rasterize = !language.isRaw() && pdfRasterizer.accepts(printerName);
+    if (!language.isRaw() && !rasterize) {
+      document = pdfOptimizer.optimize(document, getResolutionDpi(selectedPrinter));
+    }
 
-    DocFlavor flavor = DocFlavor.INPUT_STREAM.AUTOSENSE;
     DocPrintJob job = selectedPrinter.createPrintJob();
+    PrintJobTracker.TrackedJob tracked = PrintJobTracker.current();
+    if (tracked != null) {
+      tracked.checkNotCanceled();
+      tracked.register(job);
+    }
+
+    try {
+      if (rasterize) {
+        long loadStart = System.nanoTime();
+        PdfRasterizer.RasterPages opened;
+        try {
+          opened = pdfRasterizer.open(document, getResolutionDpi(selectedPrinter));
+        } catch (IOException e) {
+          throw new DocumentException("Cannot read PDF: " + e.getMessage(), e);
+        }
+        try (PdfRasterizer.RasterPages pages = opened) {
+          PrintTimings.recordCurrent("pdfLoad", loadStart);
+          Doc doc = new SimpleDoc(pages, DocFlavor.SERVICE_FORMATTED.PAGEABLE, null);
+          submit(selectedPrinter, job, doc, document.size(), pages::close);
+        }
+      } else {
+        DocFlavor flavor =
+            language.isRaw() ? rawFlavor(selectedPrinter) : DocFlavor.INPUT_STREAM.AUTOSENSE;
+        InputStream source;
+        try {
+          source = document.openStream();
+        } catch (IOException e) {
+          throw new DocumentException("Cannot read document: " + e.getMessage(), e);
+        }
+        try (SubmitWatchdog.FencedInputStream in = new SubmitWatchdog.FencedInputStream(source)) {
+          Doc doc = new SimpleDoc(in, flavor, null);
+          submit(selectedPrinter, job, doc, document.size(), in::fence);
+        }
+      }
+    } catch (Exception e) {
+      if (tracked != null) {
+        tracked.discard(job);
+        // A job canceled while spooling is not an error of the printer
+        tracked.checkNotCanceled();
+      }
+      throw e;
+    }
+  }
+
+  private void submit(
+      PrintService printer, DocPrintJob job, Doc doc, long documentSize, Runnable release)
+      throws Exception {
+    PrintRequestAttributeSet attrs = new HashPrintRequestAttributeSet();
+    // An abandoned submission still occupies the printer until the driver call returns
+    AtomicInteger inFlight = inFlightCounter(printer.getName());
+    inFlight.incrementAndGet();
+    long spoolStart = System.nanoTime();
+    try {
+      submitWatchdog.run(
+          printer.getName(),
+          documentSize,
+          () -> {
+            try {
+              job.print(doc, attrs);
+              return null;
+            } finally {
+              inFlight.decrementAndGet();
+            }
+          },
+          () -> abandon(job, release));
+    } catch (PrintException e) {
+      // The driver refused the document type before reading any of it
+      if (e instanceof FlavorException) {
+        throw new NotSubmittedException(e.getMessage(), e);
+      }
+      throw e;
+    } finally {
+      PrintTimings.recordCurrent("spool", spoolStart);
+    }
+  }
+
+  // The document buffer is released once the caller gives up, so the driver must not read it
+  private void abandon(DocPrintJob job, Runnable release) {
+    release.run();
+    if (job instanceof CancelablePrintJob cancelable) {
+      try {
+        cancelable.cancel();
+      } catch (PrintException e) {
+        // The driver may not have created the OS job yet
+      }
+    }
+  }
+
+  // Skips the print service lookup; the document is streamed to the IPP server as it is read
+  private void printIpp(
+      String printerName, URI printerUri, PrintDocument document, PrinterLanguage language)
+      throws Exception {
+    PrintJobTracker.TrackedJob tracked = PrintJobTracker.current();
+    if (tracked != null) {
+      tracked.checkNotCanceled();
+    }
+    String format =
+        language.isRaw() ? IppClient.rawDocumentFormat(printerUri) : "application/pdf";
+    String jobName = tracked != null ? tracked.getJobId() : "alpidi-print";
+
+    InputStream source;
+    try {
+      source = document.openStream();
+    } catch (IOException e) {
+      throw new DocumentException("Cannot read document: " + e.getMessage(), e);
+    }
+
+    // Bounded like driver submissions; an abandoned upload fails on its next read of the document
+    AtomicInteger inFlight = inFlightCounter(printerName);
+    inFlight.incrementAndGet();
+    IppClient.IppResponse response;
+    try (SubmitWatchdog.FencedInputStream in = new SubmitWatchdog.FencedInputStream(source)) {
+      long spoolStart = System.nanoTime();
+      try {
+        response =
+            submitWatchdog.run(
+                printerName,
+                document.size(),
+                () -> {
+                  try {
+                    return ippClient.printJob(printerUri, jobName, format, in);
+                  } finally {
+                    inFlight.decrementAndGet();
+                  }
+                },
+                in::fence);
+      } catch (ConnectException | HttpConnectTimeoutException e) {
+        throw new NotSubmittedException("IPP server unreachable: " + e.getMessage(), e);
+      } finally {
+        PrintTimings.recordCurrent("spool", spoolStart);
+      }
+    }
+
+    // A rejected job was not queued, so it can go to another printer
+    if (!response.isSuccessful()) {
+      throw new NotSubmittedException(
+          String.format(
+              "IPP Print-Job rejected by %s (0x%04x)", printerName, response.getStatusCode()));
+    }
+    Integer jobId = response.getInt("job-id");
+    if (tracked != null && jobId != null) {
+      tracked.register(new IppClient.JobHandle(printerUri, jobId));
+    }
+  }
+
+  // Printer state straight from the IPP server, for printers submitted to over IPP
+  public Map<String, Object> getIppPrinterAttributes(String printerName) throws Exception {
+    String ippUri = configService.getIppPrinterUri(printerName);
+    if (ippUri == null) {
+      throw new Exception("Printer is not configured for IPP: " + printerName);
+    }
+    IppClient.IppResponse response = ippClient.getPrinterAttributes(URI.create(ippUri));
+    if (!response.isSuccessful()) {
+      throw new Exception(
+          String.format("IPP server returned status 0x%04x", response.getStatusCode()));
+    }
+    return response.getAttributes();
+  }
+
+  public PrintService findPrintService(String printerName) throws Exception {
+    PrintService service = findIn(lookupPrintServices(), printerName);
+    if (service == null) {
+      throw new Exception("Printer not found: " + printerName);
+    }
+    return service;
+  }
+
+  // Every lookup enumerates all OS queues, so callers checking several printers look up once
+  public PrintService[] lookupPrintServices() {
+    return PrintServiceLookup.lookupPrintServices(null, null);
+  }
+
+  // The installed printer with this name from one lookup, or null
+  public static PrintService findIn(PrintService[] services, String printerName) {
+    return Arrays.stream(services)
+        .filter(p -> p.getName().equalsIgnoreCase(printerName))
+        .findFirst()
+        .orElse(null);
+  }
+
+  // The driver's default resolution, or null if it does not report one
+  public Integer getResolutionDpi(PrintService service) {
+    Object resolution = service.getDefaultAttributeValue(PrinterResolution.class);
+    return resolution instanceof PrinterResolution dpi
+        ? dpi.getCrossFeedResolution(ResolutionSyntax.DPI)
+        : null;
+  }
+
+  public int getInFlightCount(String printerName) {
+    AtomicInteger counter = inFlightJobs.get(printerName.toLowerCase());
+    return counter != null ? counter.get() : 0;
+  }
+
+  // Number of jobs waiting in the OS queue, or 0 if the driver does not report it
+  public int getQueuedJobCount(PrintService service) {
+    QueuedJobCount queued = service.getAttribute(QueuedJobCount.class);
+    return queued != null ? queued.getValue() : 0;
+  }
+
+  // Printers that do not report the attribute are assumed to accept jobs
+  public boolean isAcceptingJobs(PrintService service) {
+    PrinterIsAcceptingJobs accepting = service.getAttribute(PrinterIsAcceptingJobs.class);
+    return accepting == null || accepting != PrinterIsAcceptingJobs.NOT_ACCEPTING_JOBS;
+  }
+
+  // The Windows spooler submits auto-sensed streams with the RAW datatype, so they are not rendered
+  private DocFlavor rawFlavor(PrintService service) {
+    return service.isDocFlavorSupported(CUPS_RAW) ? CUPS_RAW : DocFlavor.INPUT_STREAM.AUTOSENSE;
+  }
+
+  private AtomicInteger inFlightCounter(String printerName) {
+    return inFlightJobs.computeIfAbsent(printerName.toLowerCase(), k -> new AtomicInteger());
+  }
+
+  // Nothing reached the printer, so the job can be tried again or on another printer
+  public static class NotSubmittedException extends Exception {
+    public NotSubmittedException(String message) {
+      super(message);
+    }
+
+    public NotSubmittedException(String message, Throwable cause) {
+      super(message, cause);
+    }
+  }
+
+  // The document cannot be printed as it is; another attempt or printer would fail the same way
+  public static class DocumentException extends Exception {
+    public DocumentException(String message) {
+      super(message);
+    }
 
-    try (ByteArrayInputStream bais = new ByteArrayInputStream(pdfData)) {
-      Doc doc = new SimpleDoc(bais, flavor, null);
-      PrintRequestAttributeSet attrs = new HashPrintRequestAttributeSet();
-      job.print(doc, attrs);
+    public DocumentException(String message, Throwable cause) {
+      super(message, cause);
     }
   }
 
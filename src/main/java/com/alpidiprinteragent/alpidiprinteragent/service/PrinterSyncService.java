@@ -2,9 +2,14 @@ package com.alpidiprinteragent.alpidiprinteragent.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 @Service
@@ -14,46 +19,117 @@ public class PrinterSyncService {
   private String backendBaseUrl;
 
   private final ConfigService configService;
+  private final TenantPrinterService tenantPrinterService;
   private final RestTemplate restTemplate;
-  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final ObjectMapper objectMapper;
 
-  public PrinterSyncService(ConfigService configService) {
+  public PrinterSyncService(
+      ConfigService configService,
+      TenantPrinterService tenantPrinterService,
+      ObjectMapper objectMapper) {
     this.configService = configService;
+    this.tenantPrinterService = tenantPrinterService;
+    this.objectMapper = objectMapper;
     this.restTemplate = new RestTemplate();
   }
 
   @Scheduled(cron = "0 0 7 * * ?", zone = "America/New_York")
   public void syncActivePrinter() {
-    String productionPartnerUserId = configService.getProductionPartnerUserId();
+    Set<String> tenants = tenantPrinterService.getTenants();
+    if (tenants.isEmpty()) {
+      return;
+    }
 
     try {
-      String jsonResponse =
-          restTemplate.getForObject(
-              backendBaseUrl + "/api/public/printer/" + productionPartnerUserId + "/default-active",
-              String.class);
-
-      if (jsonResponse != null && !jsonResponse.isEmpty()) {
-        JsonNode root = objectMapper.readTree(jsonResponse);
-        int statusCode = root.path("statuscode").asInt();
-        boolean status = root.path("status").asBoolean();
-
-        if (statusCode == 200 && status) {
-          String printerName = root.path("data").asText();
-
-          String localPrinter = configService.getActivePrinter();
-
-          if (!printerName.equals(localPrinter)) {
-            configService.setActivePrinter(printerName, productionPartnerUserId);
-            System.out.println("[SYNC] Local active printer updated to: " + printerName);
+      Map<String, String> backendPrinters;
+      try {
+        backendPrinters = fetchDefaultPrinters(tenants);
+      } catch (HttpClientErrorException.NotFound e) {
+        // Backends without the batch endpoint are asked one tenant at a time
+        backendPrinters = new HashMap<>();
+        for (String productionPartnerUserId : tenants) {
+          String printerName = fetchDefaultPrinter(productionPartnerUserId);
+          if (printerName != null) {
+            backendPrinters.put(productionPartnerUserId, printerName);
           }
-        } else {
-          System.err.println(
-              "[SYNC] Unexpected response status: " + statusCode + ", status: " + status);
         }
       }
 
+      Map<String, String> changed = new HashMap<>();
+      backendPrinters.forEach(
+          (productionPartnerUserId, printerName) -> {
+            if (tenants.contains(productionPartnerUserId)
+                && !printerName.equals(
+                    tenantPrinterService.getActivePrinter(productionPartnerUserId))) {
+              changed.put(productionPartnerUserId, printerName);
+            }
+          });
+      tenantPrinterService.setActivePrinters(changed);
+
+      // Keep the agent-wide active printer in step for requests without a tenant
+      String legacyTenant = configService.getProductionPartnerUserId();
+      if (legacyTenant != null && changed.containsKey(legacyTenant)) {
+        configService.setActivePrinter(changed.get(legacyTenant), legacyTenant);
+      }
+
+      changed.forEach(
+          (productionPartnerUserId, printerName) ->
+              System.out.println(
+                  "[SYNC] Active printer for "
+                      + productionPartnerUserId
+                      + " updated to: "
+                      + printerName));
+
     } catch (Exception e) {
       System.err.println("[SYNC ERROR] " + e.getMessage());
     }
   }
+
+  // One request for all tenants served by this agent
+  private Map<String, String> fetchDefaultPrinters(Set<String> tenants) throws Exception {
+    Map<String, Object> request = new HashMap<>();
+    request.put("productionPartnerUserIds", List.copyOf(tenants));
+
+    String jsonResponse =
+        restTemplate.postForObject(
+            backendBaseUrl + "/api/public/printer/default-active/batch", request, String.class);
+
+    Map<String, String> printers = new HashMap<>();
+    JsonNode data = readData(jsonResponse);
+    if (data != null) {
+      data.fields()
+          .forEachRemaining(
+              entry -> {
+                if (entry.getValue().isTextual()) {
+                  printers.put(entry.getKey(), entry.getValue().asText());
+                }
+              });
+    }
+    return printers;
+  }
+
+  private String fetchDefaultPrinter(String productionPartnerUserId) throws Exception {
+    String jsonResponse =
+        restTemplate.getForObject(
+            backendBaseUrl + "/api/public/printer/" + productionPartnerUserId + "/default-active",
+            String.class);
+
+    JsonNode data = readData(jsonResponse);
+    return data != null ? data.asText() : null;
+  }
+
+  private JsonNode readData(String jsonResponse) throws Exception {
+    if (jsonResponse == null || jsonResponse.isEmpty()) {
+      return null;
+    }
+    JsonNode root = objectMapper.readTree(jsonResponse);
+    int statusCode = root.path("statuscode").asInt();
+    boolean status = root.path("status").asBoolean();
+
+    if (statusCode == 200 && status) {
+      return root.path("data");
+    }
+    System.err.println("[SYNC] Unexpected response status: " + statusCode + ", status: " + status);
+    return null;
+  }
 }
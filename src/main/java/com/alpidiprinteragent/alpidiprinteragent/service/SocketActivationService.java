@@ -0,0 +1,99 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.io.IOException;
+import java.nio.channels.Channel;
+import java.nio.channels.ServerSocketChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+// Under systemd socket activation the listening socket is handed over as stdin; Tomcat adopts it
+// instead of binding port 9000, and connections made while the JVM starts wait in its backlog
+@Service
+public class SocketActivationService
+    implements WebServerFactoryCustomizer<TomcatServletWebServerFactory> {
+
+  private static final Logger logger = LoggerFactory.getLogger(SocketActivationService.class);
+
+  private final boolean socketActivated;
+  private final long idleShutdownMs;
+  private final ApplicationContext context;
+  private final AdmissionService admissionService;
+  private final AtomicInteger activeRequests = new AtomicInteger();
+  private volatile long lastActivity = System.currentTimeMillis();
+  private volatile boolean shuttingDown;
+
+  public SocketActivationService(
+      @Value("${agent.idle-shutdown-minutes:0}") long idleShutdownMinutes,
+      ApplicationContext context,
+      AdmissionService admissionService) {
+    this.socketActivated = inheritsServerSocket();
+    this.idleShutdownMs = idleShutdownMinutes * 60_000;
+    this.context = context;
+    this.admissionService = admissionService;
+
+    if (idleShutdownMs > 0 && !socketActivated) {
+      // Nothing would start the agent again, so idle shutdown needs the socket unit
+      logger.warn("agent.idle-shutdown-minutes is ignored without systemd socket activation");
+    }
+  }
+
+  @Override
+  public void customize(TomcatServletWebServerFactory factory) {
+    if (socketActivated) {
+      logger.info("Adopting the listening socket passed by systemd");
+      factory.addConnectorCustomizers(
+          connector -> connector.setProperty("useInheritedChannel", "true"));
+    }
+  }
+
+  public boolean isSocketActivated() {
+    return socketActivated;
+  }
+
+  public void requestStarted() {
+    activeRequests.incrementAndGet();
+    lastActivity = System.currentTimeMillis();
+  }
+
+  public void requestFinished() {
+    lastActivity = System.currentTimeMillis();
+    activeRequests.decrementAndGet();
+  }
+
+  // systemd keeps listening after the exit and starts the agent again on the next connection
+  @Scheduled(fixedDelayString = "${agent.idle-check-interval-ms:60000}")
+  public void shutdownIfIdle() {
+    if (!socketActivated || idleShutdownMs <= 0 || shuttingDown) {
+      return;
+    }
+    long idleMs = System.currentTimeMillis() - lastActivity;
+    if (idleMs < idleShutdownMs
+        || activeRequests.get() > 0
+        || admissionService.getInFlightJobs() > 0) {
+      return;
+    }
+
+    shuttingDown = true;
+    logger.info("No requests for {} minutes, shutting down until the next one", idleMs / 60_000);
+    // Closing the context stops this scheduler, so the exit runs on its own thread
+    new Thread(() -> System.exit(SpringApplication.exit(context)), "idle-shutdown").start();
+  }
+
+  // Also checked before Spring starts, e.g. by the lite server, which cannot adopt the socket
+  public static boolean inheritsServerSocket() {
+    try {
+      Channel inherited = System.inheritedChannel();
+      return inherited instanceof ServerSocketChannel;
+    } catch (IOException | SecurityException e) {
+      return false;
+    }
+  }
+}
@@ -0,0 +1,286 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+// Bounds each driver submission by a timeout learned from the printer's recent submit latencies.
+// Latencies are kept per megabyte, so a large document gets a proportionally longer bound.
+@Service
+public class SubmitWatchdog {
+
+  private static final Logger logger = LoggerFactory.getLogger(SubmitWatchdog.class);
+
+  private static final double MEGABYTE = 1024 * 1024;
+
+  private final boolean enabled;
+  private final double factor;
+  private final long floorMs;
+  private final long ceilingMs;
+  private final int windowSize;
+  private final int minSamples;
+  private final MetricsService metricsService;
+  private final Map<String, LatencyWindow> windows = new ConcurrentHashMap<>();
+  private final AtomicInteger abandonedRunning = new AtomicInteger();
+  private final AtomicInteger threadCount = new AtomicInteger();
+
+  // A wedged driver call cannot be interrupted, so each submission gets a thread it can keep
+  private final ExecutorService submitters =
+      Executors.newCachedThreadPool(
+          task -> {
+            Thread thread = new Thread(task, "print-submit-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  public SubmitWatchdog(
+      @Value("${printer.submit-timeout.enabled:true}") boolean enabled,
+      @Value("${printer.submit-timeout.factor:3.0}") double factor,
+      @Value("${printer.submit-timeout.floor-ms:5000}") long floorMs,
+      @Value("${printer.submit-timeout.ceiling-ms:120000}") long ceilingMs,
+      @Value("${printer.submit-timeout.window:200}") int windowSize,
+      @Value("${printer.submit-timeout.min-samples:20}") int minSamples,
+      MetricsService metricsService) {
+    this.enabled = enabled;
+    this.factor = factor;
+    this.floorMs = floorMs;
+    this.ceilingMs = Math.max(floorMs, ceilingMs);
+    this.windowSize = Math.max(1, windowSize);
+    this.minSamples = minSamples;
+    this.metricsService = metricsService;
+    metricsService.registerGauge("print.submit.abandoned", abandonedRunning::get);
+  }
+
+  // Runs the submission; past the printer's timeout for this document size, onAbandon is called
+  // and the caller is released while the driver call is left to finish on its own
+  public <T> T run(
+      String printerName, long documentSize, Callable<T> submission, Runnable onAbandon)
+      throws Exception {
+    if (!enabled) {
+      return submission.call();
+    }
+
+    LatencyWindow window = getWindow(printerName);
+    long timeoutMs = window.getTimeoutMs(documentSize);
+    long start = System.nanoTime();
+    // Whichever of the submission and the deadline comes first settles the outcome
+    AtomicBoolean settled = new AtomicBoolean();
+    Future<T> future =
+        submitters.submit(
+            () -> {
+              try {
+                return submission.call();
+              } finally {
+                if (!settled.compareAndSet(false, true)) {
+                  abandonedRunning.decrementAndGet();
+                }
+              }
+            });
+
+    try {
+      T result = await(future, timeoutMs);
+      window.record((System.nanoTime() - start) / 1_000_000, documentSize);
+      return result;
+    } catch (TimeoutException e) {
+      if (!settled.compareAndSet(false, true)) {
+        // Finished right at the deadline
+        return await(future, Long.MAX_VALUE);
+      }
+      abandonedRunning.incrementAndGet();
+      // The timeout is recorded so a printer that is merely slower than before adapts upwards
+      window.timedOut(timeoutMs, documentSize);
+      metricsService.increment("print.submit.timeouts");
+      onAbandon.run();
+      future.cancel(true);
+      logger.warn("Submission to '{}' abandoned after {} ms", printerName, timeoutMs);
+      throw new SubmitTimeoutException(
+          "Printer did not accept the job within " + timeoutMs + " ms: " + printerName);
+    } catch (InterruptedException e) {
+      if (settled.compareAndSet(false, true)) {
+        abandonedRunning.incrementAndGet();
+        onAbandon.run();
+        future.cancel(true);
+      }
+      throw e;
+    }
+  }
+
+  private static <T> T await(Future<T> future, long timeoutMs) throws Exception {
+    try {
+      return future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      throw e.getCause() instanceof Exception cause ? cause : e;
+    }
+  }
+
+  public Collection<LatencyWindow> getWindows() {
+    List<LatencyWindow> result = new ArrayList<>(windows.values());
+    result.sort(Comparator.comparing(LatencyWindow::getPrinterName));
+    return result;
+  }
+
+  private LatencyWindow getWindow(String printerName) {
+    return windows.computeIfAbsent(
+        printerName.toLowerCase(), k -> new LatencyWindow(printerName));
+  }
+
+  // Wraps the document stream so an abandoned driver call cannot read a buffer that has already
+  // been handed to another job
+  public static class FencedInputStream extends FilterInputStream {
+    // Not a lock: fencing must not wait for a read that is blocked in the driver's stream
+    private volatile boolean fenced;
+
+    public FencedInputStream(InputStream in) {
+      super(in);
+    }
+
+    public void fence() {
+      fenced = true;
+    }
+
+    // Checked again after each read, so a read that was blocked when the submission was
+    // abandoned does not hand its bytes to the driver
+    @Override
+    public int read() throws IOException {
+      checkOpen();
+      int b = super.read();
+      checkOpen();
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      checkOpen();
+      int n = super.read(b, off, len);
+      checkOpen();
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      checkOpen();
+      long skipped = super.skip(n);
+      checkOpen();
+      return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+      checkOpen();
+      return super.available();
+    }
+
+    private void checkOpen() throws IOException {
+      if (fenced) {
+        throw new IOException("Submission was abandoned");
+      }
+    }
+  }
+
+  // Rolling window of the last submit latencies of one printer, in milliseconds per megabyte;
+  // documents under a megabyte count as one, since their latency is mostly fixed overhead
+  public class LatencyWindow {
+    private final String printerName;
+    private final long[] samples = new long[windowSize];
+    private int count;
+    private int next;
+    private long timeouts;
+    private long timeoutMsPerMb = ceilingMs;
+
+    private LatencyWindow(String printerName) {
+      this.printerName = printerName;
+    }
+
+    public String getPrinterName() {
+      return printerName;
+    }
+
+    public synchronized int getSampleCount() {
+      return count;
+    }
+
+    public synchronized long getP50MsPerMb() {
+      return percentile(0.50);
+    }
+
+    public synchronized long getP99MsPerMb() {
+      return percentile(0.99);
+    }
+
+    // The ceiling applies until enough samples have been seen
+    public synchronized long getTimeoutMsPerMb() {
+      return timeoutMsPerMb;
+    }
+
+    // Documents of unknown size get the ceiling, since their size cannot be scaled by
+    public synchronized long getTimeoutMs(long documentSize) {
+      if (documentSize < 0) {
+        return ceilingMs;
+      }
+      return (long) Math.ceil(timeoutMsPerMb * megabytes(documentSize));
+    }
+
+    public synchronized long getTimeouts() {
+      return timeouts;
+    }
+
+    synchronized void record(long millis, long documentSize) {
+      if (documentSize < 0) {
+        return;
+      }
+      samples[next] = (long) Math.ceil(millis / megabytes(documentSize));
+      next = (next + 1) % samples.length;
+      count = Math.min(count + 1, samples.length);
+      if (count >= minSamples) {
+        long learned = (long) Math.ceil(percentile(0.99) * factor);
+        timeoutMsPerMb = Math.min(ceilingMs, Math.max(floorMs, learned));
+      }
+    }
+
+    synchronized void timedOut(long millis, long documentSize) {
+      timeouts++;
+      record(millis, documentSize);
+    }
+
+    private double megabytes(long documentSize) {
+      return Math.max(1, documentSize / MEGABYTE);
+    }
+
+    private long percentile(double quantile) {
+      if (count == 0) {
+        return 0;
+      }
+      long[] sorted = Arrays.copyOf(samples, count);
+      Arrays.sort(sorted);
+      int index = (int) Math.ceil(quantile * count) - 1;
+      return sorted[Math.max(0, index)];
+    }
+  }
+
+  // The driver may still spool the abandoned job, so it is neither retried nor failed over
+  public static class SubmitTimeoutException extends Exception {
+    public SubmitTimeoutException(String message) {
+      super(message);
+    }
+  }
+}
@@ -0,0 +1,306 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+import javax.print.PrintService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TelemetryService {
+
+  private static final Logger logger = LoggerFactory.getLogger(TelemetryService.class);
+
+  private final boolean enabled;
+  private final String uploadUrl;
+  private final long uploadIntervalMs;
+  private final int maxBufferedEvents;
+  private final PrinterService printerService;
+  private final PrinterPoolService printerPoolService;
+  private final PrintFailoverService failoverService;
+  private final TenantPrinterService tenantPrinterService;
+  private final MetricsService metricsService;
+  private final ObjectMapper objectMapper;
+  private final HttpClient httpClient =
+      HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+  private final String agentId;
+  // Its own thread: an upload can block for seconds and must not delay the other scheduled tasks
+  private final ScheduledExecutorService scheduler =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "telemetry");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // Everything below is only touched under this object's lock
+  private final Map<String, String> printerStates = new HashMap<>();
+  private final List<Event> events = new ArrayList<>();
+  private final Map<String, Integer> flaps = new HashMap<>();
+  private final Map<String, Long> sentCounters = new HashMap<>();
+  private long droppedEvents;
+  private long sequence;
+  private long lastUploadAttempt;
+  private boolean backendReachable = true;
+
+  // Read by /metrics without waiting for an upload in progress
+  private volatile int bufferedEventCount;
+
+  public TelemetryService(
+      @Value("${telemetry.enabled:false}") boolean enabled,
+      @Value("${backend.base-url}") String backendBaseUrl,
+      @Value("${telemetry.sample-interval-ms:10000}") long sampleIntervalMs,
+      @Value("${telemetry.upload-interval-ms:60000}") long uploadIntervalMs,
+      @Value("${telemetry.max-buffered-events:1000}") int maxBufferedEvents,
+      PrinterService printerService,
+      PrinterPoolService printerPoolService,
+      PrintFailoverService failoverService,
+      TenantPrinterService tenantPrinterService,
+      MetricsService metricsService,
+      ObjectMapper objectMapper) {
+    this.enabled = enabled;
+    this.uploadUrl = backendBaseUrl.trim() + "/api/public/agent/telemetry";
+    this.uploadIntervalMs = uploadIntervalMs;
+    this.maxBufferedEvents = maxBufferedEvents;
+    this.printerService = printerService;
+    this.printerPoolService = printerPoolService;
+    this.failoverService = failoverService;
+    this.tenantPrinterService = tenantPrinterService;
+    this.metricsService = metricsService;
+    this.objectMapper = objectMapper;
+    this.agentId = hostName();
+
+    metricsService.registerGauge("telemetry.bufferedEvents", this::getBufferedEventCount);
+    if (enabled) {
+      scheduler.scheduleWithFixedDelay(
+          this::tick, sampleIntervalMs, sampleIntervalMs, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    scheduler.shutdownNow();
+  }
+
+  // Samples printer state every tick and uploads once per upload interval, all on one thread
+  public synchronized void tick() {
+    if (!enabled) {
+      return;
+    }
+    try {
+      sample();
+      if (System.currentTimeMillis() - lastUploadAttempt >= uploadIntervalMs) {
+        lastUploadAttempt = System.currentTimeMillis();
+        upload();
+      }
+    } catch (RuntimeException e) {
+      // A failed tick must not cancel the ones after it
+      logger.warn("Telemetry tick failed: {}", e.getMessage());
+    }
+    bufferedEventCount = events.size();
+  }
+
+  private void sample() {
+    // One lookup per tick; every printer's state is read from it
+    PrintService[] installed = printerService.lookupPrintServices();
+    Map<String, String> current = new HashMap<>();
+    for (PrintService service : installed) {
+      current.put(service.getName(), stateOf(service.getName(), installed));
+    }
+
+    current.forEach(
+        (printerName, state) -> {
+          String previous = printerStates.get(printerName);
+          if (previous == null) {
+            record(printerName, null, state);
+          } else if (!previous.equals(state)) {
+            record(printerName, previous, state);
+          }
+        });
+    printerStates.forEach(
+        (printerName, previous) -> {
+          if (!current.containsKey(printerName)) {
+            record(printerName, previous, null);
+          }
+        });
+
+    printerStates.clear();
+    printerStates.putAll(current);
+  }
+
+  private String stateOf(String printerName, PrintService[] installed) {
+    if (failoverService.isCircuitOpen(printerName)) {
+      return "CIRCUIT_OPEN";
+    }
+    PrinterPoolService.MemberStatus status =
+        printerPoolService.getMemberStatus(printerName, installed);
+    return status.isAvailable() ? "READY" : "NOT_ACCEPTING";
+  }
+
+  // A null state means the printer is not installed
+  private void record(String printerName, String from, String to) {
+    // A change that undoes the last unsent change of the same printer cancels it out
+    for (int i = events.size() - 1; i >= 0; i--) {
+      Event last = events.get(i);
+      if (last.printerName.equals(printerName)) {
+        if (equal(last.from, to)) {
+          events.remove(i);
+          flaps.merge(printerName, 1, Integer::sum);
+          return;
+        }
+        break;
+      }
+    }
+
+    events.add(new Event(printerName, from, to, System.currentTimeMillis()));
+    if (events.size() > maxBufferedEvents) {
+      events.remove(0);
+      droppedEvents++;
+    }
+  }
+
+  private void upload() {
+    Map<String, Long> counters = currentCounters();
+    Map<String, Long> counterDeltas = new LinkedHashMap<>();
+    counters.forEach(
+        (name, value) -> {
+          long delta = value - sentCounters.getOrDefault(name, 0L);
+          // The upload's own counters would make every batch non-empty
+          if (delta != 0 && !name.startsWith("telemetry.")) {
+            counterDeltas.put(name, delta);
+          }
+        });
+    if (events.isEmpty() && flaps.isEmpty() && counterDeltas.isEmpty() && droppedEvents == 0) {
+      return;
+    }
+
+    Map<String, Object> batch = new LinkedHashMap<>();
+    batch.put("agentId", agentId);
+    batch.put("productionPartnerUserIds", tenantPrinterService.getTenants());
+    batch.put("sequence", sequence + 1);
+    batch.put("events", List.copyOf(events));
+    batch.put("flaps", Map.copyOf(flaps));
+    batch.put("counters", counterDeltas);
+    batch.put("droppedEvents", droppedEvents);
+    batch.put("timestamp", System.currentTimeMillis());
+
+    try {
+      byte[] body = gzip(objectMapper.writeValueAsBytes(batch));
+      HttpRequest request =
+          HttpRequest.newBuilder(URI.create(uploadUrl))
+              .timeout(Duration.ofSeconds(10))
+              .header("Content-Type", "application/json")
+              .header("Content-Encoding", "gzip")
+              .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+              .build();
+      HttpResponse<Void> response =
+          httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+      if (response.statusCode() / 100 != 2) {
+        throw new IOException("HTTP " + response.statusCode());
+      }
+
+      sequence++;
+      events.clear();
+      flaps.clear();
+      droppedEvents = 0;
+      sentCounters.putAll(counters);
+      metricsService.increment("telemetry.uploads");
+      metricsService.increment("telemetry.uploadBytes", body.length);
+      if (!backendReachable) {
+        logger.info("Telemetry upload succeeded again");
+        backendReachable = true;
+      }
+
+    } catch (IOException e) {
+      // Kept for the next upload; the buffer is bounded by maxBufferedEvents
+      metricsService.increment("telemetry.uploadFailures");
+      if (backendReachable) {
+        logger.warn("Telemetry upload failed, buffering: {}", e.getMessage());
+        backendReachable = false;
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private Map<String, Long> currentCounters() {
+    Map<String, Long> counters = new HashMap<>();
+    ((Map<String, Object>) metricsService.snapshot().get("counters"))
+        .forEach((name, value) -> counters.put(name, ((Number) value).longValue()));
+    return counters;
+  }
+
+  private int getBufferedEventCount() {
+    return bufferedEventCount;
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+    try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+      gzip.write(data);
+    }
+    return out.toByteArray();
+  }
+
+  private static boolean equal(String a, String b) {
+    return a == null ? b == null : a.equals(b);
+  }
+
+  private static String hostName() {
+    try {
+      return InetAddress.getLocalHost().getHostName();
+    } catch (IOException e) {
+      return "unknown";
+    }
+  }
+
+  public static class Event {
+    private final String printerName;
+    private final String from;
+    private final String to;
+    private final long timestamp;
+
+    public Event(String printerName, String from, String to, long timestamp) {
+      this.printerName = printerName;
+      this.from = from;
+      this.to = to;
+      this.timestamp = timestamp;
+    }
+
+    public String getPrinterName() {
+      return printerName;
+    }
+
+    public String getFrom() {
+      return from;
+    }
+
+    public String getTo() {
+      return to;
+    }
+
+    public long getTimestamp() {
+      return timestamp;
+    }
+  }
+}
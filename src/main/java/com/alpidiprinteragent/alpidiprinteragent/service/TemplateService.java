@@ -0,0 +1,226 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.interactive.form.PDAcroForm;
+import org.apache.pdfbox.pdmodel.interactive.form.PDField;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TemplateService {
+
+  // Kept next to printer-config.json
+  private static final Path TEMPLATE_DIR = Paths.get("printer-templates");
+  private static final Pattern TEMPLATE_ID = Pattern.compile("[A-Za-z0-9._-]{1,64}");
+
+  private final MetricsService metricsService;
+  private final Map<String, byte[]> cache;
+
+  public TemplateService(
+      @Value("${templates.cache-size:32}") int cacheSize, MetricsService metricsService) {
+    this.metricsService = metricsService;
+    // Access-ordered, so the least recently printed template is evicted first
+    this.cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > cacheSize;
+          }
+        };
+    metricsService.registerGauge("templates.cached", this::getCachedCount);
+  }
+
+  public List<String> saveTemplate(String templateId, byte[] pdf) throws TemplateException {
+    checkId(templateId);
+
+    List<String> fieldNames = new ArrayList<>();
+    try (PDDocument document = Loader.loadPDF(pdf)) {
+      PDAcroForm form = document.getDocumentCatalog().getAcroForm();
+      if (form != null) {
+        form.getFields().forEach(field -> fieldNames.add(field.getFullyQualifiedName()));
+      }
+    } catch (IOException e) {
+      throw new TemplateException("INVALID_TEMPLATE", "Template is not a valid PDF");
+    }
+
+    try {
+      Files.createDirectories(TEMPLATE_DIR);
+      Path temp = Files.createTempFile(TEMPLATE_DIR, templateId, ".tmp");
+      Files.write(temp, pdf);
+      Files.move(temp, templateFile(templateId), StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      throw new TemplateException(
+          "TEMPLATE_SAVE_ERROR", "Cannot store template: " + e.getMessage());
+    }
+
+    synchronized (cache) {
+      cache.put(templateId, pdf);
+    }
+    return fieldNames;
+  }
+
+  public List<Map<String, Object>> listTemplates() {
+    List<Map<String, Object>> templates = new ArrayList<>();
+    if (!Files.isDirectory(TEMPLATE_DIR)) {
+      return templates;
+    }
+    try (Stream<Path> files = Files.list(TEMPLATE_DIR)) {
+      files
+          .filter(file -> file.getFileName().toString().endsWith(".pdf"))
+          .sorted()
+          .forEach(
+              file -> {
+                String name = file.getFileName().toString();
+                Map<String, Object> template = new LinkedHashMap<>();
+                template.put("templateId", name.substring(0, name.length() - 4));
+                try {
+                  template.put("size", Files.size(file));
+                  template.put("lastModified", Files.getLastModifiedTime(file).toMillis());
+                } catch (IOException e) {
+                  // Listed without details
+                }
+                templates.add(template);
+              });
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return templates;
+  }
+
+  public boolean deleteTemplate(String templateId) throws TemplateException {
+    checkId(templateId);
+    synchronized (cache) {
+      cache.remove(templateId);
+    }
+    try {
+      return Files.deleteIfExists(templateFile(templateId));
+    } catch (IOException e) {
+      throw new TemplateException("TEMPLATE_DELETE_ERROR", e.getMessage());
+    }
+  }
+
+  public RenderedTemplate render(String templateId, Map<String, String> fields)
+      throws TemplateException {
+    long start = System.nanoTime();
+    byte[] template = getTemplate(templateId);
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(template.length);
+    try (PDDocument document = Loader.loadPDF(template)) {
+      PDAcroForm form = document.getDocumentCatalog().getAcroForm();
+      if (form == null && !fields.isEmpty()) {
+        throw new TemplateException(
+            "TEMPLATE_FIELD_UNKNOWN", "Template has no form fields: " + templateId);
+      }
+      if (form != null) {
+        for (Map.Entry<String, String> entry : fields.entrySet()) {
+          PDField field = form.getField(entry.getKey());
+          if (field == null) {
+            throw new TemplateException(
+                "TEMPLATE_FIELD_UNKNOWN", "Unknown template field: " + entry.getKey());
+          }
+          field.setValue(entry.getValue());
+        }
+        // Printers render flattened pages reliably; live form fields are often dropped
+        form.flatten();
+      }
+      document.save(out);
+    } catch (IOException e) {
+      throw new TemplateException("TEMPLATE_RENDER_ERROR", "Cannot render: " + e.getMessage());
+    }
+
+    long renderTimeMs = (System.nanoTime() - start) / 1_000_000;
+    metricsService.recordTime("templates.render", renderTimeMs);
+    return new RenderedTemplate(out.toByteArray(), renderTimeMs);
+  }
+
+  public long getTemplateSize(String templateId) throws TemplateException {
+    return getTemplate(templateId).length;
+  }
+
+  private byte[] getTemplate(String templateId) throws TemplateException {
+    checkId(templateId);
+    synchronized (cache) {
+      byte[] cached = cache.get(templateId);
+      if (cached != null) {
+        metricsService.increment("templates.cacheHits");
+        return cached;
+      }
+    }
+
+    Path file = templateFile(templateId);
+    if (!Files.exists(file)) {
+      throw new TemplateException("TEMPLATE_NOT_FOUND", "Template not found: " + templateId);
+    }
+    try {
+      byte[] template = Files.readAllBytes(file);
+      metricsService.increment("templates.cacheMisses");
+      synchronized (cache) {
+        cache.put(templateId, template);
+      }
+      return template;
+    } catch (IOException e) {
+      throw new TemplateException("TEMPLATE_READ_ERROR", "Cannot read template: " + templateId);
+    }
+  }
+
+  private int getCachedCount() {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+  private void checkId(String templateId) throws TemplateException {
+    if (templateId == null || !TEMPLATE_ID.matcher(templateId).matches()) {
+      throw new TemplateException(
+          "INVALID_TEMPLATE_ID", "Template ID must be 1-64 letters, digits, '.', '_' or '-'");
+    }
+  }
+
+  private Path templateFile(String templateId) {
+    return TEMPLATE_DIR.resolve(templateId + ".pdf");
+  }
+
+  public static class RenderedTemplate {
+    private final byte[] pdf;
+    private final long renderTimeMs;
+
+    public RenderedTemplate(byte[] pdf, long renderTimeMs) {
+      this.pdf = pdf;
+      this.renderTimeMs = renderTimeMs;
+    }
+
+    public byte[] getPdf() {
+      return pdf;
+    }
+
+    public long getRenderTimeMs() {
+      return renderTimeMs;
+    }
+  }
+
+  public static class TemplateException extends Exception {
+    private final String errorCode;
+
+    public TemplateException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.springframework.stereotype.Service;
+
+@Service
+public class TenantPrinterService {
+
+  private final ConfigService configService;
+
+  // Print requests resolve their printer here without touching printer-config.json
+  private final Map<String, String> activePrinters = new ConcurrentHashMap<>();
+
+  private final Object persistLock = new Object();
+  private final AtomicLong version = new AtomicLong();
+  private long persistedVersion;
+
+  public TenantPrinterService(ConfigService configService, MetricsService metricsService) {
+    this.configService = configService;
+    activePrinters.putAll(configService.getTenantPrinters());
+
+    // Agents configured before tenants existed keep their single mapping
+    String legacyTenant = configService.getProductionPartnerUserId();
+    String legacyPrinter = configService.getActivePrinter();
+    if (legacyTenant != null && !legacyTenant.isBlank() && legacyPrinter != null) {
+      activePrinters.putIfAbsent(legacyTenant, legacyPrinter);
+    }
+
+    metricsService.registerGauge("tenants.count", activePrinters::size);
+  }
+
+  public String getActivePrinter(String productionPartnerUserId) {
+    return activePrinters.get(productionPartnerUserId);
+  }
+
+  public Map<String, String> getActivePrinters() {
+    return new TreeMap<>(activePrinters);
+  }
+
+  public Set<String> getTenants() {
+    return Set.copyOf(activePrinters.keySet());
+  }
+
+  public void setActivePrinter(String productionPartnerUserId, String printerName) {
+    activePrinters.put(productionPartnerUserId, printerName);
+    persist(version.incrementAndGet());
+  }
+
+  // Applies several mappings with a single write, e.g. after a backend sync
+  public void setActivePrinters(Map<String, String> printers) {
+    if (printers.isEmpty()) {
+      return;
+    }
+    activePrinters.putAll(printers);
+    persist(version.incrementAndGet());
+  }
+
+  public boolean removeTenant(String productionPartnerUserId) {
+    if (activePrinters.remove(productionPartnerUserId) == null) {
+      return false;
+    }
+    persist(version.incrementAndGet());
+    return true;
+  }
+
+  // Deletes printer-config.json and forgets the mappings held in memory with it, so a reset agent
+  // does not print to the old tenants' printers or write them back with the next change
+  public void resetConfig() {
+    synchronized (persistLock) {
+      activePrinters.clear();
+      configService.resetConfig();
+      persistedVersion = version.get();
+    }
+  }
+
+  // Writes the whole index; a caller whose change was already written by another thread returns
+  // at once, so concurrent updates share one file write
+  private void persist(long changeVersion) {
+    synchronized (persistLock) {
+      if (persistedVersion >= changeVersion) {
+        return;
+      }
+      long current = version.get();
+      configService.setTenantPrinters(new TreeMap<>(activePrinters));
+      persistedVersion = current;
+    }
+  }
+}
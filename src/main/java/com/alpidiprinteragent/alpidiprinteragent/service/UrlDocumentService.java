@@ -0,0 +1,372 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.ByteBufferInputStream;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import jakarta.annotation.PreDestroy;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+@Service
+public class UrlDocumentService {
+
+  private final Set<String> allowedOrigins = new LinkedHashSet<>();
+  private final Duration responseTimeout;
+  private final long idleTimeoutNanos;
+  private final long maxBytes;
+  private final MetricsService metricsService;
+  // Body streams that are open, checked by the sweeper for reads that have stalled
+  private final Set<VerifyingInputStream> openStreams = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService sweeper =
+      Executors.newSingleThreadScheduledExecutor(
+          r -> {
+            Thread thread = new Thread(r, "url-download-sweeper");
+            thread.setDaemon(true);
+            return thread;
+          });
+
+  // One client for all downloads, so connections to the backend are kept alive and reused
+  private final HttpClient httpClient;
+
+  public UrlDocumentService(
+      @Value("${print.url.allowed-origins:${backend.base-url}}") List<String> allowedOrigins,
+      @Value("${print.url.connect-timeout-ms:5000}") long connectTimeoutMs,
+      @Value("${print.url.response-timeout-ms:30000}") long responseTimeoutMs,
+      @Value("${print.url.idle-timeout-ms:30000}") long idleTimeoutMs,
+      @Value("${print.url.max-bytes:268435456}") long maxBytes,
+      MetricsService metricsService) {
+    for (String origin : allowedOrigins) {
+      if (!origin.isBlank()) {
+        this.allowedOrigins.add(originOf(URI.create(origin.trim())));
+      }
+    }
+    this.responseTimeout = Duration.ofMillis(responseTimeoutMs);
+    this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    this.maxBytes = maxBytes;
+    this.metricsService = metricsService;
+    this.httpClient =
+        HttpClient.newBuilder()
+            .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+            .followRedirects(HttpClient.Redirect.NEVER)
+            .build();
+    // The request timeout only covers the headers; the body can stall at any point after them
+    long sweepMs = Math.max(10, idleTimeoutMs / 4);
+    sweeper.scheduleWithFixedDelay(
+        this::closeStalledStreams, sweepMs, sweepMs, TimeUnit.MILLISECONDS);
+  }
+
+  public UrlDocument open(String documentUrl, String expectedSha256) throws UrlAccessException {
+    URI uri;
+    try {
+      uri = URI.create(documentUrl.trim());
+    } catch (IllegalArgumentException e) {
+      throw new UrlAccessException("INVALID_DOCUMENT_URL", "Invalid document URL: " + documentUrl);
+    }
+    if (uri.getHost() == null || !allowedOrigins.contains(originOf(uri))) {
+      throw new UrlAccessException(
+          "URL_NOT_ALLOWED", "Document URL host is not allowed: " + uri.getHost());
+    }
+
+    UrlDocument document = new UrlDocument(uri, normalize(expectedSha256));
+    try {
+      // Fetch now so that unreachable or missing documents are reported before queueing
+      document.pending = document.fetch();
+      if (document.expectedSha256 != null) {
+        // A document that does not match must never reach a printer, so it is downloaded and
+        // checked before the job is queued instead of streamed
+        document.download();
+      }
+    } catch (ChecksumMismatchException e) {
+      document.close();
+      throw new UrlAccessException("CHECKSUM_MISMATCH", e.getMessage());
+    } catch (IOException e) {
+      document.close();
+      throw new UrlAccessException("URL_FETCH_FAILED", e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      document.close();
+      throw new UrlAccessException("URL_FETCH_FAILED", "Interrupted while fetching document");
+    }
+    return document;
+  }
+
+  @PreDestroy
+  public void shutdown() {
+    sweeper.shutdownNow();
+  }
+
+  // Closing the body is the only way to wake up a read on it that is waiting for data
+  private void closeStalledStreams() {
+    long now = System.nanoTime();
+    for (VerifyingInputStream stream : openStreams) {
+      long readStarted = stream.readStartedNanos;
+      if (readStarted != 0 && now - readStarted > idleTimeoutNanos) {
+        stream.stall();
+      }
+    }
+  }
+
+  private static String originOf(URI uri) {
+    int port = uri.getPort();
+    if (port == -1) {
+      port = "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+    return (uri.getScheme() + "://" + uri.getHost() + ":" + port).toLowerCase();
+  }
+
+  private static String normalize(String sha256) {
+    return sha256 == null || sha256.isBlank() ? null : sha256.trim().toLowerCase();
+  }
+
+  public class UrlDocument implements PrintDocument {
+    private final URI uri;
+    private final String expectedSha256;
+    private HttpResponse<InputStream> pending;
+    // From Content-Length, then the counted bytes once a stream has been read to the end
+    private volatile long contentLength = -1;
+    private ByteBuffer downloaded;
+    private Path spooled;
+
+    private UrlDocument(URI uri, String expectedSha256) {
+      this.uri = uri;
+      this.expectedSha256 = expectedSha256;
+    }
+
+    @Override
+    public long size() {
+      return downloaded != null ? downloaded.capacity() : contentLength;
+    }
+
+    // The first stream uses the response opened up front; retries download the document again
+    // unless it was already downloaded for its checksum
+    @Override
+    public synchronized InputStream openStream() throws IOException {
+      if (downloaded != null) {
+        return new ByteBufferInputStream(downloaded.duplicate());
+      }
+      if (spooled != null) {
+        return Files.newInputStream(spooled);
+      }
+      HttpResponse<InputStream> response = pending;
+      pending = null;
+      if (response == null) {
+        try {
+          response = fetch();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new IOException("Interrupted while fetching document", e);
+        }
+      }
+      return new VerifyingInputStream(this, response.body());
+    }
+
+    // Only needed for whole-document processing such as chunking; keeps the bytes for retries
+    @Override
+    public synchronized ByteBuffer asByteBuffer() throws IOException {
+      if (downloaded == null) {
+        try (InputStream in = openStream()) {
+          downloaded = ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+        }
+      }
+      return downloaded.duplicate();
+    }
+
+    @Override
+    public synchronized void close() {
+      if (pending != null) {
+        try {
+          pending.body().close();
+        } catch (IOException e) {
+          // Nothing left to release
+        }
+        pending = null;
+      }
+      if (spooled != null) {
+        try {
+          Files.deleteIfExists(spooled);
+        } catch (IOException e) {
+          // Left for the OS to clean up with the other temporary files
+        }
+        spooled = null;
+      }
+    }
+
+    private synchronized void download() throws IOException {
+      Path file = Files.createTempFile("alpidi-document-", ".pdf");
+      try (InputStream in = openStream()) {
+        Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+      } catch (IOException | RuntimeException e) {
+        Files.deleteIfExists(file);
+        throw e;
+      }
+      spooled = file;
+    }
+
+    private HttpResponse<InputStream> fetch() throws IOException, InterruptedException {
+      long start = System.currentTimeMillis();
+      HttpRequest request = HttpRequest.newBuilder(uri).timeout(responseTimeout).GET().build();
+      HttpResponse<InputStream> response =
+          httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+      metricsService.recordTime("print.url.timeToHeaders", System.currentTimeMillis() - start);
+
+      if (response.statusCode() != 200) {
+        response.body().close();
+        throw new IOException("Document URL returned HTTP " + response.statusCode());
+      }
+      contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+      if (contentLength > maxBytes) {
+        response.body().close();
+        throw new IOException("Document is larger than " + maxBytes + " bytes");
+      }
+      return response;
+    }
+  }
+
+  // Counts and hashes bytes as they are downloaded; fails at the end on a mismatch, and when
+  // the server sends nothing for longer than the idle timeout while a read waits for it
+  private class VerifyingInputStream extends FilterInputStream {
+    private final UrlDocument document;
+    private final MessageDigest digest;
+    private final String expectedSha256;
+    private long bytesRead;
+    private boolean verified;
+    // When the pending read started, 0 between reads: a slow reader is not a stalled server
+    private volatile long readStartedNanos;
+    private volatile boolean stalled;
+
+    VerifyingInputStream(UrlDocument document, InputStream in) throws IOException {
+      super(in);
+      this.document = document;
+      this.expectedSha256 = document.expectedSha256;
+      try {
+        this.digest = expectedSha256 != null ? MessageDigest.getInstance("SHA-256") : null;
+      } catch (NoSuchAlgorithmException e) {
+        throw new IOException(e);
+      }
+      openStreams.add(this);
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] one = new byte[1];
+      int n = read(one, 0, 1);
+      return n == -1 ? -1 : one[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n;
+      readStartedNanos = Math.max(1, System.nanoTime());
+      try {
+        n = super.read(b, off, len);
+      } catch (IOException e) {
+        if (stalled) {
+          throw new IOException(
+              "Document download stalled for more than "
+                  + TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos)
+                  + " ms",
+              e);
+        }
+        throw e;
+      } finally {
+        readStartedNanos = 0;
+      }
+      if (n == -1) {
+        verify();
+        return -1;
+      }
+      bytesRead += n;
+      if (bytesRead > maxBytes) {
+        throw new IOException("Document is larger than " + maxBytes + " bytes");
+      }
+      if (digest != null) {
+        digest.update(b, off, n);
+      }
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      // Skipped bytes would escape the checksum, so read them instead
+      byte[] buffer = new byte[(int) Math.min(n, 8192)];
+      int read = read(buffer, 0, buffer.length);
+      return Math.max(read, 0);
+    }
+
+    @Override
+    public void close() throws IOException {
+      openStreams.remove(this);
+      super.close();
+    }
+
+    private void stall() {
+      stalled = true;
+      openStreams.remove(this);
+      metricsService.increment("print.url.stalled");
+      try {
+        in.close();
+      } catch (IOException e) {
+        // The pending read fails either way
+      }
+    }
+
+    private void verify() throws IOException {
+      if (verified) {
+        return;
+      }
+      verified = true;
+      openStreams.remove(this);
+      document.contentLength = bytesRead;
+      metricsService.increment("print.url.bytes", bytesRead);
+      if (digest == null) {
+        return;
+      }
+      String actual = HexFormat.of().formatHex(digest.digest());
+      if (!actual.equals(expectedSha256)) {
+        metricsService.increment("print.url.checksumMismatch");
+        throw new ChecksumMismatchException(
+            "Document checksum mismatch, expected " + expectedSha256);
+      }
+    }
+  }
+
+  private static class ChecksumMismatchException extends IOException {
+    ChecksumMismatchException(String message) {
+      super(message);
+    }
+  }
+
+  public static class UrlAccessException extends Exception {
+    private final String errorCode;
+
+    public UrlAccessException(String errorCode, String message) {
+      super(message);
+      this.errorCode = errorCode;
+    }
+
+    public String getErrorCode() {
+      return errorCode;
+    }
+  }
+}
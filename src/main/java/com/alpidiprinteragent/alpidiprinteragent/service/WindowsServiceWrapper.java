@@ -1,6 +1,7 @@
 package com.alpidiprinteragent.alpidiprinteragent.service;
 
 import com.alpidiprinteragent.alpidiprinteragent.AlpidiprinteragentApplication;
+import com.alpidiprinteragent.alpidiprinteragent.controller.LiteHttpServer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -16,8 +17,10 @@ public class WindowsServiceWrapper {
   private static final Logger logger = LoggerFactory.getLogger(WindowsServiceWrapper.class);
   private static ConfigurableApplicationContext context;
   private static TrayIcon trayIcon;
+  private static String[] launchArgs = new String[0];
 
   public static void main(String[] args) {
+    launchArgs = args;
     // Check for headless argument or Windows service mode
     boolean forceHeadless = false;
     for (String arg : args) {
@@ -42,7 +45,10 @@ public class WindowsServiceWrapper {
   private static void startApplication(String[] args) {
     try {
       logger.info("Starting Alpidi Printer Agent...");
-      context = SpringApplication.run(AlpidiprinteragentApplication.class, args);
+      context =
+          PlatformServiceWrapper.isLiteMode(args)
+              ? LiteHttpServer.start(args)
+              : SpringApplication.run(AlpidiprinteragentApplication.class, args);
       logger.info("Alpidi Printer Agent started successfully on port 9000");
     } catch (Exception e) {
       logger.error("Failed to start Alpidi Printer Agent", e);
@@ -104,8 +110,8 @@ public class WindowsServiceWrapper {
               if (context != null) {
                 context.close();
               }
-              // Start new instance
-              startApplication(new String[] {});
+              // Start new instance, in the same server mode
+              startApplication(launchArgs);
               trayIcon.displayMessage(
                   "Alpidi Printer Agent",
                   "Application restarted successfully",
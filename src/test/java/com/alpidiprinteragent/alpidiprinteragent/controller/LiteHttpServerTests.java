@@ -0,0 +1,177 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alpidiprinteragent.alpidiprinteragent.service.SocketActivationService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+class LiteHttpServerTests {
+
+  private static final String ALLOWED_ORIGIN = "http://app.example.com";
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final HttpClient client = HttpClient.newHttpClient();
+  private HttpServer server;
+  private String base;
+
+  @BeforeEach
+  void startServer() throws IOException {
+    LiteHttpServer dispatcher =
+        new LiteHttpServer(
+            objectMapper,
+            new SocketActivationService(0, null, null),
+            List.of(new ItemController()));
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", dispatcher::handle);
+    server.start();
+    base = "http://127.0.0.1:" + server.getAddress().getPort();
+  }
+
+  @AfterEach
+  void stopServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void literalRouteWinsOverTemplate() throws Exception {
+    HttpResponse<String> latest = send(get("/items/latest"));
+    assertEquals(200, latest.statusCode());
+    assertTrue(json(latest).path("latest").asBoolean());
+
+    HttpResponse<String> item = send(get("/items/a%20b"));
+    assertEquals(200, item.statusCode());
+    assertEquals("a b", json(item).path("id").asText());
+  }
+
+  @Test
+  void answersUnknownPathsAndMethodsLikeSpring() throws Exception {
+    HttpResponse<String> missing = send(get("/nothing"));
+    assertEquals(404, missing.statusCode());
+    assertEquals("/nothing", json(missing).path("path").asText());
+
+    HttpResponse<String> wrongMethod =
+        send(request("/items/42").method("PUT", HttpRequest.BodyPublishers.noBody()));
+    assertEquals(405, wrongMethod.statusCode());
+  }
+
+  @Test
+  void answersPreflightForAllowedOrigin() throws Exception {
+    HttpResponse<String> response =
+        send(
+            request("/items")
+                .method("OPTIONS", HttpRequest.BodyPublishers.noBody())
+                .header("Origin", ALLOWED_ORIGIN)
+                .header("Access-Control-Request-Method", "POST")
+                .header("Access-Control-Request-Headers", "content-type"));
+
+    assertEquals(200, response.statusCode());
+    assertEquals(ALLOWED_ORIGIN, header(response, "Access-Control-Allow-Origin"));
+    assertEquals("POST", header(response, "Access-Control-Allow-Methods"));
+    assertEquals("content-type", header(response, "Access-Control-Allow-Headers"));
+  }
+
+  @Test
+  void rejectsOtherOrigins() throws Exception {
+    HttpResponse<String> response =
+        send(request("/items/42").GET().header("Origin", "http://evil.example.com"));
+
+    assertEquals(403, response.statusCode());
+    assertEquals("Invalid CORS request", response.body());
+  }
+
+  @Test
+  void acceptsMissingOptionalBodyAndCopiesResponseHeaders() throws Exception {
+    HttpResponse<String> response =
+        send(request("/items").POST(HttpRequest.BodyPublishers.noBody()));
+
+    assertEquals(201, response.statusCode());
+    assertEquals("/items/unnamed", header(response, "Location"));
+    assertEquals("unnamed", json(response).path("name").asText());
+  }
+
+  @Test
+  void readsJsonBodyAndRejectsMalformedJson() throws Exception {
+    HttpResponse<String> created =
+        send(
+            request("/items")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"name\":\"label\"}")));
+    assertEquals(201, created.statusCode());
+    assertEquals("/items/label", header(created, "Location"));
+
+    HttpResponse<String> malformed =
+        send(
+            request("/items")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"name\":")));
+    assertEquals(400, malformed.statusCode());
+    assertEquals("Bad Request", json(malformed).path("error").asText());
+  }
+
+  private HttpRequest.Builder get(String path) {
+    return request(path).GET();
+  }
+
+  private HttpRequest.Builder request(String path) {
+    return HttpRequest.newBuilder(URI.create(base + path));
+  }
+
+  private HttpResponse<String> send(HttpRequest.Builder request) throws Exception {
+    return client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+  }
+
+  private JsonNode json(HttpResponse<String> response) throws IOException {
+    return objectMapper.readTree(response.body());
+  }
+
+  private static String header(HttpResponse<String> response, String name) {
+    return response.headers().firstValue(name).orElse(null);
+  }
+
+  public record Item(String name) {}
+
+  @RestController
+  @CrossOrigin(origins = ALLOWED_ORIGIN)
+  static class ItemController {
+
+    @GetMapping("/items/{id}")
+    public Map<String, Object> item(@PathVariable String id) {
+      return Map.of("id", id);
+    }
+
+    @GetMapping("/items/latest")
+    public Map<String, Object> latest() {
+      return Map.of("latest", true);
+    }
+
+    @PostMapping("/items")
+    public ResponseEntity<Map<String, Object>> create(
+        @RequestBody(required = false) Item item) {
+      String name = item != null ? item.name() : "unnamed";
+      return ResponseEntity.status(201)
+          .header("Location", "/items/" + name)
+          .body(Map.of("name", name));
+    }
+  }
+}
@@ -0,0 +1,275 @@
+package com.alpidiprinteragent.alpidiprinteragent.controller;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import com.alpidiprinteragent.alpidiprinteragent.service.AdmissionService;
+import com.alpidiprinteragent.alpidiprinteragent.service.ChunkedPrintService;
+import com.alpidiprinteragent.alpidiprinteragent.service.ConfigService;
+import com.alpidiprinteragent.alpidiprinteragent.service.DocumentBufferPool;
+import com.alpidiprinteragent.alpidiprinteragent.service.DocumentStore;
+import com.alpidiprinteragent.alpidiprinteragent.service.MetricsService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintCoalescer;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintDispatcher;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintFailoverService;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrintJobTracker;
+import com.alpidiprinteragent.alpidiprinteragent.service.PrinterService;
+import com.alpidiprinteragent.alpidiprinteragent.service.TenantPrinterService;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.print.PrintService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+// The web app reads these responses by key, so the records must serialize to the JSON the map
+// responses produced
+class PrinterControllerJsonTests {
+
+  private final ObjectMapper objectMapper =
+      new ObjectMapper().registerModule(new BlackbirdModule());
+  private final MetricsService metrics = new MetricsService();
+  private final StubConfig config = new StubConfig();
+  private PrintDispatcher dispatcher;
+  private MockMvc mockMvc;
+
+  @BeforeEach
+  void setUp() {
+    PrintFailoverService failover =
+        new PrintFailoverService(3, 60000, 1, 10, config, new StubPrinters());
+    dispatcher = new PrintDispatcher(30000, 60000, metrics);
+    AdmissionService admission = new AdmissionService(metrics);
+    ReflectionTestUtils.setField(admission, "maxInFlightJobs", 16);
+    ReflectionTestUtils.setField(admission, "maxInFlightBytes", 1L << 20);
+
+    PrinterController controller = new PrinterController();
+    ReflectionTestUtils.setField(controller, "configService", config);
+    ReflectionTestUtils.setField(
+        controller, "tenantPrinterService", new TenantPrinterService(config, metrics));
+    ReflectionTestUtils.setField(controller, "metricsService", metrics);
+    ReflectionTestUtils.setField(controller, "admissionService", admission);
+    ReflectionTestUtils.setField(
+        controller, "documentBufferPool", new DocumentBufferPool(metrics));
+    ReflectionTestUtils.setField(
+        controller, "documentStore", new DocumentStore(false, "unused", 0, 0, metrics));
+    ReflectionTestUtils.setField(
+        controller, "printJobTracker", new PrintJobTracker(1000, 600000, metrics, null));
+    ReflectionTestUtils.setField(controller, "printDispatcher", dispatcher);
+    ReflectionTestUtils.setField(controller, "printFailoverService", failover);
+    ReflectionTestUtils.setField(
+        controller, "chunkedPrintService", new ChunkedPrintService(failover, metrics));
+    ReflectionTestUtils.setField(
+        controller,
+        "printCoalescer",
+        new PrintCoalescer(List.of(), 50, 20, 262144, dispatcher, failover, metrics));
+
+    mockMvc =
+        MockMvcBuilders.standaloneSetup(controller)
+            .setMessageConverters(new MappingJackson2HttpMessageConverter(objectMapper))
+            .build();
+  }
+
+  @AfterEach
+  void tearDown() {
+    dispatcher.shutdown();
+  }
+
+  @Test
+  void printAnswersWithJobResult() throws Exception {
+    JsonNode json =
+        perform(
+            200,
+            post("/print")
+                .content(
+                    "{\"pdfData\":\"JVBERi0xLjQK\",\"printerName\":\"Zebra\",\"jobId\":\"job-1\","
+                        + "\"fileName\":\"label.pdf\",\"priority\":\"bulk\",\"chunked\":false,"
+                        + "\"timings\":false}"));
+
+    JsonNode data = json.path("data");
+    assertTrue(data.path("queueWaitMs").isIntegralNumber());
+    assertTrue(data.path("timestamp").isIntegralNumber());
+    ((ObjectNode) data).remove(List.of("queueWaitMs", "timestamp"));
+    assertEquals(
+        objectMapper.readTree(
+            "{\"status\":true,\"statuscode\":200,"
+                + "\"message\":\"Print job submitted successfully\",\"data\":{"
+                + "\"jobId\":\"job-1\",\"jobState\":\"submitted\",\"printerName\":\"Zebra\","
+                + "\"priority\":\"bulk\",\"language\":\"pdf\",\"attempts\":1,"
+                + "\"fileName\":\"label.pdf\",\"documentSize\":9,\"documentHash\":"
+                + "\"e5c62df5dab5c87b6a015ef3d43597074d1eec433b15f51aec63b8582d0e4ab4\"}}"),
+        json);
+  }
+
+  @Test
+  void printFailureCarriesErrorCodeAsData() throws Exception {
+    assertEquals(
+        objectMapper.readTree(
+            "{\"status\":false,\"statuscode\":404,"
+                + "\"message\":\"PDF data cannot be null or empty\","
+                + "\"data\":\"PDF_DATA_REQUIRED\"}"),
+        perform(400, post("/print").content("{\"printerName\":\"Zebra\"}")));
+  }
+
+  @Test
+  void setActivePrinterAnswersWithPrinterOrErrorCode() throws Exception {
+    JsonNode json = perform(200, post("/printers/active").content("{\"printerName\":\"Zebra\"}"));
+    assertTimestamped(
+        "{\"status\":true,\"message\":\"Active printer successfully set to: Zebra\","
+            + "\"activePrinter\":\"Zebra\"}",
+        json);
+    assertEquals("Zebra", config.activePrinter);
+
+    assertEquals(
+        objectMapper.readTree(
+            "{\"status\":false,\"message\":\"Printer name cannot be empty\","
+                + "\"errorCode\":\"PRINTER_NAME_REQUIRED\"}"),
+        perform(400, post("/printers/active").content("{\"printerName\":\" \"}")));
+  }
+
+  @Test
+  void clearedFallbackPrinterIsSentAsNull() throws Exception {
+    assertTimestamped(
+        "{\"status\":true,\"message\":\"Fallback printer cleared\",\"fallbackPrinter\":null}",
+        perform(200, post("/printers/fallback").content("{}")));
+  }
+
+  @Test
+  void printerPoolEndpointsAnswerWithPoolOrErrorCode() throws Exception {
+    assertTimestamped(
+        "{\"status\":true,\"message\":\"Printer pool saved: labels\",\"poolName\":\"labels\","
+            + "\"printers\":[\"Zebra\",\"Brother\"]}",
+        perform(
+            200,
+            post("/printer-pools")
+                .content("{\"poolName\":\"labels\",\"printers\":[\"Zebra\",\"Brother\"]}")));
+
+    assertEquals(
+        objectMapper.readTree(
+            "{\"status\":false,\"message\":\"Pool must contain at least one printer\","
+                + "\"errorCode\":\"POOL_PRINTERS_REQUIRED\"}"),
+        perform(400, post("/printer-pools").content("{\"poolName\":\"labels\"}")));
+
+    assertEquals(
+        objectMapper.readTree(
+            "{\"status\":false,\"message\":\"Printer pool not found: other\","
+                + "\"errorCode\":\"PRINTER_POOL_NOT_FOUND\"}"),
+        perform(404, delete("/printer-pools/{poolName}", "other")));
+  }
+
+  @Test
+  void printSettingsEchoUpdatedSettings() throws Exception {
+    assertTimestamped(
+        "{\"status\":true,\"statuscode\":201,"
+            + "\"message\":\"Print settings updated successfully\","
+            + "\"updatedSettings\":{\"copies\":2,\"duplex\":true}}",
+        perform(
+            200, post("/config/print-settings").content("{\"copies\":2,\"duplex\":true}")));
+  }
+
+  private JsonNode perform(int expectedStatus, MockHttpServletRequestBuilder request)
+      throws Exception {
+    MockHttpServletResponse response =
+        mockMvc.perform(request.contentType(MediaType.APPLICATION_JSON)).andReturn().getResponse();
+    assertEquals(expectedStatus, response.getStatus());
+    return objectMapper.readTree(response.getContentAsString());
+  }
+
+  private void assertTimestamped(String expected, JsonNode json) throws Exception {
+    assertTrue(json.path("timestamp").isIntegralNumber());
+    ((ObjectNode) json).remove("timestamp");
+    assertEquals(objectMapper.readTree(expected), json);
+  }
+
+  private static class StubConfig extends ConfigService {
+    final Map<String, List<String>> pools = new HashMap<>();
+    volatile String activePrinter;
+    volatile String fallbackPrinter;
+
+    StubConfig() {
+      super(new ObjectMapper());
+    }
+
+    @Override
+    public String getActivePrinter() {
+      return activePrinter;
+    }
+
+    @Override
+    public void setActivePrinter(String printerName, String productionPartnerUserId) {
+      activePrinter = printerName;
+    }
+
+    @Override
+    public String getProductionPartnerUserId() {
+      return null;
+    }
+
+    @Override
+    public Map<String, String> getTenantPrinters() {
+      return Map.of();
+    }
+
+    @Override
+    public String getFallbackPrinter() {
+      return fallbackPrinter;
+    }
+
+    @Override
+    public void setFallbackPrinter(String printerName) {
+      fallbackPrinter = printerName;
+    }
+
+    @Override
+    public void setPrinterPool(String poolName, List<String> printerNames) {
+      pools.put(poolName, printerNames);
+    }
+
+    @Override
+    public boolean removePrinterPool(String poolName) {
+      return pools.remove(poolName) != null;
+    }
+
+    @Override
+    public void setPrintSettings(Map<String, Object> settings) {}
+
+    @Override
+    public boolean isRawCapable(String printerName) {
+      return false;
+    }
+  }
+
+  private static class StubPrinters extends PrinterService {
+    StubPrinters() {
+      super(null, null, null, null, null);
+    }
+
+    @Override
+    public void print(String printerName, PrintDocument document, PrinterLanguage language) {}
+
+    @Override
+    public PrintService findPrintService(String printerName) {
+      return null;
+    }
+
+    @Override
+    public boolean isAcceptingJobs(PrintService service) {
+      return true;
+    }
+  }
+}
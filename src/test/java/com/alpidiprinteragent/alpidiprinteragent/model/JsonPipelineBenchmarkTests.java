@@ -0,0 +1,121 @@
+package com.alpidiprinteragent.alpidiprinteragent.model;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.module.blackbird.BlackbirdModule;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+// The JSON each endpoint answers with is checked in controller.PrinterControllerJsonTests
+class JsonPipelineBenchmarkTests {
+
+  private static final String HASH =
+      "9f86d081884c7d659a2feaa0c55ad015a3bf4f1b2b0b822cd15d6c15b0f00a08";
+  private static final byte[] REQUEST =
+      ("{\"pdfData\":\"JVBERi0xLjQK\",\"printerName\":\"Zebra\",\"fileName\":\"label.pdf\","
+              + "\"priority\":\"urgent\",\"chunked\":false,\"timings\":true}")
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final ObjectMapper tuned = new ObjectMapper().registerModule(new BlackbirdModule());
+
+  // ./mvnw test -Dtest=JsonPipelineBenchmarkTests -Dbenchmark=true
+  @Test
+  @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+  void comparePipelines() throws Exception {
+    ObjectMapper plain = new ObjectMapper();
+    TypeReference<Map<String, String>> mapType = new TypeReference<>() {};
+
+    System.out.printf("%-32s %10s %12s%n", "per /print request", "ns", "bytes");
+    measure(
+        "Map body and response",
+        () -> {
+          plain.readValue(REQUEST, mapType);
+          return plain.writeValueAsBytes(mapResponse());
+        });
+    measure(
+        "records, Blackbird",
+        () -> {
+          tuned.readValue(REQUEST, PrintRequest.class);
+          return tuned.writeValueAsBytes(recordResponse());
+        });
+  }
+
+  private static void measure(String name, Operation operation) throws Exception {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().threadId();
+    int iterations = 200_000;
+
+    for (int i = 0; i < iterations; i++) {
+      operation.run();
+    }
+    long allocatedBefore = threads.getThreadAllocatedBytes(thread);
+    long start = System.nanoTime();
+    for (int i = 0; i < iterations; i++) {
+      operation.run();
+    }
+    long elapsed = System.nanoTime() - start;
+    long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+
+    System.out.printf("%-32s %10d %12d%n", name, elapsed / iterations, allocated / iterations);
+  }
+
+  private static Map<String, Object> mapResponse() {
+    Map<String, Object> data = new HashMap<>();
+    data.put("jobId", "job-1");
+    data.put("jobState", "submitted");
+    data.put("printerName", "Zebra");
+    data.put("priority", "urgent");
+    data.put("language", "pdf");
+    data.put("queueWaitMs", 3L);
+    data.put("attempts", 1);
+    data.put("fileName", "label.pdf");
+    data.put("timestamp", 1700000000000L);
+    data.put("documentSize", 9L);
+    data.put("documentHash", HASH);
+    data.put("timings", Map.of("config", 0.2, "decode", 0.1));
+
+    Map<String, Object> response = new HashMap<>();
+    response.put("status", true);
+    response.put("statuscode", 200);
+    response.put("message", "Print job submitted successfully");
+    response.put("data", data);
+    return response;
+  }
+
+  private static PrintResponse recordResponse() {
+    PrintJobResult data =
+        new PrintJobResult(
+            "job-1",
+            "submitted",
+            "Zebra",
+            null,
+            null,
+            null,
+            "urgent",
+            "pdf",
+            3,
+            1,
+            null,
+            null,
+            null,
+            null,
+            null,
+            null,
+            "label.pdf",
+            9,
+            HASH,
+            1700000000000L,
+            Map.of("config", 0.2, "decode", 0.1));
+    return new PrintResponse(true, 200, "Print job submitted successfully", data);
+  }
+
+  @FunctionalInterface
+  private interface Operation {
+    byte[] run() throws Exception;
+  }
+}
@@ -0,0 +1,121 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class CoordinatorServiceTests {
+
+  private StubAgent busy;
+  private StubAgent idle;
+  private CoordinatorService coordinator;
+
+  @BeforeEach
+  void startStubAgents() throws IOException {
+    busy = new StubAgent(5);
+    idle = new StubAgent(1);
+    coordinator =
+        new CoordinatorService(
+            true,
+            List.of(busy.url(), idle.url()),
+            1000,
+            1000,
+            15000,
+            new MetricsService(),
+            new ObjectMapper());
+    coordinator.heartbeat();
+  }
+
+  @AfterEach
+  void stopStubAgents() {
+    busy.server.stop(0);
+    idle.server.stop(0);
+  }
+
+  @Test
+  void forwardsToLeastLoadedAgent() throws Exception {
+    CoordinatorService.ForwardResult result =
+        coordinator.forward("Zebra", Map.of("printerName", "Zebra", "pdfData", "AAAA"));
+
+    assertEquals(idle.url(), result.getPeerUrl());
+    assertEquals(200, result.getStatusCode());
+    assertEquals(1, idle.printed.get());
+    assertEquals(0, busy.printed.get());
+  }
+
+  @Test
+  void failsOverWhenAgentIsDown() throws Exception {
+    idle.server.stop(0);
+
+    CoordinatorService.ForwardResult result =
+        coordinator.forward("Zebra", Map.of("printerName", "Zebra", "pdfData", "AAAA"));
+
+    assertEquals(busy.url(), result.getPeerUrl());
+    assertEquals(2, result.getAttempts());
+    assertEquals(1, busy.printed.get());
+  }
+
+  @Test
+  void skipsAgentsMissedByHeartbeat() {
+    busy.server.stop(0);
+    idle.server.stop(0);
+    coordinator.heartbeat();
+
+    CoordinatorService.CoordinatorException e =
+        assertThrows(
+            CoordinatorService.CoordinatorException.class,
+            () -> coordinator.forward("Zebra", Map.of("printerName", "Zebra")));
+    assertEquals("NO_PEER_AVAILABLE", e.getErrorCode());
+  }
+
+  private static class StubAgent {
+    final HttpServer server;
+    final AtomicInteger printed = new AtomicInteger();
+
+    StubAgent(int load) throws IOException {
+      server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+      server.createContext(
+          "/agent/status",
+          exchange ->
+              respond(
+                  exchange,
+                  "{\"printers\":[{\"printerName\":\"Zebra\",\"available\":true,"
+                      + "\"circuitOpen\":false,\"load\":"
+                      + load
+                      + "}]}"));
+      server.createContext(
+          "/print",
+          exchange -> {
+            exchange.getRequestBody().readAllBytes();
+            printed.incrementAndGet();
+            respond(exchange, "{\"status\":true,\"statuscode\":200,\"data\":{}}");
+          });
+      server.start();
+    }
+
+    String url() {
+      return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+      byte[] body = json.getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+}
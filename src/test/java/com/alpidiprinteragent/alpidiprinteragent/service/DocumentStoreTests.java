@@ -0,0 +1,198 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class DocumentStoreTests {
+
+  private static final String HELLO_HASH =
+      "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+  @Test
+  void storesStreamedDocumentForReprint() throws Exception {
+    Path directory = Files.createTempDirectory("documents");
+    try {
+      DocumentStore store = store(directory, 1024);
+
+      DocumentStore.Recording recording = store.record(PrintDocument.of(bytes("hello")));
+      try (InputStream in = recording.openStream()) {
+        in.readAllBytes();
+      }
+      assertEquals(HELLO_HASH, recording.store());
+      recording.close();
+
+      // A restarted agent finds the document again
+      DocumentStore restarted = store(directory, 1024);
+      try (PrintDocument reprint = restarted.open(HELLO_HASH)) {
+        assertArrayEquals(bytes("hello"), reprint.openStream().readAllBytes());
+      }
+      assertThrows(DocumentStore.StoreException.class, () -> restarted.open("../config"));
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  void evictsLeastRecentlyPrinted() throws Exception {
+    Path directory = Files.createTempDirectory("documents");
+    try {
+      DocumentStore store = store(directory, 12);
+
+      // Never read as a stream, so the document is hashed and written when it is stored
+      String first = store.record(PrintDocument.of(bytes("first"))).store();
+      String second = store.record(PrintDocument.of(bytes("second"))).store();
+      store.open(first).close();
+      store.record(PrintDocument.of(bytes("third"))).store();
+
+      store.open(first).close();
+      DocumentStore.StoreException evicted =
+          assertThrows(DocumentStore.StoreException.class, () -> store.open(second));
+      assertEquals("DOCUMENT_NOT_FOUND", evicted.getErrorCode());
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  void writesCopyAfterTheRequestAndThenReleasesDocument() throws Exception {
+    Path directory = Files.createTempDirectory("documents");
+    try {
+      List<Runnable> writes = new ArrayList<>();
+      DocumentStore store =
+          new DocumentStore(
+              true, directory.toString(), 1024, 1, new MetricsService(), writes::add);
+      AtomicBoolean released = new AtomicBoolean();
+      PrintDocument document =
+          new PrintDocument() {
+            @Override
+            public long size() {
+              return 5;
+            }
+
+            @Override
+            public InputStream openStream() {
+              return new ByteArrayInputStream(bytes("hello"));
+            }
+
+            @Override
+            public ByteBuffer asByteBuffer() {
+              return ByteBuffer.wrap(bytes("hello"));
+            }
+
+            @Override
+            public void close() {
+              released.set(true);
+            }
+          };
+
+      DocumentStore.Recording recording = store.record(document);
+      assertEquals(HELLO_HASH, recording.store());
+      recording.close();
+      assertFalse(released.get());
+
+      writes.forEach(Runnable::run);
+      assertTrue(released.get());
+      store.open(HELLO_HASH).close();
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  void writesStreamedCopyOnTheWriterThread() throws Exception {
+    Path directory = Files.createTempDirectory("documents");
+    try {
+      List<Runnable> writes = new ArrayList<>();
+      DocumentStore store =
+          new DocumentStore(
+              true, directory.toString(), 1 << 20, 1, new MetricsService(), writes::add);
+      byte[] document = new byte[200_000];
+      new Random(7).nextBytes(document);
+
+      DocumentStore.Recording recording = store.record(PrintDocument.of(document));
+      try (InputStream in = recording.openStream()) {
+        assertArrayEquals(document, in.readAllBytes());
+      }
+      // Nothing has touched the disk while the document was read
+      assertTrue(listFiles(directory).isEmpty());
+      String hash = recording.store();
+      recording.close();
+
+      writes.forEach(Runnable::run);
+      try (PrintDocument reprint = store.open(hash)) {
+        assertArrayEquals(document, reprint.openStream().readAllBytes());
+      }
+      assertEquals(List.of(hash), listFiles(directory));
+    } finally {
+      delete(directory);
+    }
+  }
+
+  @Test
+  void dropsStreamedCopyWhenTheWriterFallsBehind() throws Exception {
+    Path directory = Files.createTempDirectory("documents");
+    try {
+      List<Runnable> writes = new ArrayList<>();
+      DocumentStore store =
+          new DocumentStore(
+              true, directory.toString(), 1 << 24, 1, new MetricsService(), writes::add);
+
+      DocumentStore.Recording recording = store.record(PrintDocument.of(new byte[2 << 20]));
+      try (InputStream in = recording.openStream()) {
+        in.readAllBytes();
+      }
+      String hash = recording.store();
+      recording.close();
+
+      writes.forEach(Runnable::run);
+      DocumentStore.StoreException e =
+          assertThrows(DocumentStore.StoreException.class, () -> store.open(hash));
+      assertEquals("DOCUMENT_NOT_FOUND", e.getErrorCode());
+      assertTrue(listFiles(directory).isEmpty());
+    } finally {
+      delete(directory);
+    }
+  }
+
+  // Copies are written on the calling thread, so they are stored when store() returns
+  private static DocumentStore store(Path directory, long maxBytes) {
+    return new DocumentStore(
+        true, directory.toString(), maxBytes, 1, new MetricsService(), Runnable::run);
+  }
+
+  private static byte[] bytes(String text) {
+    return text.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private static List<String> listFiles(Path directory) throws Exception {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files.map(file -> file.getFileName().toString()).toList();
+    }
+  }
+
+  private static void delete(Path directory) throws Exception {
+    try (Stream<Path> files = Files.walk(directory)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+        Files.deleteIfExists(file);
+      }
+    }
+  }
+}
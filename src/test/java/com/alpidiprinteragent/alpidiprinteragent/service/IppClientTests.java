@@ -0,0 +1,175 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class IppClientTests {
+
+  private HttpServer server;
+  private URI printerUri;
+  private final IppClient client = new IppClient(1000, 5000);
+
+  // Last request seen by the stub IPP server
+  private int operation;
+  private Map<String, String> operationAttributes;
+  private byte[] documentData;
+  private String transferEncoding;
+
+  @BeforeEach
+  void startStubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/printers/Zebra", this::handle);
+    server.start();
+    printerUri =
+        URI.create("ipp://127.0.0.1:" + server.getAddress().getPort() + "/printers/Zebra");
+  }
+
+  @AfterEach
+  void stopStubServer() {
+    server.stop(0);
+  }
+
+  @Test
+  void streamsPrintJobChunked() throws Exception {
+    byte[] document = "^XA^FDHello^FS^XZ".getBytes(StandardCharsets.US_ASCII);
+
+    IppClient.IppResponse response =
+        client.printJob(
+            printerUri,
+            "job-1",
+            IppClient.rawDocumentFormat(printerUri),
+            new ByteArrayInputStream(document));
+
+    assertTrue(response.isSuccessful());
+    assertEquals(Integer.valueOf(42), response.getInt("job-id"));
+    assertEquals(0x0002, operation);
+    assertEquals(printerUri.toString(), operationAttributes.get("printer-uri"));
+    assertEquals("application/vnd.cups-raw", operationAttributes.get("document-format"));
+    assertEquals("job-1", operationAttributes.get("job-name"));
+    assertArrayEquals(document, documentData);
+    assertEquals("chunked", transferEncoding);
+  }
+
+  @Test
+  void readsJobAndPrinterAttributes() throws Exception {
+    IppClient.IppResponse job = client.getJobAttributes(printerUri, 42);
+    assertEquals(0x0009, operation);
+    assertEquals(Integer.valueOf(9), job.getInt("job-state"));
+
+    IppClient.IppResponse printer = client.getPrinterAttributes(printerUri);
+    assertEquals(0x000B, operation);
+    assertEquals(true, printer.getAttributes().get("printer-is-accepting-jobs"));
+    assertEquals(
+        List.of("media-low", "toner-low"), printer.getAttributes().get("printer-state-reasons"));
+  }
+
+  @Test
+  void reportsIppErrorStatus() throws Exception {
+    IppClient.IppResponse response = client.cancelJob(printerUri, 7);
+
+    assertFalse(response.isSuccessful());
+    assertEquals(0x0406, response.getStatusCode());
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    transferEncoding = exchange.getRequestHeaders().getFirst("Transfer-encoding");
+    DataInputStream in = new DataInputStream(exchange.getRequestBody());
+    in.readShort();
+    operation = in.readUnsignedShort();
+    int requestId = in.readInt();
+
+    operationAttributes = new HashMap<>();
+    for (int tag = in.read(); tag != 0x03; tag = in.read()) {
+      if (tag < 0x10) {
+        continue;
+      }
+      byte[] name = new byte[in.readUnsignedShort()];
+      in.readFully(name);
+      byte[] value = new byte[in.readUnsignedShort()];
+      in.readFully(value);
+      if (name.length > 0 && tag != 0x21) {
+        operationAttributes.put(
+            new String(name, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+      }
+    }
+    documentData = in.readAllBytes();
+
+    ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buffer);
+    out.writeShort(0x0101);
+    switch (operation) {
+      case 0x0002 -> {
+        out.writeShort(0x0000);
+        out.writeInt(requestId);
+        out.writeByte(0x02);
+        writeInt(out, 0x21, "job-id", 42);
+      }
+      case 0x0009 -> {
+        out.writeShort(0x0000);
+        out.writeInt(requestId);
+        out.writeByte(0x02);
+        writeInt(out, 0x23, "job-state", 9);
+      }
+      case 0x000B -> {
+        out.writeShort(0x0000);
+        out.writeInt(requestId);
+        out.writeByte(0x04);
+        writeValue(out, 0x22, "printer-is-accepting-jobs", new byte[] {1});
+        writeValue(out, 0x44, "printer-state-reasons", "media-low".getBytes());
+        writeValue(out, 0x44, "", "toner-low".getBytes());
+      }
+      default -> {
+        // client-error-not-found
+        out.writeShort(0x0406);
+        out.writeInt(requestId);
+      }
+    }
+    out.writeByte(0x03);
+
+    byte[] body = buffer.toByteArray();
+    exchange.getResponseHeaders().set("Content-Type", "application/ipp");
+    exchange.sendResponseHeaders(200, body.length);
+    try (OutputStream os = exchange.getResponseBody()) {
+      os.write(body);
+    }
+  }
+
+  private static void writeInt(DataOutputStream out, int tag, String name, int value)
+      throws IOException {
+    byte[] bytes = new byte[4];
+    for (int i = 0; i < 4; i++) {
+      bytes[i] = (byte) (value >>> (24 - 8 * i));
+    }
+    writeValue(out, tag, name, bytes);
+  }
+
+  private static void writeValue(DataOutputStream out, int tag, String name, byte[] value)
+      throws IOException {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    out.writeByte(tag);
+    out.writeShort(nameBytes.length);
+    out.write(nameBytes);
+    out.writeShort(value.length);
+    out.write(value);
+  }
+}
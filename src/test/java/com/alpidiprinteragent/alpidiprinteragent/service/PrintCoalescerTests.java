@@ -0,0 +1,170 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintPriority;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.apache.pdfbox.Loader;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class PrintCoalescerTests {
+
+  private final MetricsService metrics = new MetricsService();
+  private final PrintJobTracker tracker = new PrintJobTracker(1000, 600000, metrics, null);
+  private final PrintDispatcher dispatcher = new PrintDispatcher(30000, 60000, metrics);
+  private final StubFailover failover = new StubFailover();
+  private final ExecutorService requests = Executors.newCachedThreadPool();
+
+  @AfterEach
+  void tearDown() {
+    requests.shutdownNow();
+    dispatcher.shutdown();
+  }
+
+  @Test
+  void mergesJobsArrivingWithinTheWindow() throws Exception {
+    PrintCoalescer coalescer = coalescer(1000, 20);
+
+    Future<PrintFailoverService.PrintOutcome> first = print(coalescer, job("job-1"), pdf(1));
+    Future<PrintFailoverService.PrintOutcome> second = print(coalescer, job("job-2"), pdf(2));
+
+    for (Future<PrintFailoverService.PrintOutcome> job : List.of(first, second)) {
+      PrintCoalescer.CoalescedOutcome outcome =
+          assertInstanceOf(PrintCoalescer.CoalescedOutcome.class, job.get(10, TimeUnit.SECONDS));
+      assertEquals(2, outcome.getJobCount());
+      assertEquals("Zebra", outcome.getPrinterName());
+    }
+    assertEquals(1, failover.printed.size());
+    assertEquals(3, pageCount(failover.printed.peek()));
+  }
+
+  @Test
+  void fullBatchIsSubmittedBeforeTheWindowEnds() throws Exception {
+    PrintCoalescer coalescer = coalescer(30000, 2);
+
+    Future<PrintFailoverService.PrintOutcome> first = print(coalescer, job("job-1"), pdf(1));
+    Future<PrintFailoverService.PrintOutcome> second = print(coalescer, job("job-2"), pdf(1));
+
+    // Both would wait 30 s if the batch were not closed by its second document
+    assertInstanceOf(PrintCoalescer.CoalescedOutcome.class, first.get(5, TimeUnit.SECONDS));
+    assertInstanceOf(PrintCoalescer.CoalescedOutcome.class, second.get(5, TimeUnit.SECONDS));
+    assertEquals(1, failover.printed.size());
+    assertEquals(2, pageCount(failover.printed.peek()));
+  }
+
+  @Test
+  void dropsJobCanceledWhileWaitingForTheBatch() throws Exception {
+    PrintCoalescer coalescer = coalescer(1000, 20);
+    byte[] kept = pdf(1);
+    PrintJobTracker.TrackedJob follower = job("job-2");
+    tracker.cancel("job-2");
+
+    Future<PrintFailoverService.PrintOutcome> first = print(coalescer, job("job-1"), kept);
+    Future<PrintFailoverService.PrintOutcome> canceled = print(coalescer, follower, pdf(2));
+
+    PrintFailoverService.PrintOutcome outcome = first.get(10, TimeUnit.SECONDS);
+    assertFalse(outcome instanceof PrintCoalescer.CoalescedOutcome);
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> canceled.get(10, TimeUnit.SECONDS));
+    assertInstanceOf(PrintJobTracker.CanceledException.class, e.getCause());
+    assertEquals(1, failover.printed.size());
+    assertArrayEquals(kept, failover.printed.peek());
+  }
+
+  @Test
+  void printsJobsOneByOneWhenTheyCannotBeMerged() throws Exception {
+    PrintCoalescer coalescer = coalescer(1000, 20);
+    byte[] valid = pdf(1);
+    byte[] unreadable = "not a pdf".getBytes(StandardCharsets.US_ASCII);
+
+    Future<PrintFailoverService.PrintOutcome> first = print(coalescer, job("job-1"), valid);
+    Future<PrintFailoverService.PrintOutcome> second = print(coalescer, job("job-2"), unreadable);
+
+    for (Future<PrintFailoverService.PrintOutcome> job : List.of(first, second)) {
+      PrintFailoverService.PrintOutcome outcome = job.get(10, TimeUnit.SECONDS);
+      assertFalse(outcome instanceof PrintCoalescer.CoalescedOutcome);
+    }
+    assertEquals(2, failover.printed.size());
+    assertTrue(failover.printed.stream().anyMatch(bytes -> Arrays.equals(bytes, valid)));
+    assertTrue(failover.printed.stream().anyMatch(bytes -> Arrays.equals(bytes, unreadable)));
+  }
+
+  private PrintCoalescer coalescer(long windowMs, int maxDocuments) {
+    return new PrintCoalescer(
+        List.of("Zebra"), windowMs, maxDocuments, 262144, dispatcher, failover, metrics);
+  }
+
+  // Each job is sent from its own request thread, as the controller does
+  private Future<PrintFailoverService.PrintOutcome> print(
+      PrintCoalescer coalescer, PrintJobTracker.TrackedJob job, byte[] pdf)
+      throws InterruptedException {
+    Future<PrintFailoverService.PrintOutcome> result =
+        requests.submit(
+            () ->
+                coalescer
+                    .print("Zebra", PrintPriority.NORMAL, job, PrintDocument.of(pdf))
+                    .getResult());
+    // Keeps the arrival order stable without leaving the window
+    Thread.sleep(50);
+    return result;
+  }
+
+  private PrintJobTracker.TrackedJob job(String jobId) throws PrintJobTracker.JobException {
+    return tracker.create(jobId, "Zebra", System.nanoTime());
+  }
+
+  private static byte[] pdf(int pages) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PDDocument document = new PDDocument()) {
+      for (int i = 0; i < pages; i++) {
+        document.addPage(new PDPage());
+      }
+      document.save(out);
+    }
+    return out.toByteArray();
+  }
+
+  private static int pageCount(byte[] pdf) throws IOException {
+    try (PDDocument document = Loader.loadPDF(pdf)) {
+      return document.getNumberOfPages();
+    }
+  }
+
+  private static class StubFailover extends PrintFailoverService {
+    final Queue<byte[]> printed = new ConcurrentLinkedQueue<>();
+
+    StubFailover() {
+      super(3, 60000, 1, 0, null, null);
+    }
+
+    @Override
+    public PrintOutcome print(String printerName, PrintDocument document) throws Exception {
+      ByteBuffer buffer = document.asByteBuffer().duplicate();
+      byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      printed.add(bytes);
+      return new PrintOutcome(printerName, 1, false);
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintDocument;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrintPriority;
+import com.alpidiprinteragent.alpidiprinteragent.model.PrinterLanguage;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.print.PrintService;
+import org.junit.jupiter.api.Test;
+
+class PrintFailoverServiceTests {
+
+  private static final PrintDocument DOCUMENT = PrintDocument.of(new byte[] {1});
+
+  @Test
+  void opensCircuitAfterRepeatedFailures() throws Exception {
+    StubPrinters printers = new StubPrinters();
+    printers.fail("Zebra", notSubmitted(), notSubmitted(), notSubmitted());
+    PrintFailoverService service = service(2, 3, 10, null, printers);
+
+    assertThrows(
+        PrinterService.NotSubmittedException.class, () -> service.print("Zebra", DOCUMENT));
+    assertThrows(
+        PrinterService.NotSubmittedException.class, () -> service.print("Zebra", DOCUMENT));
+    assertTrue(service.isCircuitOpen("Zebra"));
+    assertThrows(
+        PrintFailoverService.CircuitOpenException.class, () -> service.print("Zebra", DOCUMENT));
+    assertEquals(2, printers.printed.size());
+  }
+
+  @Test
+  void failsOverToFallbackPrinter() throws Exception {
+    StubPrinters printers = new StubPrinters();
+    printers.fail("Zebra", notSubmitted());
+    PrintFailoverService service = service(3, 3, 10, "Backup", printers);
+
+    PrintFailoverService.PrintOutcome outcome = service.print("Zebra", DOCUMENT);
+
+    assertEquals("Backup", outcome.getPrinterName());
+    assertEquals(2, outcome.getAttempts());
+    assertTrue(outcome.isFailedOver());
+    assertEquals(List.of("Zebra", "Backup"), List.copyOf(printers.printed));
+  }
+
+  @Test
+  void probeLetsTrialJobThroughOnceThePrinterAcceptsJobs() throws Exception {
+    StubPrinters printers = new StubPrinters();
+    printers.fail("Zebra", notSubmitted());
+    PrintFailoverService service = service(1, 3, 10, null, printers);
+
+    assertThrows(
+        PrinterService.NotSubmittedException.class, () -> service.print("Zebra", DOCUMENT));
+    printers.accepting = false;
+    service.probeOpenCircuits();
+    assertThrows(
+        PrintFailoverService.CircuitOpenException.class, () -> service.print("Zebra", DOCUMENT));
+
+    printers.accepting = true;
+    service.probeOpenCircuits();
+    PrinterCircuitBreaker breaker = service.getBreakers().iterator().next();
+    assertEquals(PrinterCircuitBreaker.State.HALF_OPEN, breaker.getState());
+
+    assertEquals("Zebra", service.print("Zebra", DOCUMENT).getPrinterName());
+    assertEquals(PrinterCircuitBreaker.State.CLOSED, breaker.getState());
+  }
+
+  @Test
+  void retriesAfterBackoffWithoutHoldingThePrinterQueue() throws Exception {
+    StubPrinters printers = new StubPrinters();
+    printers.fail("Zebra", notSubmitted(), notSubmitted());
+    PrintFailoverService service = service(10, 3, 300, null, printers);
+    PrintDispatcher dispatcher = new PrintDispatcher(30000, 60000, new MetricsService());
+
+    try {
+      long start = System.nanoTime();
+      CompletableFuture<PrintDispatcher.Dispatched<PrintFailoverService.PrintOutcome>> retried =
+          CompletableFuture.supplyAsync(
+              () -> {
+                try {
+                  return dispatcher.execute(
+                      "Zebra", PrintPriority.NORMAL, () -> service.print("Zebra", DOCUMENT));
+                } catch (Exception e) {
+                  throw new IllegalStateException(e);
+                }
+              });
+      assertTrue(printers.firstAttempt.await(5, TimeUnit.SECONDS));
+
+      // A job queued behind the failed one runs while it waits out its backoff
+      long queuedAt = System.nanoTime();
+      assertEquals(
+          "next", dispatcher.execute("Zebra", PrintPriority.NORMAL, () -> "next").getResult());
+      assertTrue(System.nanoTime() - queuedAt < TimeUnit.MILLISECONDS.toNanos(250));
+      assertFalse(retried.isDone());
+
+      PrintFailoverService.PrintOutcome outcome = retried.get(10, TimeUnit.SECONDS).getResult();
+      assertEquals(3, outcome.getAttempts());
+      // 300 ms before the second run, 600 ms before the third
+      assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+      assertEquals(3, printers.printed.size());
+    } finally {
+      dispatcher.shutdown();
+    }
+  }
+
+  @Test
+  void doesNotRetryAJobThePrinterMayHaveReceived() throws Exception {
+    StubPrinters printers = new StubPrinters();
+    printers.fail("Zebra", new Exception("Connection reset while spooling"));
+    PrintFailoverService service = service(10, 3, 10, "Backup", printers);
+    PrintDispatcher dispatcher = new PrintDispatcher(30000, 60000, new MetricsService());
+
+    try {
+      Exception e =
+          assertThrows(
+              Exception.class,
+              () ->
+                  dispatcher.execute(
+                      "Zebra", PrintPriority.NORMAL, () -> service.print("Zebra", DOCUMENT)));
+      assertEquals("Connection reset while spooling", e.getMessage());
+      assertEquals(List.of("Zebra"), List.copyOf(printers.printed));
+    } finally {
+      dispatcher.shutdown();
+    }
+  }
+
+  private static PrintFailoverService service(
+      int failureThreshold,
+      int maxAttempts,
+      long backoffMs,
+      String fallbackPrinter,
+      PrinterService printers) {
+    ConfigService config =
+        new ConfigService(new ObjectMapper()) {
+          @Override
+          public String getFallbackPrinter() {
+            return fallbackPrinter;
+          }
+
+          @Override
+          public boolean isRawCapable(String printerName) {
+            return true;
+          }
+        };
+    return new PrintFailoverService(
+        failureThreshold, 60000, maxAttempts, backoffMs, config, printers);
+  }
+
+  private static PrinterService.NotSubmittedException notSubmitted() {
+    return new PrinterService.NotSubmittedException("Printer not found");
+  }
+
+  private static class StubPrinters extends PrinterService {
+    final Queue<String> printed = new ConcurrentLinkedQueue<>();
+    final Map<String, Queue<Exception>> failures = new ConcurrentHashMap<>();
+    final CountDownLatch firstAttempt = new CountDownLatch(1);
+    volatile boolean accepting = true;
+
+    StubPrinters() {
+      super(null, null, null, null, null);
+    }
+
+    void fail(String printerName, Exception... errors) {
+      failures
+          .computeIfAbsent(printerName, k -> new ConcurrentLinkedQueue<>())
+          .addAll(List.of(errors));
+    }
+
+    @Override
+    public void print(String printerName, PrintDocument document, PrinterLanguage language)
+        throws Exception {
+      printed.add(printerName);
+      firstAttempt.countDown();
+      Queue<Exception> errors = failures.get(printerName);
+      Exception error = errors != null ? errors.poll() : null;
+      if (error != null) {
+        throw error;
+      }
+    }
+
+    @Override
+    public PrintService findPrintService(String printerName) {
+      return null;
+    }
+
+    @Override
+    public boolean isAcceptingJobs(PrintService service) {
+      return accepting;
+    }
+  }
+}
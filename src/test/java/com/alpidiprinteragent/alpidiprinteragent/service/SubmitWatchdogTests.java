@@ -0,0 +1,111 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+class SubmitWatchdogTests {
+
+  private static final long MEGABYTE = 1024 * 1024;
+
+  @Test
+  void learnsTimeoutFromLatencies() throws Exception {
+    SubmitWatchdog watchdog = new SubmitWatchdog(true, 3.0, 50, 10000, 10, 5, new MetricsService());
+
+    for (int i = 0; i < 5; i++) {
+      watchdog.run("Zebra", 2 * MEGABYTE, () -> sleep(60), () -> {});
+    }
+
+    SubmitWatchdog.LatencyWindow window = watchdog.getWindows().iterator().next();
+    assertEquals(5, window.getSampleCount());
+    assertTrue(window.getTimeoutMsPerMb() >= 90 && window.getTimeoutMsPerMb() < 10000);
+    // Small documents share the per-megabyte bound, larger ones scale with their size
+    assertEquals(window.getTimeoutMsPerMb(), window.getTimeoutMs(1024));
+    assertEquals(4 * window.getTimeoutMsPerMb(), window.getTimeoutMs(4 * MEGABYTE));
+  }
+
+  @Test
+  void abandonsWedgedSubmission() throws Exception {
+    SubmitWatchdog watchdog = new SubmitWatchdog(true, 3.0, 50, 100, 10, 5, new MetricsService());
+    CountDownLatch wedged = new CountDownLatch(1);
+    AtomicBoolean abandoned = new AtomicBoolean();
+    SubmitWatchdog.FencedInputStream in =
+        new SubmitWatchdog.FencedInputStream(new ByteArrayInputStream(new byte[16]));
+
+    long start = System.nanoTime();
+    assertThrows(
+        SubmitWatchdog.SubmitTimeoutException.class,
+        () ->
+            watchdog.run(
+                "Zebra",
+                16,
+                () -> wedged.await(10, TimeUnit.SECONDS),
+                () -> {
+                  abandoned.set(true);
+                  in.fence();
+                }));
+
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertTrue(abandoned.get());
+    assertThrows(IOException.class, in::read);
+    assertEquals(1, watchdog.getWindows().iterator().next().getTimeouts());
+    wedged.countDown();
+  }
+
+  @Test
+  void fencesReadThatIsBlockedInTheDriver() throws Exception {
+    CountDownLatch reading = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    InputStream stalled =
+        new InputStream() {
+          @Override
+          public int read() throws IOException {
+            reading.countDown();
+            try {
+              release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+              throw new IOException(e);
+            }
+            return 0;
+          }
+        };
+    SubmitWatchdog.FencedInputStream in = new SubmitWatchdog.FencedInputStream(stalled);
+    CompletableFuture<Integer> read =
+        CompletableFuture.supplyAsync(
+            () -> {
+              try {
+                return in.read();
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            });
+    assertTrue(reading.await(5, TimeUnit.SECONDS));
+
+    // Abandoning does not wait for the blocked read
+    CompletableFuture<Void> fenced = CompletableFuture.runAsync(in::fence);
+    fenced.get(1, TimeUnit.SECONDS);
+
+    // Once the read returns, its byte is not handed on
+    release.countDown();
+    ExecutionException e =
+        assertThrows(ExecutionException.class, () -> read.get(5, TimeUnit.SECONDS));
+    assertTrue(e.getCause() instanceof UncheckedIOException);
+    assertThrows(IOException.class, in::read);
+  }
+
+  private static Object sleep(long millis) throws InterruptedException {
+    Thread.sleep(millis);
+    return null;
+  }
+}
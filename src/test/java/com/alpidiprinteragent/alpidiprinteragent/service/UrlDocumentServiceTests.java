@@ -0,0 +1,145 @@
+package com.alpidiprinteragent.alpidiprinteragent.service;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class UrlDocumentServiceTests {
+
+  private static final byte[] PDF = "%PDF-1.4 stub document".getBytes(StandardCharsets.US_ASCII);
+
+  private final CountDownLatch released = new CountDownLatch(1);
+  private HttpServer server;
+  private String origin;
+  private UrlDocumentService service;
+
+  @BeforeEach
+  void startStubServer() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext(
+        "/documents/label.pdf",
+        exchange -> {
+          exchange.sendResponseHeaders(200, PDF.length);
+          try (OutputStream out = exchange.getResponseBody()) {
+            out.write(PDF);
+          }
+        });
+    server.createContext(
+        "/documents/stalled.pdf",
+        exchange -> {
+          // Sends the headers and the first bytes, then nothing more
+          exchange.sendResponseHeaders(200, PDF.length);
+          OutputStream out = exchange.getResponseBody();
+          out.write(PDF, 0, 4);
+          out.flush();
+          try {
+            released.await(10, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          exchange.close();
+        });
+    server.start();
+
+    origin = "http://127.0.0.1:" + server.getAddress().getPort();
+    service = new UrlDocumentService(List.of(origin), 1000, 1000, 200, 1024, new MetricsService());
+  }
+
+  @AfterEach
+  void stopStubServer() {
+    released.countDown();
+    service.shutdown();
+    server.stop(0);
+  }
+
+  @Test
+  void streamsDocumentAndVerifiesChecksum() throws Exception {
+    String sha256 = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(PDF));
+
+    try (UrlDocumentService.UrlDocument document =
+            service.open(origin + "/documents/label.pdf", sha256);
+        InputStream in = document.openStream()) {
+      assertEquals(PDF.length, document.size());
+      assertArrayEquals(PDF, in.readAllBytes());
+    }
+  }
+
+  @Test
+  void rejectsChecksumMismatchBeforePrinting() {
+    UrlDocumentService.UrlAccessException e =
+        assertThrows(
+            UrlDocumentService.UrlAccessException.class,
+            () -> service.open(origin + "/documents/label.pdf", "00".repeat(32)));
+    assertEquals("CHECKSUM_MISMATCH", e.getErrorCode());
+  }
+
+  @Test
+  void downloadsAgainForRetries() throws Exception {
+    try (UrlDocumentService.UrlDocument document =
+        service.open(origin + "/documents/label.pdf", null)) {
+      try (InputStream first = document.openStream()) {
+        assertArrayEquals(PDF, first.readAllBytes());
+      }
+      try (InputStream second = document.openStream()) {
+        assertArrayEquals(PDF, second.readAllBytes());
+      }
+    }
+  }
+
+  @Test
+  void failsDownloadThatStallsAfterTheHeaders() throws Exception {
+    try (UrlDocumentService.UrlDocument document =
+            service.open(origin + "/documents/stalled.pdf", null);
+        InputStream in = document.openStream()) {
+      long start = System.nanoTime();
+      IOException e = assertThrows(IOException.class, in::readAllBytes);
+      assertTrue(e.getMessage().contains("stalled"));
+      assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+  }
+
+  @Test
+  void rejectsStalledDownloadWhileVerifyingChecksum() {
+    long start = System.nanoTime();
+    UrlDocumentService.UrlAccessException e =
+        assertThrows(
+            UrlDocumentService.UrlAccessException.class,
+            () -> service.open(origin + "/documents/stalled.pdf", "00".repeat(32)));
+    assertEquals("URL_FETCH_FAILED", e.getErrorCode());
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+  }
+
+  @Test
+  void rejectsHostsOutsideTheAllowList() {
+    UrlDocumentService.UrlAccessException e =
+        assertThrows(
+            UrlDocumentService.UrlAccessException.class,
+            () -> service.open("http://example.com/documents/label.pdf", null));
+    assertEquals("URL_NOT_ALLOWED", e.getErrorCode());
+  }
+
+  @Test
+  void reportsMissingDocuments() {
+    UrlDocumentService.UrlAccessException e =
+        assertThrows(
+            UrlDocumentService.UrlAccessException.class,
+            () -> service.open(origin + "/documents/missing.pdf", null));
+    assertEquals("URL_FETCH_FAILED", e.getErrorCode());
+  }
+}